@@ -0,0 +1,169 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.sslenforcement;
+
+import io.gravitee.gateway.api.Request;
+import io.gravitee.gateway.api.http.HttpHeaders;
+import io.gravitee.policy.api.PolicyChain;
+import io.gravitee.policy.api.PolicyResult;
+import java.lang.reflect.Proxy;
+import java.math.BigInteger;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.Base64;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import javax.net.ssl.SSLSession;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.CertificatePolicies;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.asn1.x509.PolicyInformation;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+
+/**
+ * Test doubles and generated certificates shared by the benchmarks. Gateway interfaces are implemented with dynamic
+ * proxies rather than Mockito, whose invocation recording would dominate the measurements.
+ */
+final class BenchmarkFixtures {
+
+    static final String SUBJECT = "CN=partner,OU=Payments,O=GraviteeSource,L=Lille,C=FR";
+
+    static final String ISSUER = "CN=Benchmark CA,O=GraviteeSource,C=FR";
+
+    static final String SAN = "api.partner.example.com";
+
+    static final String POLICY_OID = "0.4.0.19495.1.3";
+
+    private BenchmarkFixtures() {}
+
+    static X509Certificate certificate() throws Exception {
+        KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
+        kpg.initialize(2048);
+        KeyPair keyPair = kpg.generateKeyPair();
+        Date notBefore = new Date();
+        Date notAfter = new Date(notBefore.getTime() + 365L * 24 * 60 * 60 * 1000);
+
+        JcaX509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(
+            new X500Name(ISSUER),
+            BigInteger.valueOf(System.nanoTime()),
+            notBefore,
+            notAfter,
+            new X500Name(SUBJECT),
+            keyPair.getPublic()
+        );
+        builder.addExtension(Extension.subjectAlternativeName, false, new GeneralNames(new GeneralName(GeneralName.dNSName, SAN)));
+        builder.addExtension(
+            Extension.certificatePolicies,
+            false,
+            new CertificatePolicies(
+                new PolicyInformation[] {
+                    new PolicyInformation(new ASN1ObjectIdentifier("1.3.6.1.4.1.311.21.1")),
+                    new PolicyInformation(new ASN1ObjectIdentifier(POLICY_OID)),
+                }
+            )
+        );
+
+        return new JcaX509CertificateConverter().getCertificate(
+            builder.build(new JcaContentSignerBuilder("SHA256WithRSA").build(keyPair.getPrivate()))
+        );
+    }
+
+    /**
+     * @return the certificate as nginx {@code $ssl_client_escaped_cert} would forward it.
+     */
+    static String urlEncodedPem(X509Certificate certificate) throws Exception {
+        String pem =
+            "-----BEGIN CERTIFICATE-----\n" +
+            Base64.getMimeEncoder(64, new byte[] { '\n' }).encodeToString(certificate.getEncoded()) +
+            "\n-----END CERTIFICATE-----\n";
+        return URLEncoder.encode(pem, StandardCharsets.UTF_8);
+    }
+
+    static SSLSession session(X509Certificate certificate) {
+        Certificate[] peerCertificates = { certificate };
+        return proxy(SSLSession.class, Map.of("getPeerCertificates", peerCertificates));
+    }
+
+    static Request request(SSLSession sslSession, HttpHeaders headers) {
+        Map<String, Object> answers = new HashMap<>();
+        answers.put("sslSession", sslSession);
+        answers.put("headers", headers);
+        return proxy(Request.class, answers);
+    }
+
+    /**
+     * Policy chain that only remembers whether the last request went through, so the benchmark can return it.
+     */
+    static final class RecordingPolicyChain {
+
+        private Object last;
+
+        final PolicyChain chain = (PolicyChain) Proxy.newProxyInstance(
+            BenchmarkFixtures.class.getClassLoader(),
+            new Class<?>[] { PolicyChain.class },
+            (proxy, method, args) -> {
+                last = args != null && args.length > 0 && args[0] instanceof PolicyResult result ? result : Boolean.TRUE;
+                return null;
+            }
+        );
+
+        Object last() {
+            return last;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, Map<String, Object> answers) {
+        return (T) Proxy.newProxyInstance(
+            BenchmarkFixtures.class.getClassLoader(),
+            new Class<?>[] { type },
+            (proxy, method, args) -> {
+                Object answer = answers.get(method.getName());
+                if (answer instanceof Certificate[] certificates) {
+                    return certificates.clone();
+                }
+                if (answer != null || !method.getReturnType().isPrimitive()) {
+                    return answer;
+                }
+                return defaultValue(method.getReturnType());
+            }
+        );
+    }
+
+    private static Object defaultValue(Class<?> primitive) {
+        if (primitive == boolean.class) {
+            return Boolean.FALSE;
+        }
+        if (primitive == long.class) {
+            return 0L;
+        }
+        if (primitive == int.class) {
+            return 0;
+        }
+        // void
+        return null;
+    }
+}
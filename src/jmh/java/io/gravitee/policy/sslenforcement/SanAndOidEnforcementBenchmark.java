@@ -0,0 +1,122 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.sslenforcement;
+
+import io.gravitee.gateway.api.Request;
+import io.gravitee.policy.sslenforcement.configuration.SslEnforcementPolicyConfiguration;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * SAN allow-list and required certificatePolicies OID enforcement, each through {@link SslEnforcementPolicy#onRequest}
+ * in SESSION mode. The SAN allow-list is made of {@code *.<domain>} wildcards of growing size, the matching one being
+ * last.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SanAndOidEnforcementBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class SanState {
+
+        @Param({ "1", "100", "10000", "100000" })
+        private int allowListSize;
+
+        private SslEnforcementPolicy policy;
+
+        private Request request;
+
+        private final BenchmarkFixtures.RecordingPolicyChain policyChain = new BenchmarkFixtures.RecordingPolicyChain();
+
+        @Setup
+        public void setUp() throws Exception {
+            List<String> sans = new ArrayList<>(allowListSize);
+            for (int i = 1; i < allowListSize; i++) {
+                sans.add("*.partner-" + i + ".example.com");
+            }
+            sans.add("*.partner.example.com");
+            policy = new SslEnforcementPolicy(
+                SslEnforcementPolicyConfiguration.builder()
+                    .requiresSsl(true)
+                    .requiresClientAuthentication(true)
+                    .whitelistSubjectAlternativeNames(sans)
+                    .build()
+            );
+            request = acceptedRequest(policy, policyChain);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class OidState {
+
+        private SslEnforcementPolicy policy;
+
+        private Request request;
+
+        private final BenchmarkFixtures.RecordingPolicyChain policyChain = new BenchmarkFixtures.RecordingPolicyChain();
+
+        @Setup
+        public void setUp() throws Exception {
+            policy = new SslEnforcementPolicy(
+                SslEnforcementPolicyConfiguration.builder()
+                    .requiresSsl(true)
+                    .requiresClientAuthentication(true)
+                    .requiredCertificatePolicies(List.of(BenchmarkFixtures.POLICY_OID))
+                    .build()
+            );
+            request = acceptedRequest(policy, policyChain);
+        }
+    }
+
+    @Benchmark
+    public Object sanEnforcement(SanState state) {
+        state.policy.onRequest(state.request, null, state.policyChain.chain);
+        return state.policyChain.last();
+    }
+
+    @Benchmark
+    public Object oidEnforcement(OidState state) {
+        state.policy.onRequest(state.request, null, state.policyChain.chain);
+        return state.policyChain.last();
+    }
+
+    private static Request acceptedRequest(SslEnforcementPolicy policy, BenchmarkFixtures.RecordingPolicyChain policyChain)
+        throws Exception {
+        X509Certificate certificate = BenchmarkFixtures.certificate();
+        Request request = BenchmarkFixtures.request(BenchmarkFixtures.session(certificate), null);
+        policy.onRequest(request, null, policyChain.chain);
+        if (policyChain.last() != Boolean.TRUE) {
+            throw new IllegalStateException("Benchmark certificate is rejected: " + policyChain.last());
+        }
+        return request;
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.sslenforcement;
+
+import io.gravitee.gateway.api.Request;
+import io.gravitee.gateway.api.http.HttpHeaders;
+import io.gravitee.policy.sslenforcement.configuration.CertificateLocation;
+import io.gravitee.policy.sslenforcement.configuration.SslEnforcementPolicyConfiguration;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End-to-end {@link SslEnforcementPolicy#onRequest} with a subject DN allow-list of growing size. The presented
+ * certificate matches the last entry, written in a different RDN order than the certificate.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SslEnforcementPolicyBenchmark {
+
+    @Param({ "SESSION", "HEADER" })
+    private CertificateLocation certificateLocation;
+
+    @Param({ "1", "100", "10000", "100000" })
+    private int allowListSize;
+
+    private SslEnforcementPolicy policy;
+
+    private Request request;
+
+    private final BenchmarkFixtures.RecordingPolicyChain policyChain = new BenchmarkFixtures.RecordingPolicyChain();
+
+    @Setup
+    public void setUp() throws Exception {
+        X509Certificate certificate = BenchmarkFixtures.certificate();
+
+        List<String> allowList = new ArrayList<>(allowListSize);
+        for (int i = 1; i < allowListSize; i++) {
+            allowList.add("CN=partner-" + i + ",OU=Payments,O=GraviteeSource,L=Lille,C=FR");
+        }
+        allowList.add("C=FR,L=Lille,O=GraviteeSource,OU=Payments,CN=partner");
+
+        policy = new SslEnforcementPolicy(
+            SslEnforcementPolicyConfiguration.builder()
+                .requiresSsl(true)
+                .requiresClientAuthentication(true)
+                .whitelistClientCertificates(allowList)
+                .certificateLocation(certificateLocation)
+                .certificateHeaderName("ssl-client-cert")
+                .build()
+        );
+
+        HttpHeaders headers = HttpHeaders.create().set("ssl-client-cert", BenchmarkFixtures.urlEncodedPem(certificate));
+        request = BenchmarkFixtures.request(BenchmarkFixtures.session(certificate), headers);
+
+        policy.onRequest(request, null, policyChain.chain);
+        if (policyChain.last() != Boolean.TRUE) {
+            throw new IllegalStateException("Benchmark certificate is rejected: " + policyChain.last());
+        }
+    }
+
+    @Benchmark
+    public Object onRequest() {
+        policy.onRequest(request, null, policyChain.chain);
+        return policyChain.last();
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.sslenforcement;
+
+import java.util.concurrent.TimeUnit;
+import javax.security.auth.x500.X500Principal;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link X500NameComparator#areEqual} with the configured DN written in the same or in the reverse RDN order as the
+ * observed one, with and without Ant patterns, through both the public and the pre-compiled entry points.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class X500NameComparatorBenchmark {
+
+    @Param({ "FORWARD", "REVERSED" })
+    private String order;
+
+    @Param({ "false", "true" })
+    private boolean pattern;
+
+    private X500Name configured;
+
+    private X500Name observed;
+
+    private CompiledDn compiledConfigured;
+
+    private CompiledDn compiledObserved;
+
+    @Setup
+    public void setUp() {
+        String o = pattern ? "Gravitee*" : "GraviteeSource";
+        String dn = "FORWARD".equals(order)
+            ? "CN=partner,OU=Payments,O=" + o + ",L=Lille,C=FR"
+            : "C=FR,L=Lille,O=" + o + ",OU=Payments,CN=partner";
+        configured = new X500Name(new X500Principal(dn).getName());
+        observed = new X500Name(new X500Principal(BenchmarkFixtures.SUBJECT).getName());
+        compiledConfigured = CompiledDn.of(configured);
+        compiledObserved = CompiledDn.of(observed);
+        if (!X500NameComparator.areEqual(configured, observed)) {
+            throw new IllegalStateException("Benchmark DNs do not match");
+        }
+    }
+
+    @Benchmark
+    public boolean areEqual() {
+        return X500NameComparator.areEqual(configured, observed);
+    }
+
+    @Benchmark
+    public boolean areEqualCompiled() {
+        return X500NameComparator.areEqual(compiledConfigured, compiledObserved);
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.sslenforcement;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads an allow-list file: one entry per line, UTF-8, blank lines and lines starting with {@code #} ignored, leading
+ * and trailing whitespace (including the {@code \r} of CRLF line endings) trimmed.
+ * <p>
+ * The file is read in one go and scanned for line breaks in place, so a file of tens of thousands of entries is read
+ * without going through a {@code BufferedReader}; only the entries themselves are copied. It is deliberately not
+ * memory-mapped: a file truncated while mapped, e.g. rewritten in place by a deployment tool, crashes the JVM with a
+ * {@code SIGBUS} instead of failing the reload.
+ *
+ * @author GraviteeSource Team
+ */
+final class AllowListFile {
+
+    private static final byte[] UTF8_BOM = { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF };
+
+    private AllowListFile() {}
+
+    static List<String> readEntries(Path file) throws IOException {
+        return readEntries(Files.readAllBytes(file));
+    }
+
+    private static List<String> readEntries(byte[] content) {
+        List<String> entries = new ArrayList<>();
+        int size = content.length;
+        int start = hasBom(content) ? UTF8_BOM.length : 0;
+        while (start < size) {
+            int end = start;
+            while (end < size && content[end] != '\n') {
+                end++;
+            }
+            int from = start;
+            int to = end;
+            while (from < to && isWhitespace(content[from])) {
+                from++;
+            }
+            while (to > from && isWhitespace(content[to - 1])) {
+                to--;
+            }
+            if (from < to && content[from] != '#') {
+                entries.add(new String(content, from, to - from, StandardCharsets.UTF_8));
+            }
+            start = end + 1;
+        }
+        return entries;
+    }
+
+    private static boolean hasBom(byte[] content) {
+        if (content.length < UTF8_BOM.length) {
+            return false;
+        }
+        for (int i = 0; i < UTF8_BOM.length; i++) {
+            if (content[i] != UTF8_BOM[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r';
+    }
+}
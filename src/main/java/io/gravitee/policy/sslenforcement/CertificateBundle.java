@@ -0,0 +1,56 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.sslenforcement;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the certificates of a local PEM bundle (or of a single DER certificate) configured on the gateway.
+ *
+ * @author GraviteeSource Team
+ */
+final class CertificateBundle {
+
+    private CertificateBundle() {}
+
+    /**
+     * @param description what the certificates are for, used in error messages.
+     * @throws IllegalArgumentException if the file cannot be read or holds no certificate.
+     */
+    static List<X509Certificate> read(String file, String description) {
+        try (InputStream in = Files.newInputStream(Path.of(file))) {
+            List<X509Certificate> certificates = new ArrayList<>();
+            for (Certificate certificate : CertificateFactory.getInstance("X.509").generateCertificates(in)) {
+                certificates.add((X509Certificate) certificate);
+            }
+            if (certificates.isEmpty()) {
+                throw new IllegalArgumentException("No certificate found in " + description + " file " + file);
+            }
+            return certificates;
+        } catch (IOException | CertificateException e) {
+            throw new IllegalArgumentException("Unable to read " + description + " file " + file, e);
+        }
+    }
+}
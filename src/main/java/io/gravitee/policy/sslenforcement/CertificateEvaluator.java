@@ -0,0 +1,132 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.sslenforcement;
+
+import io.gravitee.policy.sslenforcement.configuration.SslEnforcementPolicyConfiguration;
+import java.security.cert.X509Certificate;
+import java.util.List;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Evaluates certificates against a policy configuration outside of any request, e.g. to audit a certificate inventory
+ * before deploying the configuration. It runs the checks compiled by the policy: pinning, chain validation, client and
+ * issuer DN whitelists, CRL revocation, required policy OIDs and SAN whitelist. Transport checks (SSL,
+ * {@code X-Forwarded-Proto}) and stapled OCSP responses only exist on a live connection and are not evaluated.
+ * <p>
+ * Evaluations are not recorded in the metrics of the policy. CRLs past their {@code nextUpdate} are re-read in the
+ * background, as on requests.
+ * <p>
+ * Evaluators are thread-safe. The batch methods evaluate their inputs on a parallel stream, i.e. on the common
+ * {@link java.util.concurrent.ForkJoinPool} unless the terminal operation is run from a task of another pool, and
+ * hand each result to the stream as soon as it is computed: results come in no particular order and carry the index
+ * of their input.
+ *
+ * @author GraviteeSource Team
+ */
+@Slf4j
+public final class CertificateEvaluator implements AutoCloseable {
+
+    private final SslEnforcementPolicy policy;
+
+    // Whether the policy was compiled for this evaluator, and is closed with it.
+    private final boolean ownsPolicy;
+
+    CertificateEvaluator(SslEnforcementPolicy policy) {
+        this(policy, false);
+    }
+
+    private CertificateEvaluator(SslEnforcementPolicy policy, boolean ownsPolicy) {
+        this.policy = policy;
+        this.ownsPolicy = ownsPolicy;
+    }
+
+    /**
+     * Compiles the configuration into a new policy instance, which watches its allow-list and CRL files until the
+     * evaluator is closed.
+     *
+     * @throws IllegalArgumentException if the configuration holds an invalid entry or an unreadable file.
+     */
+    public static CertificateEvaluator of(SslEnforcementPolicyConfiguration configuration) {
+        return new CertificateEvaluator(new SslEnforcementPolicy(configuration), true);
+    }
+
+    /**
+     * Closes the policy compiled by {@link #of(SslEnforcementPolicyConfiguration)}. The policy of an evaluator obtained
+     * from {@link SslEnforcementPolicy#evaluator()} is left open: it belongs to the gateway.
+     */
+    @Override
+    public void close() {
+        if (ownsPolicy) {
+            policy.close();
+        }
+    }
+
+    public Verdict evaluate(X509Certificate certificate) {
+        return policy.evaluateCertificate(certificate);
+    }
+
+    /**
+     * @param pem a PEM certificate, as is or in one of the header encodings accepted by the policy, possibly followed by
+     * the intermediate CAs it chains to the trust anchors with. A value that cannot be decoded is evaluated as a
+     * missing certificate.
+     */
+    public Verdict evaluate(String pem) {
+        return evaluatePem(0, pem).verdict();
+    }
+
+    public Stream<Evaluation> evaluateAll(List<X509Certificate> certificates) {
+        return evaluateAll(
+            certificates.size(),
+            index -> new Evaluation(index, certificates.get(index), policy.evaluateCertificate(certificates.get(index)))
+        );
+    }
+
+    public Stream<Evaluation> evaluateAllPem(List<String> pems) {
+        return evaluateAll(pems.size(), index -> evaluatePem(index, pems.get(index)));
+    }
+
+    private static Stream<Evaluation> evaluateAll(int size, IntFunction<Evaluation> evaluation) {
+        // An index range splits evenly across workers, whatever the list implementation.
+        return IntStream.range(0, size).parallel().unordered().mapToObj(evaluation);
+    }
+
+    private Evaluation evaluatePem(int index, String pem) {
+        List<X509Certificate> bundle = decode(pem);
+        X509Certificate certificate = bundle.isEmpty() ? null : bundle.get(0);
+        return new Evaluation(index, certificate, policy.evaluateCertificate(certificate, bundle));
+    }
+
+    private static List<X509Certificate> decode(String pem) {
+        if (pem == null) {
+            return List.of();
+        }
+        try {
+            return CertificateHeaderDecoder.decodeAll(pem);
+        } catch (Exception e) {
+            log.debug("Unable to decode certificate", e);
+            return List.of();
+        }
+    }
+
+    /**
+     * @param index position of the certificate in the evaluated list.
+     * @param certificate the evaluated certificate, {@code null} when it could not be decoded.
+     */
+    public record Evaluation(int index, X509Certificate certificate, Verdict verdict) {}
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.sslenforcement;
+
+import java.lang.ref.WeakReference;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * SHA-256 digest of a certificate's DER encoding, usable as a hash key.
+ * <p>
+ * The fingerprints of the last certificates seen are memoized per certificate object, like
+ * {@link SubjectAlternativeNames}, so that the verdict cache, chain validation and the decision audit hash a cached
+ * header or TLS session certificate once between them rather than once each per request.
+ *
+ * @author GraviteeSource Team
+ */
+final class CertificateFingerprint {
+
+    static final int LENGTH = 32;
+
+    private static final int MEMO_SIZE = 256;
+
+    private static final AtomicReferenceArray<Memo> MEMO = new AtomicReferenceArray<>(MEMO_SIZE);
+
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every JRE is required to ship SHA-256.
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private final byte[] digest;
+    private final int hashCode;
+
+    private CertificateFingerprint(byte[] digest) {
+        this.digest = digest;
+        this.hashCode = Arrays.hashCode(digest);
+    }
+
+    /**
+     * @return the fingerprint of the certificate, or {@code null} if it cannot be DER-encoded.
+     */
+    static CertificateFingerprint of(X509Certificate certificate) {
+        int slot = System.identityHashCode(certificate) & (MEMO_SIZE - 1);
+        Memo memo = MEMO.get(slot);
+        if (memo != null && memo.certificate.get() == certificate) {
+            return memo.fingerprint;
+        }
+        CertificateFingerprint fingerprint;
+        try {
+            byte[] encoded = certificate.getEncoded();
+            fingerprint = encoded == null ? null : of(encoded);
+        } catch (CertificateEncodingException e) {
+            return null;
+        }
+        MEMO.set(slot, new Memo(new WeakReference<>(certificate), fingerprint));
+        return fingerprint;
+    }
+
+    static CertificateFingerprint of(byte[] der) {
+        MessageDigest sha256 = SHA_256.get();
+        sha256.reset();
+        return new CertificateFingerprint(sha256.digest(der));
+    }
+
+    /**
+     * @param digest a SHA-256 digest computed elsewhere, e.g. by a proxy, owned by the fingerprint from now on.
+     */
+    static CertificateFingerprint ofDigest(byte[] digest) {
+        return new CertificateFingerprint(digest);
+    }
+
+    /**
+     * @return the digest itself, not a copy: not to be modified.
+     */
+    byte[] digest() {
+        return digest;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        return o instanceof CertificateFingerprint other && hashCode == other.hashCode && Arrays.equals(digest, other.digest);
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(LENGTH * 2);
+        for (byte b : digest) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    private record Memo(WeakReference<X509Certificate> certificate, CertificateFingerprint fingerprint) {}
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.sslenforcement;
+
+import java.io.ByteArrayInputStream;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Decodes a certificate forwarded in a header in a single pass over the header value: percent-escapes are decoded,
+ * PEM armor lines and whitespace (including the tabs some proxies put in place of line breaks) are skipped, and the
+ * Base64 body is decoded straight into a per-thread buffer, without any intermediate String. Raw Base64 DER, without
+ * armor, is accepted as well. {@link #decode(String)} only decodes the first certificate of a bundle,
+ * {@link #decodeAll(String)} the whole bundle, e.g. to validate the chain presented with the certificate.
+ * <p>
+ * Unlike {@link java.net.URLDecoder}, {@code +} is kept as is: it is a Base64 character, not an escaped space.
+ *
+ * @author GraviteeSource Team
+ */
+final class CertificateHeaderDecoder {
+
+    private static final int INITIAL_BUFFER_SIZE = 2048;
+
+    // More than any real chain, so that a crafted header cannot make the policy decode thousands of certificates.
+    static final int MAX_CHAIN_LENGTH = 10;
+
+    private static final byte[] BASE64 = new byte[128];
+
+    private static final ThreadLocal<CertificateFactory> X509_FACTORY = ThreadLocal.withInitial(() -> {
+        try {
+            return CertificateFactory.getInstance("X.509");
+        } catch (CertificateException e) {
+            // Every JRE is required to ship an X.509 certificate factory.
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private static final ThreadLocal<byte[][]> BUFFER = ThreadLocal.withInitial(() -> new byte[][] { new byte[INITIAL_BUFFER_SIZE] });
+
+    static {
+        Arrays.fill(BASE64, (byte) -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < alphabet.length(); i++) {
+            BASE64[alphabet.charAt(i)] = (byte) i;
+        }
+    }
+
+    private CertificateHeaderDecoder() {}
+
+    /**
+     * @throws CertificateException if the value is not a certificate.
+     */
+    static X509Certificate decode(String value) throws CertificateException {
+        byte[][] holder = BUFFER.get();
+        int length = decodeDer(value, holder, new int[1]);
+        if (length <= 0) {
+            throw new CertificateException("Header value is not a Base64 or PEM encoded certificate");
+        }
+        // The factory copies what it reads, so the buffer can be reused right away.
+        return (X509Certificate) X509_FACTORY.get().generateCertificate(new ByteArrayInputStream(holder[0], 0, length));
+    }
+
+    /**
+     * @return the DER encoding of the certificate in {@code value}, or {@code null} when it is not valid Base64 or PEM.
+     */
+    static byte[] toDer(String value) {
+        byte[][] holder = new byte[][] { new byte[INITIAL_BUFFER_SIZE] };
+        int length = decodeDer(value, holder, new int[1]);
+        return length <= 0 ? null : Arrays.copyOf(holder[0], length);
+    }
+
+    /**
+     * @return the certificates of the PEM bundle in {@code value}, in order, up to {@link #MAX_CHAIN_LENGTH}.
+     * @throws CertificateException if a certificate of the bundle cannot be decoded.
+     */
+    static List<X509Certificate> decodeAll(String value) throws CertificateException {
+        byte[][] holder = BUFFER.get();
+        int[] position = new int[1];
+        List<X509Certificate> certificates = new ArrayList<>(3);
+        while (position[0] < value.length() && certificates.size() < MAX_CHAIN_LENGTH) {
+            int length = decodeDer(value, holder, position);
+            if (length < 0) {
+                throw new CertificateException("Header value is not a Base64 or PEM encoded certificate bundle");
+            }
+            if (length == 0) {
+                // Only whitespace after the last certificate.
+                break;
+            }
+            certificates.add((X509Certificate) X509_FACTORY.get().generateCertificate(new ByteArrayInputStream(holder[0], 0, length)));
+        }
+        return certificates;
+    }
+
+    /**
+     * Decodes the certificate starting at {@code position[0]} into {@code holder[0]}, replacing it with a larger array
+     * when needed, and moves {@code position[0]} past its END line.
+     *
+     * @return the number of decoded bytes, or -1 when the value is not valid Base64 or PEM.
+     */
+    private static int decodeDer(String value, byte[][] holder, int[] position) {
+        byte[] out = holder[0];
+        int maxLength = (value.length() - position[0]) * 3 / 4;
+        if (out.length < maxLength) {
+            out = new byte[Math.max(maxLength, out.length * 2)];
+            holder[0] = out;
+        }
+        int length = 0;
+        int bits = 0;
+        int pendingBits = 0;
+        boolean padded = false;
+        // 0: Base64 body, 1: leading dashes of an armor line, 2: its label, 3: its trailing dashes.
+        int armor = 0;
+        int armorLines = 0;
+        int dashes = 0;
+        int end = value.length();
+        int i = position[0];
+        for (; i < end; i++) {
+            int c = value.charAt(i);
+            if (c == '%') {
+                if (i + 2 >= end) {
+                    return -1;
+                }
+                int high = Character.digit(value.charAt(i + 1), 16);
+                int low = Character.digit(value.charAt(i + 2), 16);
+                if (high < 0 || low < 0) {
+                    return -1;
+                }
+                c = (high << 4) | low;
+                i += 2;
+            }
+            if (armor != 0 || c == '-') {
+                if (armor == 0) {
+                    armor = 1;
+                } else if (armor == 1 && c != '-') {
+                    armor = 2;
+                } else if (armor == 2 && c == '-') {
+                    armor = 3;
+                    dashes = 1;
+                } else if (armor == 3 && c != '-') {
+                    armor = 2;
+                } else if (armor == 3 && ++dashes == 5) {
+                    armor = 0;
+                    if (++armorLines == 2) {
+                        // END line of the certificate.
+                        i++;
+                        break;
+                    }
+                }
+                continue;
+            }
+            if (c == ' ' || c == '\t' || c == '\r' || c == '\n') {
+                continue;
+            }
+            if (c == '=') {
+                padded = true;
+                continue;
+            }
+            int sextet = c < 128 ? BASE64[c] : -1;
+            if (sextet < 0 || padded) {
+                return -1;
+            }
+            bits = (bits << 6) | sextet;
+            pendingBits += 6;
+            if (pendingBits >= 8) {
+                pendingBits -= 8;
+                out[length++] = (byte) (bits >> pendingBits);
+            }
+        }
+        position[0] = i;
+        return armor != 0 || armorLines == 1 ? -1 : length;
+    }
+}
@@ -0,0 +1,562 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.sslenforcement;
+
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import javax.security.auth.x500.X500Principal;
+import org.bouncycastle.asn1.x500.X500Name;
+
+/**
+ * A boolean expression over the client certificate, e.g.
+ * {@code (issuer = 'CN=Partners CA' AND san = '*.a.com') OR (issuer = 'CN=Banks CA' AND oid = '0.4.0.19495.1.3')}.
+ * <pre>
+ * expression := term ("OR" term)*
+ * term       := factor ("AND" factor)*
+ * factor     := "NOT" factor | "(" expression ")" | attribute "=" value
+ * attribute  := "subject" | "issuer" | "san" | "oid"
+ * value      := a single- or double-quoted string, with backslash escapes
+ * </pre>
+ * {@code subject} and {@code issuer} values are DNs compared like the DN whitelists, {@code san} values are Ant
+ * patterns matched against every Subject Alternative Name like the SAN whitelist, and {@code oid} values are
+ * certificatePolicies OIDs. Keywords and attributes are case-insensitive.
+ * <p>
+ * The expression is compiled once into a graph of precompiled predicates:
+ * <ul>
+ *     <li>the DN or SAN conditions OR-ed together are merged into one allow-list, looked up once, and the OID
+ *     conditions AND-ed together into one walk of the certificatePolicies extension;</li>
+ *     <li>identical sub-expressions are compiled into one node, evaluated at most once per certificate;</li>
+ *     <li>the operands of every AND and OR are ordered by estimated cost, so that cheap conditions short-circuit
+ *     expensive ones.</li>
+ * </ul>
+ * The subject, issuer, Subject Alternative Names and certificatePolicies of a certificate are each read at most once,
+ * when a predicate first needs them, and shared by every predicate of the evaluation.
+ *
+ * @author GraviteeSource Team
+ */
+final class CertificateRule {
+
+    private static final byte TRUE = 1;
+
+    private static final byte FALSE = 2;
+
+    private final String expression;
+
+    private final Node root;
+
+    private final int nodes;
+
+    private CertificateRule(String expression, Node root, int nodes) {
+        this.expression = expression;
+        this.root = root;
+        this.nodes = nodes;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the expression is not valid, or holds an invalid DN or OID.
+     */
+    static CertificateRule compile(String expression) {
+        Expression parsed = new Parser(expression).parse();
+        Compiler compiler = new Compiler();
+        Node root = compiler.compile(parsed);
+        return new CertificateRule(expression, root, compiler.nodes.size());
+    }
+
+    boolean matches(X509Certificate certificate) {
+        return root.test(new Evaluation(certificate, nodes));
+    }
+
+    /**
+     * @return the number of distinct nodes the expression was compiled into.
+     */
+    int size() {
+        return nodes;
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+
+    private enum Attribute {
+        SUBJECT(2_000),
+        ISSUER(2_000),
+        SAN(3_000),
+        OID(300);
+
+        private final int cost;
+
+        Attribute(int cost) {
+            this.cost = cost;
+        }
+    }
+
+    private sealed interface Expression {}
+
+    private record Match(Attribute attribute, Set<String> values) implements Expression {}
+
+    private record All(List<Expression> operands) implements Expression {}
+
+    private record Any(List<Expression> operands) implements Expression {}
+
+    private record Not(Expression operand) implements Expression {}
+
+    /**
+     * What has been read from the certificate and computed so far, for one evaluation.
+     */
+    private static final class Evaluation {
+
+        private final X509Certificate certificate;
+
+        private final byte[] results;
+
+        private CompiledDn subject;
+
+        private CompiledDn issuer;
+
+        private boolean subjectRead;
+
+        private boolean issuerRead;
+
+        private SubjectAlternativeNames names;
+
+        private byte[] policies;
+
+        private boolean policiesRead;
+
+        private Evaluation(X509Certificate certificate, int nodes) {
+            this.certificate = certificate;
+            this.results = new byte[nodes];
+        }
+
+        /**
+         * @return the compiled subject, or {@code null} when it cannot be parsed.
+         */
+        private CompiledDn subject() {
+            if (!subjectRead) {
+                subject = compileDn(certificate.getSubjectX500Principal());
+                subjectRead = true;
+            }
+            return subject;
+        }
+
+        /**
+         * @return the compiled issuer, or {@code null} when it cannot be parsed.
+         */
+        private CompiledDn issuer() {
+            if (!issuerRead) {
+                issuer = compileDn(certificate.getIssuerX500Principal());
+                issuerRead = true;
+            }
+            return issuer;
+        }
+
+        private static CompiledDn compileDn(X500Principal principal) {
+            try {
+                return CompiledDn.of(new X500Name(principal.getName()));
+            } catch (IllegalArgumentException e) {
+                // e.g. an empty RDN, which BouncyCastle refuses to parse back from its RFC 2253 form.
+                return null;
+            }
+        }
+
+        private SubjectAlternativeNames names() {
+            if (names == null) {
+                names = SubjectAlternativeNames.of(certificate);
+            }
+            return names;
+        }
+
+        private byte[] policies() {
+            if (!policiesRead) {
+                policies = certificate.getExtensionValue(RequiredPolicyOids.CERTIFICATE_POLICIES_OID);
+                policiesRead = true;
+            }
+            return policies;
+        }
+    }
+
+    private abstract static class Node {
+
+        private final int id;
+
+        private final long cost;
+
+        private Node(int id, long cost) {
+            this.id = id;
+            this.cost = cost;
+        }
+
+        private boolean test(Evaluation evaluation) {
+            byte result = evaluation.results[id];
+            if (result == 0) {
+                result = evaluate(evaluation) ? TRUE : FALSE;
+                evaluation.results[id] = result;
+            }
+            return result == TRUE;
+        }
+
+        abstract boolean evaluate(Evaluation evaluation);
+    }
+
+    private static final class DnNode extends Node {
+
+        private final DnAllowList allowed;
+
+        private final boolean issuer;
+
+        private DnNode(int id, DnAllowList allowed, Attribute attribute) {
+            super(id, attribute.cost);
+            this.allowed = allowed;
+            this.issuer = attribute == Attribute.ISSUER;
+        }
+
+        @Override
+        boolean evaluate(Evaluation evaluation) {
+            CompiledDn name = issuer ? evaluation.issuer() : evaluation.subject();
+            return name != null && allowed.matches(name);
+        }
+    }
+
+    private static final class SanNode extends Node {
+
+        private final SanAllowList allowed;
+
+        private SanNode(int id, SanAllowList allowed) {
+            super(id, Attribute.SAN.cost);
+            this.allowed = allowed;
+        }
+
+        @Override
+        boolean evaluate(Evaluation evaluation) {
+            return allowed.matchesAny(evaluation.names());
+        }
+    }
+
+    private static final class OidNode extends Node {
+
+        private final RequiredPolicyOids required;
+
+        private OidNode(int id, RequiredPolicyOids required) {
+            super(id, Attribute.OID.cost);
+            this.required = required;
+        }
+
+        @Override
+        boolean evaluate(Evaluation evaluation) {
+            byte[] policies = evaluation.policies();
+            return policies != null && required.areAllPresentIn(policies);
+        }
+    }
+
+    private static final class AllNode extends Node {
+
+        private final Node[] operands;
+
+        private AllNode(int id, Node[] operands) {
+            super(id, totalCost(operands));
+            this.operands = operands;
+        }
+
+        @Override
+        boolean evaluate(Evaluation evaluation) {
+            for (Node operand : operands) {
+                if (!operand.test(evaluation)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class AnyNode extends Node {
+
+        private final Node[] operands;
+
+        private AnyNode(int id, Node[] operands) {
+            super(id, totalCost(operands));
+            this.operands = operands;
+        }
+
+        @Override
+        boolean evaluate(Evaluation evaluation) {
+            for (Node operand : operands) {
+                if (operand.test(evaluation)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final class NotNode extends Node {
+
+        private final Node operand;
+
+        private NotNode(int id, Node operand) {
+            super(id, operand.cost);
+            this.operand = operand;
+        }
+
+        @Override
+        boolean evaluate(Evaluation evaluation) {
+            return !operand.test(evaluation);
+        }
+    }
+
+    private static long totalCost(Node[] operands) {
+        long cost = 0;
+        for (Node operand : operands) {
+            cost += operand.cost;
+        }
+        return cost;
+    }
+
+    /**
+     * Compiles expressions into nodes, merging conditions and reusing the node of any sub-expression seen before,
+     * keyed by a canonical form that does not depend on the order of operands.
+     */
+    private static final class Compiler {
+
+        private final Map<String, Node> nodes = new HashMap<>();
+
+        private Node compile(Expression expression) {
+            if (expression instanceof Match match) {
+                return compile(match);
+            }
+            if (expression instanceof Not not) {
+                if (not.operand() instanceof Not twice) {
+                    return compile(twice.operand());
+                }
+                Node operand = compile(not.operand());
+                return nodes.computeIfAbsent("!" + operand.id, key -> new NotNode(nodes.size(), operand));
+            }
+            boolean all = expression instanceof All;
+            List<Expression> operands = new ArrayList<>();
+            flatten(expression, all, operands);
+            Set<Node> compiled = new LinkedHashSet<>();
+            for (Expression operand : merge(operands, all)) {
+                compiled.add(compile(operand));
+            }
+            if (compiled.size() == 1) {
+                return compiled.iterator().next();
+            }
+            Node[] ordered = compiled.toArray(new Node[0]);
+            Arrays.sort(ordered, Comparator.<Node>comparingLong(node -> node.cost).thenComparingInt(node -> node.id));
+            StringBuilder key = new StringBuilder(all ? "&" : "|");
+            for (Node node : ordered) {
+                key.append(node.id).append(',');
+            }
+            Node node = nodes.get(key.toString());
+            if (node == null) {
+                node = all ? new AllNode(nodes.size(), ordered) : new AnyNode(nodes.size(), ordered);
+                nodes.put(key.toString(), node);
+            }
+            return node;
+        }
+
+        private Node compile(Match match) {
+            String key = match.attribute() + "=" + String.join("\u0000", new TreeSet<>(match.values()));
+            Node node = nodes.get(key);
+            if (node == null) {
+                List<String> values = List.copyOf(match.values());
+                int id = nodes.size();
+                node =
+                    switch (match.attribute()) {
+                        case SUBJECT, ISSUER -> new DnNode(id, DnAllowList.compile(values), match.attribute());
+                        case SAN -> new SanNode(id, SanAllowList.compile(values));
+                        case OID -> new OidNode(id, RequiredPolicyOids.compile(values));
+                    };
+                nodes.put(key, node);
+            }
+            return node;
+        }
+
+        private static void flatten(Expression expression, boolean all, List<Expression> operands) {
+            List<Expression> nested = all
+                ? (expression instanceof All a ? a.operands() : null)
+                : (expression instanceof Any a ? a.operands() : null);
+            if (nested == null) {
+                operands.add(expression);
+                return;
+            }
+            for (Expression operand : nested) {
+                flatten(operand, all, operands);
+            }
+        }
+
+        /**
+         * OR-ed DN and SAN conditions on the same attribute become one allow-list, and AND-ed OID conditions one set
+         * of required OIDs: the only merges that keep the meaning of the expression.
+         */
+        private static List<Expression> merge(List<Expression> operands, boolean all) {
+            Map<Attribute, Set<String>> merged = new HashMap<>();
+            List<Expression> result = new ArrayList<>(operands.size());
+            for (Expression operand : operands) {
+                if (operand instanceof Match match && (match.attribute() == Attribute.OID) == all) {
+                    Set<String> values = merged.get(match.attribute());
+                    if (values == null) {
+                        values = new LinkedHashSet<>(match.values());
+                        merged.put(match.attribute(), values);
+                        result.add(new Match(match.attribute(), values));
+                    } else {
+                        values.addAll(match.values());
+                    }
+                } else {
+                    result.add(operand);
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Recursive descent parser of the grammar above.
+     */
+    private static final class Parser {
+
+        private final String source;
+
+        private int pos;
+
+        private Parser(String source) {
+            this.source = source;
+        }
+
+        private Expression parse() {
+            Expression expression = expression();
+            skipWhitespace();
+            if (pos < source.length()) {
+                throw error("unexpected '" + source.charAt(pos) + "'");
+            }
+            return expression;
+        }
+
+        private Expression expression() {
+            List<Expression> operands = new ArrayList<>();
+            operands.add(term());
+            while (keyword("OR")) {
+                operands.add(term());
+            }
+            return operands.size() == 1 ? operands.get(0) : new Any(operands);
+        }
+
+        private Expression term() {
+            List<Expression> operands = new ArrayList<>();
+            operands.add(factor());
+            while (keyword("AND")) {
+                operands.add(factor());
+            }
+            return operands.size() == 1 ? operands.get(0) : new All(operands);
+        }
+
+        private Expression factor() {
+            if (keyword("NOT")) {
+                return new Not(factor());
+            }
+            skipWhitespace();
+            if (pos < source.length() && source.charAt(pos) == '(') {
+                pos++;
+                Expression expression = expression();
+                skipWhitespace();
+                if (pos >= source.length() || source.charAt(pos) != ')') {
+                    throw error("expected ')'");
+                }
+                pos++;
+                return expression;
+            }
+            int start = pos;
+            String word = word();
+            Attribute attribute;
+            try {
+                attribute = Attribute.valueOf(word.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                pos = start;
+                throw error(word.isEmpty() ? "expected a condition" : "unknown attribute '" + word + "'");
+            }
+            skipWhitespace();
+            if (pos >= source.length() || source.charAt(pos) != '=') {
+                throw error("expected '='");
+            }
+            pos++;
+            Set<String> values = new LinkedHashSet<>();
+            values.add(value());
+            return new Match(attribute, values);
+        }
+
+        private String value() {
+            skipWhitespace();
+            char quote = pos < source.length() ? source.charAt(pos) : 0;
+            if (quote != '\'' && quote != '"') {
+                throw error("expected a quoted value");
+            }
+            StringBuilder sb = new StringBuilder();
+            for (int i = pos + 1; i < source.length(); i++) {
+                char c = source.charAt(i);
+                if (c == quote) {
+                    pos = i + 1;
+                    return sb.toString();
+                }
+                if (c == '\\' && i + 1 < source.length()) {
+                    c = source.charAt(++i);
+                }
+                sb.append(c);
+            }
+            throw error("unterminated value");
+        }
+
+        private boolean keyword(String keyword) {
+            skipWhitespace();
+            int end = pos + keyword.length();
+            if (
+                source.regionMatches(true, pos, keyword, 0, keyword.length()) &&
+                (end == source.length() || !Character.isLetter(source.charAt(end)))
+            ) {
+                pos = end;
+                return true;
+            }
+            return false;
+        }
+
+        private String word() {
+            skipWhitespace();
+            int start = pos;
+            while (pos < source.length() && Character.isLetter(source.charAt(pos))) {
+                pos++;
+            }
+            return source.substring(start, pos);
+        }
+
+        private void skipWhitespace() {
+            while (pos < source.length() && Character.isWhitespace(source.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException("Invalid certificate rule at position " + pos + ": " + message + " in '" + source + "'");
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.sslenforcement;
+
+import io.gravitee.policy.sslenforcement.cache.BoundedCache;
+import io.gravitee.policy.sslenforcement.cache.CacheStats;
+import java.security.GeneralSecurityException;
+import java.security.cert.CertPath;
+import java.security.cert.CertPathBuilder;
+import java.security.cert.CertStore;
+import java.security.cert.Certificate;
+import java.security.cert.CollectionCertStoreParameters;
+import java.security.cert.PKIXBuilderParameters;
+import java.security.cert.TrustAnchor;
+import java.security.cert.X509CertSelector;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Validates client certificates that did not go through a TLS handshake with the gateway, i.e. forwarded in a header,
+ * with the PKIX algorithm of {@link CertPathBuilder}: a path is built from the certificate to one of the configured
+ * trust anchors through the intermediate CAs presented with it, then the signature, validity period, basic constraints
+ * and key usages of each certificate of the path are checked. Revocation is left to the CRL and OCSP stages.
+ * <p>
+ * Successful validations are cached by certificate fingerprint until the first certificate of the path expires, so
+ * the path of a given certificate is built once rather than on every request. Failures are not cached.
+ *
+ * @author GraviteeSource Team
+ */
+@Slf4j
+final class ChainValidator {
+
+    private final Set<TrustAnchor> trustAnchors;
+
+    private final BoundedCache<CertificateFingerprint, Boolean> validated;
+
+    ChainValidator(List<X509Certificate> trustAnchors, int cacheMaxSize) {
+        Set<TrustAnchor> anchors = new HashSet<>();
+        for (X509Certificate trustAnchor : trustAnchors) {
+            anchors.add(new TrustAnchor(trustAnchor, null));
+        }
+        this.trustAnchors = Set.copyOf(anchors);
+        this.validated = new BoundedCache<>(cacheMaxSize, Duration.ZERO);
+    }
+
+    boolean isValid(X509Certificate certificate) {
+        return isValid(certificate, List::of);
+    }
+
+    /**
+     * @param presentedChain the certificates presented with {@code certificate}, only read when it is not cached yet.
+     * The certificate itself and the trust anchors may be part of it.
+     */
+    boolean isValid(X509Certificate certificate, Supplier<List<X509Certificate>> presentedChain) {
+        CertificateFingerprint fingerprint = CertificateFingerprint.of(certificate);
+        if (fingerprint != null && validated.get(fingerprint) != null) {
+            return true;
+        }
+        long now = System.currentTimeMillis();
+        long notAfter = certificate.getNotAfter().getTime();
+        try {
+            List<X509Certificate> candidates = new ArrayList<>(presentedChain.get());
+            candidates.add(certificate);
+            X509CertSelector target = new X509CertSelector();
+            target.setCertificate(certificate);
+            PKIXBuilderParameters parameters = new PKIXBuilderParameters(trustAnchors, target);
+            parameters.setRevocationEnabled(false);
+            parameters.setDate(new Date(now));
+            parameters.addCertStore(CertStore.getInstance("Collection", new CollectionCertStoreParameters(candidates)));
+            CertPath path = CertPathBuilder.getInstance("PKIX").build(parameters).getCertPath();
+            for (Certificate intermediate : path.getCertificates()) {
+                notAfter = Math.min(notAfter, ((X509Certificate) intermediate).getNotAfter().getTime());
+            }
+        } catch (GeneralSecurityException e) {
+            log.debug("Client certificate {} failed chain validation", certificate.getSubjectX500Principal().getName(), e);
+            return false;
+        }
+        if (fingerprint != null) {
+            validated.put(fingerprint, Boolean.TRUE, Duration.ofMillis(notAfter - now).toNanos());
+        }
+        return true;
+    }
+
+    CacheStats stats() {
+        return validated.stats();
+    }
+}
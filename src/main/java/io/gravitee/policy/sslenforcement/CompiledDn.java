@@ -0,0 +1,130 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.sslenforcement;
+
+import java.util.Arrays;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.x500.AttributeTypeAndValue;
+import org.bouncycastle.asn1.x500.RDN;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x500.style.IETFUtils;
+
+/**
+ * Distinguished name with every attribute value canonicalized once ({@link IETFUtils#canonicalize}) so that it can
+ * be compared many times by {@link X500NameComparator} without re-rendering or re-allocating value strings.
+ * Configured DNs are compiled when the policy is built, the observed DN once per request.
+ *
+ * @author GraviteeSource Team
+ */
+final class CompiledDn {
+
+    private final Rdn[] rdns;
+
+    private final boolean pattern;
+
+    private String canonicalKey;
+
+    private CompiledDn(Rdn[] rdns) {
+        this.rdns = rdns;
+        boolean hasPattern = false;
+        for (Rdn rdn : rdns) {
+            for (String value : rdn.values) {
+                hasPattern |= isPattern(value);
+            }
+        }
+        this.pattern = hasPattern;
+    }
+
+    static CompiledDn of(X500Name name) {
+        RDN[] source = name.getRDNs();
+        Rdn[] rdns = new Rdn[source.length];
+        for (int i = 0; i < source.length; i++) {
+            AttributeTypeAndValue[] atvs = source[i].getTypesAndValues();
+            ASN1ObjectIdentifier[] types = new ASN1ObjectIdentifier[atvs.length];
+            String[] values = new String[atvs.length];
+            for (int j = 0; j < atvs.length; j++) {
+                types[j] = atvs[j].getType();
+                values[j] = IETFUtils.canonicalize(IETFUtils.valueToString(atvs[j].getValue()));
+            }
+            rdns[i] = new Rdn(types, values, source[i].isMultiValued());
+        }
+        return new CompiledDn(rdns);
+    }
+
+    Rdn[] rdns() {
+        return rdns;
+    }
+
+    /**
+     * @return whether any attribute value is an Ant pattern rather than a literal.
+     */
+    boolean isPattern() {
+        return pattern;
+    }
+
+    /**
+     * Key that is equal for two DNs exactly when they hold the same multiset of RDNs, whatever their order,
+     * comparing attribute values the same way as {@link X500NameComparator} does for wildcard-free values. Like the
+     * comparator, attributes inside a multi-valued RDN are compared by position, so they are kept in order.
+     * Computed lazily: patterns never need it and observed DNs need it at most once.
+     */
+    String canonicalKey() {
+        String key = canonicalKey;
+        if (key == null) {
+            String[] rdnKeys = new String[rdns.length];
+            for (int i = 0; i < rdns.length; i++) {
+                Rdn rdn = rdns[i];
+                String[] atvKeys = new String[rdn.values.length];
+                for (int j = 0; j < atvKeys.length; j++) {
+                    atvKeys[j] = rdn.types[j].getId() + '=' + rdn.values[j];
+                }
+                rdnKeys[i] = String.join("+", atvKeys);
+            }
+            Arrays.sort(rdnKeys);
+            key = String.join(",", rdnKeys);
+            canonicalKey = key;
+        }
+        return key;
+    }
+
+    // Mirrors AntPathMatcher#isPattern: '{' starts a URI template variable, which matches like a wildcard.
+    private static boolean isPattern(String value) {
+        return value.indexOf('*') >= 0 || value.indexOf('?') >= 0 || value.indexOf('{') >= 0;
+    }
+
+    /**
+     * Compiled relative distinguished name: parallel arrays of attribute types and canonical values.
+     */
+    static final class Rdn {
+
+        final ASN1ObjectIdentifier[] types;
+        final String[] values;
+        final boolean multiValued;
+
+        private Rdn(ASN1ObjectIdentifier[] types, String[] values, boolean multiValued) {
+            this.types = types;
+            this.values = values;
+            this.multiValued = multiValued;
+        }
+
+        /**
+         * @return the type of the first attribute, or {@code null} for an empty RDN.
+         */
+        ASN1ObjectIdentifier firstType() {
+            return types.length == 0 ? null : types[0];
+        }
+    }
+}
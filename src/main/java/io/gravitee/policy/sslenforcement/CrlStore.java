@@ -0,0 +1,192 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.sslenforcement;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.cert.CRL;
+import java.security.cert.CRLException;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509CRL;
+import java.security.cert.X509CRLEntry;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.security.auth.x500.X500Principal;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Revoked certificates read from local CRL files (DER or PEM, several CRLs per file allowed), indexed by issuer in
+ * {@link RevokedSerials}. The files are trusted as they are: CRL signatures are not verified.
+ * <p>
+ * The index is replaced as a whole on {@link #reload()}, so a lookup sees either the previous CRLs or the new ones.
+ * CRLs are told apart by their signature value, which covers their number, {@code thisUpdate} and entries: reading
+ * the same CRLs again is not a change.
+ * <p>
+ * Once the earliest {@code nextUpdate} of the loaded CRLs has passed, {@link #refreshInBackground(Runnable)} reloads
+ * the files on a shared daemon thread, at most once a minute, until a fresher CRL is found; the previous index keeps
+ * being used meanwhile.
+ *
+ * @author GraviteeSource Team
+ */
+@Slf4j
+final class CrlStore {
+
+    static final long RETRY_DELAY_MILLIS = 60_000;
+
+    private static final ExecutorService REFRESHER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "gio-ssl-enforcement-crl-refresher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final List<Path> files;
+
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    private volatile Index index;
+
+    private volatile long nextAttemptMillis;
+
+    private CrlStore(List<Path> files, Index index) {
+        this.files = files;
+        this.index = index;
+    }
+
+    /**
+     * @throws IllegalArgumentException if a file cannot be read or does not hold valid CRLs.
+     */
+    static CrlStore load(List<String> files) {
+        List<Path> paths = files.stream().map(Path::of).toList();
+        return new CrlStore(paths, read(paths));
+    }
+
+    List<Path> files() {
+        return files;
+    }
+
+    int size() {
+        return index.size();
+    }
+
+    boolean isRevoked(X509Certificate certificate) {
+        RevokedSerials serials = index.revoked().get(certificate.getIssuerX500Principal());
+        return serials != null && serials.contains(certificate.getSerialNumber());
+    }
+
+    boolean isStale(long nowMillis) {
+        return nowMillis >= index.nextUpdateMillis() && nowMillis >= nextAttemptMillis;
+    }
+
+    /**
+     * Reloads the files on the refresher thread, unless a reload is already running, then runs {@code onReload} if
+     * the CRLs changed. {@code onReload} only has to account for the new CRLs: it must not read them again.
+     */
+    void refreshInBackground(Runnable onReload) {
+        if (!refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        REFRESHER.execute(() -> {
+            try {
+                if (reload()) {
+                    onReload.run();
+                }
+            } finally {
+                nextAttemptMillis = System.currentTimeMillis() + RETRY_DELAY_MILLIS;
+                refreshing.set(false);
+            }
+        });
+    }
+
+    /**
+     * @return whether the files could be read and hold other CRLs than the loaded ones; when they cannot be read, the
+     * previous CRLs are kept.
+     */
+    synchronized boolean reload() {
+        try {
+            Index reloaded = read(files);
+            if (System.currentTimeMillis() >= reloaded.nextUpdateMillis()) {
+                log.warn("CRLs reloaded from {} are past their nextUpdate, revocation information may be outdated", files);
+            }
+            if (reloaded.signatures().equals(index.signatures())) {
+                return false;
+            }
+            index = reloaded;
+            return true;
+        } catch (IllegalArgumentException e) {
+            log.warn("Unable to reload CRLs, keeping the previous ones", e);
+            return false;
+        }
+    }
+
+    private static Index read(List<Path> files) {
+        Map<X500Principal, List<BigInteger>> serialsByIssuer = new HashMap<>();
+        List<ByteBuffer> signatures = new ArrayList<>();
+        long nextUpdateMillis = Long.MAX_VALUE;
+        CertificateFactory factory;
+        try {
+            factory = CertificateFactory.getInstance("X.509");
+        } catch (CertificateException e) {
+            throw new IllegalStateException("X.509 certificate factory unavailable", e);
+        }
+        for (Path file : files) {
+            try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+                for (CRL crl : factory.generateCRLs(in)) {
+                    X509CRL x509Crl = (X509CRL) crl;
+                    signatures.add(ByteBuffer.wrap(x509Crl.getSignature()));
+                    if (x509Crl.getNextUpdate() != null) {
+                        nextUpdateMillis = Math.min(nextUpdateMillis, x509Crl.getNextUpdate().getTime());
+                    }
+                    Set<? extends X509CRLEntry> entries = x509Crl.getRevokedCertificates();
+                    if (entries == null) {
+                        continue;
+                    }
+                    for (X509CRLEntry entry : entries) {
+                        // Entries of indirect CRLs may name another issuer than the CRL's.
+                        X500Principal issuer = entry.getCertificateIssuer() != null
+                            ? entry.getCertificateIssuer()
+                            : x509Crl.getIssuerX500Principal();
+                        serialsByIssuer.computeIfAbsent(issuer, k -> new ArrayList<>()).add(entry.getSerialNumber());
+                    }
+                }
+            } catch (IOException | CRLException e) {
+                throw new IllegalArgumentException("Unable to read CRL file " + file, e);
+            }
+        }
+        Map<X500Principal, RevokedSerials> revoked = new HashMap<>(serialsByIssuer.size() * 2);
+        int size = 0;
+        for (Map.Entry<X500Principal, List<BigInteger>> issuerSerials : serialsByIssuer.entrySet()) {
+            RevokedSerials serials = RevokedSerials.of(issuerSerials.getValue());
+            revoked.put(issuerSerials.getKey(), serials);
+            size += serials.size();
+        }
+        return new Index(Map.copyOf(revoked), List.copyOf(signatures), nextUpdateMillis, size);
+    }
+
+    private record Index(Map<X500Principal, RevokedSerials> revoked, List<ByteBuffer> signatures, long nextUpdateMillis, int size) {}
+}
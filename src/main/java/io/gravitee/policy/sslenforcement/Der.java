@@ -0,0 +1,85 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.sslenforcement;
+
+/**
+ * Minimal DER reader working on offsets into the encoded bytes, for the few extensions the policy reads in place.
+ * Lengths are limited to four octets, which any certificate extension fits in.
+ *
+ * @author GraviteeSource Team
+ */
+final class Der {
+
+    static final int OCTET_STRING = 0x04;
+
+    static final int OBJECT_IDENTIFIER = 0x06;
+
+    static final int SEQUENCE = 0x30;
+
+    private Der() {}
+
+    /**
+     * Checks that a TLV with the given tag starts at {@code pos} and fits before {@code limit}.
+     *
+     * @return the offset of its contents, or -1 when the encoding does not match.
+     */
+    static int enter(byte[] der, int pos, int limit, int tag) {
+        if (pos + 2 > limit || (der[pos] & 0xFF) != tag) {
+            return -1;
+        }
+        int content = contentOffset(der, pos + 1);
+        if (content < 0 || content > limit) {
+            return -1;
+        }
+        long length = length(der, pos + 1);
+        return length < 0 || content + length > limit ? -1 : content;
+    }
+
+    /**
+     * @return the end offset of the contents of the TLV starting at {@code pos}, once checked by {@link #enter}.
+     */
+    static int contentEnd(byte[] der, int pos) {
+        return contentOffset(der, pos + 1) + (int) length(der, pos + 1);
+    }
+
+    static int contentOffset(byte[] der, int lengthPos) {
+        if (lengthPos >= der.length) {
+            return -1;
+        }
+        int first = der[lengthPos] & 0xFF;
+        if (first < 0x80) {
+            return lengthPos + 1;
+        }
+        int octets = first & 0x7F;
+        return octets == 0 || octets > 4 ? -1 : lengthPos + 1 + octets;
+    }
+
+    private static long length(byte[] der, int lengthPos) {
+        int first = der[lengthPos] & 0xFF;
+        if (first < 0x80) {
+            return first;
+        }
+        int octets = first & 0x7F;
+        if (lengthPos + octets >= der.length) {
+            return -1;
+        }
+        long length = 0;
+        for (int i = 1; i <= octets; i++) {
+            length = (length << 8) | (der[lengthPos + i] & 0xFF);
+        }
+        return length;
+    }
+}
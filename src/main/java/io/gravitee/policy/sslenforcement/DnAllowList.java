@@ -0,0 +1,89 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.sslenforcement;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import javax.security.auth.x500.X500Principal;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.springframework.util.CollectionUtils;
+
+/**
+ * Compiled DN allow-list. Wildcard-free entries are indexed in a hash set by a canonical, RDN-order-independent key,
+ * so the common case is one canonicalization of the observed DN plus an O(1) lookup. Only entries carrying Ant
+ * patterns fall back to a linear scan with {@link X500NameComparator}, on values canonicalized at compile time.
+ *
+ * @author GraviteeSource Team
+ */
+final class DnAllowList {
+
+    static final DnAllowList EMPTY = new DnAllowList(Set.of(), new CompiledDn[0], 0);
+
+    private final Set<String> exactKeys;
+
+    private final CompiledDn[] patterns;
+
+    private final int size;
+
+    private DnAllowList(Set<String> exactKeys, CompiledDn[] patterns, int size) {
+        this.exactKeys = exactKeys;
+        this.patterns = patterns;
+        this.size = size;
+    }
+
+    /**
+     * @throws IllegalArgumentException if an entry is not a valid distinguished name.
+     */
+    static DnAllowList compile(List<String> entries) {
+        if (CollectionUtils.isEmpty(entries)) {
+            return EMPTY;
+        }
+        Set<String> exactKeys = new HashSet<>(entries.size() * 2);
+        List<CompiledDn> patterns = new ArrayList<>();
+        for (String entry : entries) {
+            // Normalize through javax.security so BouncyCastle gets canonical ASN.1 object identifiers.
+            CompiledDn name = CompiledDn.of(new X500Name(new X500Principal(entry).getName()));
+            if (name.isPattern()) {
+                patterns.add(name);
+            } else {
+                exactKeys.add(name.canonicalKey());
+            }
+        }
+        return new DnAllowList(exactKeys, patterns.toArray(new CompiledDn[0]), entries.size());
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean matches(CompiledDn observed) {
+        if (!exactKeys.isEmpty() && exactKeys.contains(observed.canonicalKey())) {
+            return true;
+        }
+        for (CompiledDn candidate : patterns) {
+            if (X500NameComparator.areEqual(candidate, observed)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
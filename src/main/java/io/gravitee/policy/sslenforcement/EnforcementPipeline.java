@@ -0,0 +1,198 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.sslenforcement;
+
+import io.gravitee.policy.sslenforcement.metrics.EnforcementMetrics;
+import io.gravitee.policy.sslenforcement.metrics.Stage;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The enabled certificate checks of a policy instance, compiled once into an array and run in order until one
+ * rejects the certificate. All of them have to accept it, so the order does not change whether a certificate is
+ * accepted, only how much work a rejection costs and which error key it reports.
+ * <p>
+ * Steps are first ordered by their estimated cost, cheapest first. In adaptive mode, the pipeline also measures the
+ * cost and rejection rate of each step and, about every {@value #REORDER_INTERVAL} evaluations, sorts the steps by
+ * expected cost per rejection ({@code cost / rejection rate}), which minimizes the average cost of an evaluation when steps
+ * reject independently. Rejection-heavy traffic (scanners, misconfigured clients) then exits after the cheapest step
+ * that rejects it, while steps that never reject go last. Evaluations are not counted: each one starts a reordering
+ * with a probability of 1/{@value #REORDER_INTERVAL}, drawn from its thread's random generator, so that evaluations
+ * share no counter.
+ *
+ * @author GraviteeSource Team
+ */
+final class EnforcementPipeline<C, L> {
+
+    // A power of two, so that the sampling below is a mask of the random bits.
+    static final int REORDER_INTERVAL = 1024;
+
+    // Below this many runs in a window, a step keeps its previous estimates.
+    private static final long MIN_WINDOW_RUNS = 32;
+
+    // Weight of the latest window in the moving averages.
+    private static final double SMOOTHING = 0.5;
+
+    private final boolean adaptive;
+
+    private final AtomicBoolean reordering = new AtomicBoolean();
+
+    private volatile Step<C, L>[] steps;
+
+    @SuppressWarnings("unchecked")
+    EnforcementPipeline(List<Step<C, L>> steps, boolean adaptive) {
+        Step<C, L>[] ordered = steps.toArray(new Step[0]);
+        Arrays.sort(ordered, Comparator.comparingLong(step -> step.estimatedCostNanos));
+        this.steps = ordered;
+        this.adaptive = adaptive;
+    }
+
+    boolean isEmpty() {
+        return steps.length == 0;
+    }
+
+    /**
+     * @return the current order of the steps, for diagnostics.
+     */
+    List<Stage> order() {
+        return Arrays.stream(steps).map(step -> step.stage).toList();
+    }
+
+    /**
+     * @param metrics where to record the time spent in each step, {@code null} when metrics are disabled.
+     */
+    Verdict evaluate(C certificate, L lists, EnforcementMetrics metrics) {
+        Step<C, L>[] current = steps;
+        boolean timed = adaptive || metrics != null;
+        Verdict verdict = Verdict.ALLOW;
+        for (Step<C, L> step : current) {
+            long start = timed ? System.nanoTime() : 0L;
+            verdict = step.check.apply(certificate, lists);
+            if (timed) {
+                long elapsed = System.nanoTime() - start;
+                if (metrics != null) {
+                    metrics.record(step.stage, elapsed);
+                }
+                if (adaptive) {
+                    step.record(elapsed, !verdict.isAllowed());
+                }
+            }
+            if (!verdict.isAllowed()) {
+                break;
+            }
+        }
+        if (
+            adaptive &&
+            current.length > 1 &&
+            (ThreadLocalRandom.current().nextInt() & (REORDER_INTERVAL - 1)) == 0 &&
+            reordering.compareAndSet(false, true)
+        ) {
+            try {
+                reorder();
+            } finally {
+                reordering.set(false);
+            }
+        }
+        return verdict;
+    }
+
+    void reorder() {
+        Step<C, L>[] reordered = steps.clone();
+        for (Step<C, L> step : reordered) {
+            step.closeWindow();
+        }
+        Arrays.sort(reordered, Comparator.<Step<C, L>>comparingDouble(Step::costPerRejection).thenComparingDouble(step -> step.costNanos));
+        steps = reordered;
+    }
+
+    @FunctionalInterface
+    interface Check<C, L> {
+        Verdict apply(C certificate, L lists);
+    }
+
+    /**
+     * One check of the pipeline, with its statistics. Counters are only written by evaluations and only read by the
+     * single thread reordering the pipeline.
+     */
+    static final class Step<C, L> {
+
+        private final Stage stage;
+
+        private final long estimatedCostNanos;
+
+        private final Check<C, L> check;
+
+        private final LongAdder runs = new LongAdder();
+
+        private final LongAdder rejections = new LongAdder();
+
+        private final LongAdder nanos = new LongAdder();
+
+        private long previousRuns;
+
+        private long previousRejections;
+
+        private long previousNanos;
+
+        private double costNanos;
+
+        private double rejectionRate;
+
+        Step(Stage stage, long estimatedCostNanos, Check<C, L> check) {
+            this.stage = stage;
+            this.estimatedCostNanos = estimatedCostNanos;
+            this.check = check;
+            this.costNanos = estimatedCostNanos;
+        }
+
+        Stage stage() {
+            return stage;
+        }
+
+        private void record(long elapsedNanos, boolean rejected) {
+            runs.increment();
+            nanos.add(elapsedNanos);
+            if (rejected) {
+                rejections.increment();
+            }
+        }
+
+        private void closeWindow() {
+            long totalRuns = runs.sum();
+            long totalRejections = rejections.sum();
+            long totalNanos = nanos.sum();
+            long windowRuns = totalRuns - previousRuns;
+            if (windowRuns < MIN_WINDOW_RUNS) {
+                return;
+            }
+            double windowCost = (double) (totalNanos - previousNanos) / windowRuns;
+            double windowRejectionRate = (double) (totalRejections - previousRejections) / windowRuns;
+            costNanos = SMOOTHING * windowCost + (1 - SMOOTHING) * costNanos;
+            rejectionRate = SMOOTHING * windowRejectionRate + (1 - SMOOTHING) * rejectionRate;
+            previousRuns = totalRuns;
+            previousRejections = totalRejections;
+            previousNanos = totalNanos;
+        }
+
+        private double costPerRejection() {
+            return rejectionRate > 0 ? costNanos / rejectionRate : Double.MAX_VALUE;
+        }
+    }
+}
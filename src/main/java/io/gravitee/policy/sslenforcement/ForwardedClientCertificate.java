@@ -0,0 +1,212 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.sslenforcement;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The client certificate details forwarded by Envoy in {@code x-forwarded-client-cert} (XFCC). The header is a list
+ * with one element per hop, each one a {@code ;}-separated list of {@code key=value} pairs whose values may be
+ * quoted-strings. Only the last element, appended by the proxy closest to the gateway, describes the client of that
+ * proxy: it is located and read in place, and only the values of known keys are copied out of the header.
+ * <p>
+ * {@code Cert} and {@code Chain} are kept URL-encoded, as forwarded, and only decoded if a check needs the
+ * certificate itself.
+ *
+ * @author GraviteeSource Team
+ */
+final class ForwardedClientCertificate {
+
+    private static final int DIGEST_LENGTH = 32;
+
+    private final String hash;
+
+    private final String certificate;
+
+    private final String chain;
+
+    private final String subject;
+
+    private final List<String> names;
+
+    private ForwardedClientCertificate(String hash, String certificate, String chain, String subject, List<String> names) {
+        this.hash = hash;
+        this.certificate = certificate;
+        this.chain = chain;
+        this.subject = subject;
+        this.names = names;
+    }
+
+    /**
+     * @return the details of the last element of the header, or {@code null} when it holds none of them.
+     */
+    static ForwardedClientCertificate parse(String header) {
+        int length = header.length();
+        int start = 0;
+        for (int end = ForwardedProto.next(header, 0, length, ','); end < length; end = ForwardedProto.next(header, start, length, ',')) {
+            start = end + 1;
+        }
+
+        String hash = null;
+        String cert = null;
+        String chain = null;
+        String subject = null;
+        List<String> names = new ArrayList<>(2);
+        while (start <= length) {
+            int end = ForwardedProto.next(header, start, length, ';');
+            int eq = ForwardedProto.next(header, start, end, '=');
+            if (eq < end) {
+                int keyStart = ForwardedProto.skipWhitespace(header, start, eq);
+                int keyEnd = ForwardedProto.trimWhitespace(header, keyStart, eq);
+                if (isKey(header, keyStart, keyEnd, "Hash")) {
+                    hash = value(header, eq + 1, end);
+                } else if (isKey(header, keyStart, keyEnd, "Cert")) {
+                    cert = value(header, eq + 1, end);
+                } else if (isKey(header, keyStart, keyEnd, "Chain")) {
+                    chain = value(header, eq + 1, end);
+                } else if (isKey(header, keyStart, keyEnd, "Subject")) {
+                    subject = value(header, eq + 1, end);
+                } else if (isKey(header, keyStart, keyEnd, "URI") || isKey(header, keyStart, keyEnd, "DNS")) {
+                    names.add(value(header, eq + 1, end));
+                }
+            }
+            start = end + 1;
+        }
+        if (hash == null && cert == null && chain == null && subject == null && names.isEmpty()) {
+            return null;
+        }
+        // The leaf comes first in Chain, and only the first certificate of a bundle is decoded.
+        return new ForwardedClientCertificate(
+            hash == null || hash.isEmpty() ? null : hash,
+            cert != null ? cert : chain,
+            chain == null || chain.isEmpty() ? null : chain,
+            subject == null || subject.isEmpty() ? null : toRfc2253(subject),
+            names
+        );
+    }
+
+    /**
+     * @return the hex-encoded SHA-256 digest of the DER certificate, as announced by the proxy, or {@code null}.
+     */
+    String hash() {
+        return hash;
+    }
+
+    /**
+     * @return the decoded {@link #hash()}, or {@code null} when it is missing or not a hex-encoded SHA-256 digest.
+     */
+    byte[] digest() {
+        if (hash == null || hash.length() != DIGEST_LENGTH * 2) {
+            return null;
+        }
+        byte[] digest = new byte[DIGEST_LENGTH];
+        for (int i = 0; i < DIGEST_LENGTH; i++) {
+            int high = Character.digit(hash.charAt(2 * i), 16);
+            int low = Character.digit(hash.charAt(2 * i + 1), 16);
+            if (high < 0 || low < 0) {
+                return null;
+            }
+            digest[i] = (byte) ((high << 4) | low);
+        }
+        return digest;
+    }
+
+    /**
+     * @return the URL-encoded PEM certificate, or chain starting with it, or {@code null}.
+     */
+    String certificate() {
+        return certificate;
+    }
+
+    /**
+     * @return the URL-encoded PEM chain, leaf first, or {@code null}.
+     */
+    String chain() {
+        return chain;
+    }
+
+    /**
+     * @return the subject DN in RFC 2253 format, or {@code null}.
+     */
+    String subject() {
+        return subject;
+    }
+
+    /**
+     * @return the URI and DNS Subject Alternative Names.
+     */
+    List<String> names() {
+        return names;
+    }
+
+    private static boolean isKey(String header, int from, int to, String key) {
+        return to - from == key.length() && header.regionMatches(true, from, key, 0, key.length());
+    }
+
+    /**
+     * @return the token or quoted-string value {@code [from, to)}, unquoted and without surrounding whitespace.
+     */
+    private static String value(String header, int from, int to) {
+        int start = ForwardedProto.skipWhitespace(header, from, to);
+        int end = ForwardedProto.trimWhitespace(header, start, to);
+        if (end - start < 2 || header.charAt(start) != '"' || header.charAt(end - 1) != '"') {
+            return header.substring(start, end);
+        }
+        int escape = header.indexOf('\\', start + 1);
+        if (escape < 0 || escape >= end - 1) {
+            return header.substring(start + 1, end - 1);
+        }
+        StringBuilder sb = new StringBuilder(end - start);
+        for (int i = start + 1; i < end - 1; i++) {
+            char c = header.charAt(i);
+            if (c == '\\' && i + 1 < end - 1) {
+                c = header.charAt(++i);
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Older Envoy versions forward the subject in the OpenSSL one-line format, most significant RDN first
+     * ({@code /C=US/O=Lyft/CN=Test Client}), newer ones in RFC 2253 format, which is returned as is.
+     */
+    private static String toRfc2253(String subject) {
+        if (subject.charAt(0) != '/') {
+            return subject;
+        }
+        StringBuilder sb = new StringBuilder(subject.length());
+        int end = subject.length();
+        while (end > 0) {
+            int slash = subject.lastIndexOf('/', end - 1);
+            if (slash + 1 < end) {
+                if (!sb.isEmpty()) {
+                    sb.append(',');
+                }
+                for (int i = slash + 1; i < end; i++) {
+                    char c = subject.charAt(i);
+                    if (c == ',' || c == '+' || c == ';' || c == '"' || c == '\\' || c == '<' || c == '>') {
+                        sb.append('\\');
+                    }
+                    sb.append(c);
+                }
+            }
+            end = slash;
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.sslenforcement;
+
+/**
+ * Reads the scheme announced by proxies in the {@code Forwarded} (RFC 7239) and {@code X-Forwarded-Proto} headers.
+ * Headers are scanned in place, by index, without copying or splitting them.
+ * <p>
+ * Both headers are lists with one element per hop, each proxy appending its own. With {@code trustedHops = N > 0},
+ * only the element appended by the N-th proxy from the gateway is read, i.e. the one added by the outermost trusted
+ * proxy (or the first element when the list is shorter). With {@code trustedHops = 0}, any {@code Forwarded} element
+ * announcing https is accepted and {@code X-Forwarded-Proto} must hold the single value {@code https}, as before.
+ *
+ * @author GraviteeSource Team
+ */
+final class ForwardedProto {
+
+    private static final String PROTO = "proto";
+
+    private static final String HTTPS = "https";
+
+    private ForwardedProto() {}
+
+    static boolean forwardedIsHttps(String header, int trustedHops) {
+        int length = header.length();
+        if (trustedHops <= 0) {
+            int start = 0;
+            while (start <= length) {
+                int end = next(header, start, length, ',');
+                if (elementIsHttps(header, start, end)) {
+                    return true;
+                }
+                start = end + 1;
+            }
+            return false;
+        }
+        int start = elementStart(header, countElements(header) - trustedHops);
+        return elementIsHttps(header, start, next(header, start, length, ','));
+    }
+
+    static boolean xForwardedProtoIsHttps(String header, int trustedHops) {
+        int length = header.length();
+        if (trustedHops <= 0) {
+            return isHttps(header, 0, length);
+        }
+        int start = elementStart(header, countElements(header) - trustedHops);
+        return isHttps(header, start, next(header, start, length, ','));
+    }
+
+    /**
+     * @return whether the {@code proto} parameter of the element {@code [from, to)} is https.
+     */
+    private static boolean elementIsHttps(String header, int from, int to) {
+        int start = from;
+        while (start <= to) {
+            int end = next(header, start, to, ';');
+            // Parameter names are tokens, so the first unquoted '=' of the pair separates name and value.
+            int eq = next(header, start, end, '=');
+            if (eq < end) {
+                int nameStart = skipWhitespace(header, start, eq);
+                int nameEnd = trimWhitespace(header, nameStart, eq);
+                if (nameEnd - nameStart == PROTO.length() && header.regionMatches(true, nameStart, PROTO, 0, PROTO.length())) {
+                    return isHttps(header, eq + 1, end);
+                }
+            }
+            start = end + 1;
+        }
+        return false;
+    }
+
+    /**
+     * @return whether the token or quoted-string value {@code [from, to)}, surrounding whitespace aside, is https.
+     */
+    private static boolean isHttps(String header, int from, int to) {
+        int start = skipWhitespace(header, from, to);
+        int end = trimWhitespace(header, start, to);
+        if (end - start >= 2 && header.charAt(start) == '"' && header.charAt(end - 1) == '"') {
+            int matched = 0;
+            for (int i = start + 1; i < end - 1; i++) {
+                char c = header.charAt(i);
+                if (c == '\\' && i + 1 < end - 1) {
+                    c = header.charAt(++i);
+                }
+                if (matched == HTTPS.length() || Character.toLowerCase(c) != HTTPS.charAt(matched++)) {
+                    return false;
+                }
+            }
+            return matched == HTTPS.length();
+        }
+        return end - start == HTTPS.length() && header.regionMatches(true, start, HTTPS, 0, HTTPS.length());
+    }
+
+    private static int countElements(String header) {
+        int count = 1;
+        int length = header.length();
+        for (int i = next(header, 0, length, ','); i < length; i = next(header, i + 1, length, ',')) {
+            count++;
+        }
+        return count;
+    }
+
+    private static int elementStart(String header, int index) {
+        int start = 0;
+        for (int i = 0; i < index; i++) {
+            start = next(header, start, header.length(), ',') + 1;
+        }
+        return start;
+    }
+
+    /**
+     * @return the index of the first {@code delimiter} in {@code [from, to)} that is not inside a quoted-string, or
+     * {@code to} when there is none.
+     */
+    static int next(String header, int from, int to, char delimiter) {
+        boolean quoted = false;
+        for (int i = from; i < to; i++) {
+            char c = header.charAt(i);
+            if (quoted) {
+                if (c == '\\') {
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == delimiter) {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    static int skipWhitespace(String header, int from, int to) {
+        while (from < to && (header.charAt(from) == ' ' || header.charAt(from) == '\t')) {
+            from++;
+        }
+        return from;
+    }
+
+    static int trimWhitespace(String header, int from, int to) {
+        while (to > from && (header.charAt(to - 1) == ' ' || header.charAt(to - 1) == '\t')) {
+            to--;
+        }
+        return to;
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.sslenforcement;
+
+import io.gravitee.policy.sslenforcement.cache.BoundedCache;
+import io.gravitee.policy.sslenforcement.cache.CacheStats;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Caches the certificates decoded from a client certificate header, keyed by the raw header value. Decoding is a
+ * pure function of the header value, so entries never expire and are only evicted by size. Header values that fail
+ * to decode are remembered in a separate negative cache so that a broken proxy configuration does not pay the full
+ * ASN.1 decode on every request either.
+ *
+ * @author GraviteeSource Team
+ */
+@Slf4j
+final class HeaderCertificateCache {
+
+    private final BoundedCache<String, X509Certificate> certificates;
+
+    private final BoundedCache<String, Boolean> failures;
+
+    HeaderCertificateCache(int maxSize) {
+        this.certificates = new BoundedCache<>(maxSize, Duration.ZERO);
+        this.failures = new BoundedCache<>(maxSize, Duration.ZERO);
+    }
+
+    /**
+     * @return the decoded certificate, or {@code null} when the header value is not a valid certificate.
+     */
+    X509Certificate resolve(String headerValue) {
+        X509Certificate certificate = certificates.get(headerValue);
+        if (certificate != null) {
+            return certificate;
+        }
+        if (failures.get(headerValue) != null) {
+            return null;
+        }
+        try {
+            certificate = SslEnforcementPolicy.decodeCertificateHeader(headerValue);
+        } catch (Exception e) {
+            log.debug("Unable to retrieve peer certificate from request header", e);
+            certificate = null;
+        }
+        if (certificate == null) {
+            failures.put(headerValue, Boolean.TRUE);
+        } else {
+            certificates.put(headerValue, certificate);
+        }
+        return certificate;
+    }
+
+    /**
+     * @return whether {@link #resolve(String)} would answer without decoding, without counting as a hit or a miss.
+     */
+    boolean contains(String headerValue) {
+        return certificates.contains(headerValue) || failures.contains(headerValue);
+    }
+
+    CacheStats stats() {
+        return certificates.stats();
+    }
+
+    CacheStats failureStats() {
+        return failures.stats();
+    }
+}
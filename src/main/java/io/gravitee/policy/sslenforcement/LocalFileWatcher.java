@@ -0,0 +1,320 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.sslenforcement;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Watches local files (allow-lists, CRLs) and notifies their owners when they change, from a single daemon thread shared by every
+ * policy instance. Owners are only weakly referenced: a policy instance dropped by the gateway (API undeployed or
+ * redeployed) is garbage collected as usual and its registrations are discarded on the next change, if it has not
+ * unwatched its files before. Directories nobody needs anymore are unwatched, and the thread stops when no file is
+ * watched at all.
+ * <p>
+ * Symbolic links are followed: the directory holding the target of a watched file is watched too, and a file is also
+ * considered changed when the link now resolves to another file. This is how Kubernetes updates a mounted ConfigMap
+ * or Secret: {@code file} links to {@code ..data/file}, and {@code ..data} is atomically re-pointed to a new directory,
+ * without any event for {@code file} itself.
+ * <p>
+ * Changes are debounced: owners are notified once the directories have been quiet for {@link #QUIET_PERIOD_MILLIS}, so
+ * that a file written in several steps is not loaded half-written.
+ *
+ * @author GraviteeSource Team
+ */
+@Slf4j
+final class LocalFileWatcher {
+
+    static final long QUIET_PERIOD_MILLIS = 200;
+
+    private static final LocalFileWatcher INSTANCE = new LocalFileWatcher();
+
+    private final Map<Path, WatchedFile> files = new HashMap<>();
+
+    private final Map<Path, WatchKey> directories = new HashMap<>();
+
+    private WatchService watchService;
+
+    private LocalFileWatcher() {}
+
+    /**
+     * Calls {@code onChange} with {@code owner} each time {@code file} is created, modified or replaced, for as long
+     * as {@code owner} is reachable. {@code onChange} must not capture {@code owner}, or it would never be released:
+     * pass an unbound method reference such as {@code SslEnforcementPolicy::reloadAllowLists}.
+     *
+     * @return stops watching {@code file} for {@code owner}, may be called more than once.
+     */
+    static <T> Runnable watch(Path file, T owner, Consumer<T> onChange) throws IOException {
+        Registration<T> registration = new Registration<>(new WeakReference<>(owner), onChange);
+        Path path = file.toAbsolutePath().normalize();
+        INSTANCE.register(path, registration);
+        return () -> INSTANCE.unregister(path, registration);
+    }
+
+    /**
+     * @return the directories currently watched, links resolved.
+     */
+    static Set<Path> watchedDirectories() {
+        synchronized (INSTANCE) {
+            return Set.copyOf(INSTANCE.directories.keySet());
+        }
+    }
+
+    private synchronized void register(Path file, Registration<?> registration) throws IOException {
+        if (watchService == null) {
+            WatchService service = FileSystems.getDefault().newWatchService();
+            Thread thread = new Thread(() -> run(service), "gio-ssl-enforcement-file-watcher");
+            thread.setDaemon(true);
+            thread.start();
+            watchService = service;
+        }
+        WatchedFile watched = files.get(file);
+        boolean added = watched == null;
+        if (added) {
+            watched = new WatchedFile(file);
+            files.put(file, watched);
+        }
+        watched.registrations.add(registration);
+        try {
+            syncDirectories(watched);
+        } catch (IOException e) {
+            watched.registrations.remove(registration);
+            if (added) {
+                files.remove(file);
+            }
+            syncDirectoriesQuietly();
+            throw e;
+        }
+    }
+
+    private synchronized void unregister(Path file, Registration<?> registration) {
+        WatchedFile watched = files.get(file);
+        if (watched != null && watched.registrations.remove(registration)) {
+            if (watched.registrations.isEmpty()) {
+                files.remove(file);
+            }
+            syncDirectoriesQuietly();
+        }
+    }
+
+    /**
+     * Watches exactly the directories holding the watched files and their link targets, and stops the watch service
+     * once there is none left. Only the directories of {@code required} must be watchable: the others may have been
+     * deleted along with their files, which stay watched until their owners unwatch them or are collected.
+     */
+    private void syncDirectories(WatchedFile required) throws IOException {
+        Set<Path> needed = new HashSet<>();
+        for (WatchedFile watched : files.values()) {
+            needed.addAll(watched.directories());
+        }
+        for (Iterator<Map.Entry<Path, WatchKey>> it = directories.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<Path, WatchKey> entry = it.next();
+            if (!needed.contains(entry.getKey()) || !entry.getValue().isValid()) {
+                entry.getValue().cancel();
+                it.remove();
+            }
+        }
+        if (files.isEmpty()) {
+            stop();
+            return;
+        }
+        for (Path directory : needed) {
+            if (!directories.containsKey(directory)) {
+                try {
+                    directories.put(
+                        directory,
+                        directory.register(
+                            watchService,
+                            StandardWatchEventKinds.ENTRY_CREATE,
+                            StandardWatchEventKinds.ENTRY_MODIFY,
+                            StandardWatchEventKinds.OVERFLOW
+                        )
+                    );
+                } catch (IOException e) {
+                    if (required != null && required.directories().contains(directory)) {
+                        throw e;
+                    }
+                    log.debug("Unable to watch directory {}, retried on the next change", directory, e);
+                }
+            }
+        }
+    }
+
+    private void syncDirectoriesQuietly() {
+        try {
+            syncDirectories(null);
+        } catch (IOException e) {
+            log.warn("Unable to watch the directories of {}", files.keySet(), e);
+        }
+    }
+
+    private void stop() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                log.debug("Unable to close file watcher", e);
+            }
+            watchService = null;
+        }
+    }
+
+    private void run(WatchService service) {
+        try {
+            while (true) {
+                Set<Path> touched = new HashSet<>();
+                collect(service.take(), touched);
+                // Keep collecting until the directories have been quiet for a while.
+                WatchKey key;
+                while ((key = service.poll(QUIET_PERIOD_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    collect(key, touched);
+                }
+                for (Map.Entry<Path, List<Registration<?>>> changed : changedFiles(touched).entrySet()) {
+                    notifyOwners(changed.getKey(), changed.getValue());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            log.debug("File watcher stopped", e);
+        }
+    }
+
+    /**
+     * Adds the paths events were received for to {@code touched}, or the directory itself when events were lost.
+     */
+    private void collect(WatchKey key, Set<Path> touched) {
+        Path directory = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                touched.add(directory);
+            } else {
+                touched.add(directory.resolve((Path) event.context()));
+            }
+        }
+        key.reset();
+    }
+
+    /**
+     * @return the live registrations of the files that were touched or now resolve to another target, by file.
+     */
+    private synchronized Map<Path, List<Registration<?>>> changedFiles(Set<Path> touched) {
+        Map<Path, List<Registration<?>>> changed = new LinkedHashMap<>();
+        for (Iterator<WatchedFile> it = files.values().iterator(); it.hasNext();) {
+            WatchedFile watched = it.next();
+            watched.registrations.removeIf(registration -> registration.owner().get() == null);
+            if (watched.registrations.isEmpty()) {
+                it.remove();
+                continue;
+            }
+            if (watched.refresh(touched)) {
+                changed.put(watched.file, List.copyOf(watched.registrations));
+            }
+        }
+        syncDirectoriesQuietly();
+        return changed;
+    }
+
+    private void notifyOwners(Path file, List<Registration<?>> owners) {
+        for (Registration<?> registration : owners) {
+            try {
+                registration.notifyOwner();
+            } catch (RuntimeException e) {
+                log.warn("Unable to reload {}", file, e);
+            }
+        }
+    }
+
+    private static Path realPath(Path path) {
+        try {
+            return path.toRealPath();
+        } catch (IOException e) {
+            // Missing for now, e.g. a link whose target is being replaced.
+            return path;
+        }
+    }
+
+    /**
+     * A watched file, as configured, with its location once the links of its directory are resolved and the file it
+     * resolves to, both as of the last event.
+     */
+    private static final class WatchedFile {
+
+        private final Path file;
+
+        private Path link;
+
+        private Path target;
+
+        private final List<Registration<?>> registrations = new ArrayList<>();
+
+        private WatchedFile(Path file) {
+            this.file = file;
+            this.link = realPath(file.getParent()).resolve(file.getFileName());
+            this.target = realPath(file);
+        }
+
+        /**
+         * @return the directories holding the file and its target, as of the last event.
+         */
+        private List<Path> directories() {
+            return List.of(link.getParent(), target.getParent());
+        }
+
+        /**
+         * @return whether the file changed given the paths {@code touched} since the last call.
+         */
+        private boolean refresh(Set<Path> touched) {
+            Path previousTarget = target;
+            link = realPath(file.getParent()).resolve(file.getFileName());
+            target = realPath(file);
+            return (
+                !target.equals(previousTarget) ||
+                touched.contains(link) ||
+                touched.contains(target) ||
+                touched.contains(link.getParent()) ||
+                touched.contains(target.getParent())
+            );
+        }
+    }
+
+    private record Registration<T>(WeakReference<T> owner, Consumer<T> onChange) {
+        void notifyOwner() {
+            T target = owner.get();
+            if (target != null) {
+                onChange.accept(target);
+            }
+        }
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.sslenforcement;
+
+import io.gravitee.policy.sslenforcement.cache.BoundedCache;
+import io.gravitee.policy.sslenforcement.cache.CacheStats;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import javax.net.ssl.SSLSession;
+import lombok.extern.slf4j.Slf4j;
+import org.bouncycastle.asn1.ASN1OctetString;
+import org.bouncycastle.asn1.oiw.OIWObjectIdentifiers;
+import org.bouncycastle.asn1.x509.AuthorityKeyIdentifier;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.ExtendedKeyUsage;
+import org.bouncycastle.asn1.x509.KeyPurposeId;
+import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateHolder;
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.bouncycastle.cert.ocsp.CertificateStatus;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.bouncycastle.cert.ocsp.RespID;
+import org.bouncycastle.cert.ocsp.RevokedStatus;
+import org.bouncycastle.cert.ocsp.SingleResp;
+import org.bouncycastle.operator.ContentVerifierProvider;
+import org.bouncycastle.operator.DigestCalculatorProvider;
+import org.bouncycastle.operator.jcajce.JcaContentVerifierProviderBuilder;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+
+/**
+ * Verifies the OCSP response stapled to the TLS handshake for the client certificate (RFC 6960).
+ * <p>
+ * A response is trusted when it is signed by one of the configured responder certificates (e.g. an offline responder
+ * used as trust anchor), by the issuer of the client certificate, or by a delegated responder certificate embedded in
+ * the response, issued by that issuer, holding the {@code id-kp-OCSPSigning} extended key usage and named by the
+ * {@code responderID} of the response. The issuer is taken from the peer chain, already validated by the TLS
+ * handshake.
+ * <p>
+ * Verified statuses are cached by (issuer key hash, serial number) until the {@code nextUpdate} of the response, so a
+ * client presenting the same stapled response over and over has it parsed and its signature checked once per
+ * validity window. Responses without {@code nextUpdate} are not cached. That key is also remembered on the TLS
+ * session, so later requests of the session find the cached status without reading the peer chain again.
+ *
+ * @author GraviteeSource Team
+ */
+@Slf4j
+final class OcspStapleVerifier {
+
+    enum Status {
+        GOOD,
+        REVOKED,
+        UNKNOWN,
+        /** No response was stapled for the client certificate. */
+        MISSING,
+        /** The stapled response cannot be parsed, is not signed by a trusted responder, does not match or has expired. */
+        INVALID,
+    }
+
+    // Tolerated clock difference with the responder when checking thisUpdate and nextUpdate.
+    private static final long CLOCK_SKEW_MILLIS = 5 * 60 * 1000;
+
+    // Derived from the peer chain only, so it is shared by every policy instance checking the same session.
+    private static final String SESSION_CERTIFICATE_ID = OcspStapleVerifier.class.getName() + ".certificateId";
+
+    private final List<X509Certificate> trustedResponders;
+
+    private final BoundedCache<CertificateId, Status> statuses;
+
+    private final JcaContentVerifierProviderBuilder verifierProviderBuilder = new JcaContentVerifierProviderBuilder();
+
+    private final DigestCalculatorProvider digestCalculatorProvider;
+
+    OcspStapleVerifier(List<X509Certificate> trustedResponders, int cacheMaxSize) {
+        this.trustedResponders = List.copyOf(trustedResponders);
+        this.statuses = new BoundedCache<>(cacheMaxSize, Duration.ZERO);
+        try {
+            this.digestCalculatorProvider = new JcaDigestCalculatorProviderBuilder().build();
+        } catch (Exception e) {
+            throw new IllegalStateException("Unable to create OCSP digest calculator provider", e);
+        }
+    }
+
+    /**
+     * @return the status verified earlier in {@code sslSession} for its client certificate, while the response it came
+     * from is current, or {@code null} when it has to be verified again.
+     */
+    Status cachedStatus(SSLSession sslSession) {
+        return sslSession.getValue(SESSION_CERTIFICATE_ID) instanceof CertificateId id ? statuses.get(id) : null;
+    }
+
+    Status verify(X509Certificate[] chain, List<byte[]> responses) {
+        return verify(chain, responses, null);
+    }
+
+    /**
+     * @param chain the peer certificate chain, client certificate first.
+     * @param responses the stapled responses, one per certificate of the chain, possibly empty.
+     * @param sslSession the session {@code chain} and {@code responses} come from, for {@link #cachedStatus(SSLSession)},
+     * or {@code null}.
+     */
+    Status verify(X509Certificate[] chain, List<byte[]> responses, SSLSession sslSession) {
+        X509Certificate certificate = chain[0];
+        X509Certificate issuer = chain.length > 1 ? chain[1] : null;
+        byte[] issuerKeyHash = issuerKeyHash(certificate, issuer);
+        CertificateId id = issuerKeyHash == null ? null : new CertificateId(ByteBuffer.wrap(issuerKeyHash), certificate.getSerialNumber());
+        if (id != null && sslSession != null) {
+            sslSession.putValue(SESSION_CERTIFICATE_ID, id);
+        }
+        if (id != null) {
+            Status cached = statuses.get(id);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        if (responses == null || responses.isEmpty() || responses.get(0) == null || responses.get(0).length == 0) {
+            return Status.MISSING;
+        }
+
+        long now = System.currentTimeMillis();
+        SingleResp response;
+        try {
+            response = verifiedResponse(responses.get(0), certificate, issuer, issuerKeyHash, now);
+        } catch (Exception e) {
+            log.debug("Unable to verify the stapled OCSP response of certificate {}", certificate.getSerialNumber().toString(16), e);
+            response = null;
+        }
+        if (response == null) {
+            return Status.INVALID;
+        }
+
+        CertificateStatus certificateStatus = response.getCertStatus();
+        Status status = certificateStatus == CertificateStatus.GOOD
+            ? Status.GOOD
+            : certificateStatus instanceof RevokedStatus ? Status.REVOKED : Status.UNKNOWN;
+        Date nextUpdate = response.getNextUpdate();
+        if (id != null && nextUpdate != null) {
+            statuses.put(id, status, Duration.ofMillis(nextUpdate.getTime() - now).toNanos());
+        }
+        return status;
+    }
+
+    CacheStats stats() {
+        return statuses.stats();
+    }
+
+    /**
+     * @return the single response about {@code certificate}, once the response has been checked to be current and
+     * signed by a trusted responder, or {@code null} when it is not.
+     */
+    private SingleResp verifiedResponse(byte[] encoded, X509Certificate certificate, X509Certificate issuer, byte[] issuerKeyHash, long now)
+        throws Exception {
+        OCSPResp ocspResponse = new OCSPResp(encoded);
+        if (ocspResponse.getStatus() != OCSPResp.SUCCESSFUL || !(ocspResponse.getResponseObject() instanceof BasicOCSPResp basic)) {
+            return null;
+        }
+        SingleResp matching = null;
+        for (SingleResp single : basic.getResponses()) {
+            if (matches(single.getCertID(), certificate, issuer, issuerKeyHash)) {
+                matching = single;
+                break;
+            }
+        }
+        if (matching == null || !isCurrent(matching, now) || !isSignedByTrustedResponder(basic, issuer, now)) {
+            return null;
+        }
+        return matching;
+    }
+
+    private boolean matches(CertificateID id, X509Certificate certificate, X509Certificate issuer, byte[] issuerKeyHash) throws Exception {
+        if (!id.getSerialNumber().equals(certificate.getSerialNumber())) {
+            return false;
+        }
+        if (OIWObjectIdentifiers.idSHA1.equals(id.getHashAlgOID()) && issuerKeyHash != null) {
+            return (
+                Arrays.equals(id.getIssuerKeyHash(), issuerKeyHash) &&
+                Arrays.equals(id.getIssuerNameHash(), sha1(certificate.getIssuerX500Principal().getEncoded()))
+            );
+        }
+        return issuer != null && id.matchesIssuer(new JcaX509CertificateHolder(issuer), digestCalculatorProvider);
+    }
+
+    private static boolean isCurrent(SingleResp response, long now) {
+        if (response.getThisUpdate().getTime() > now + CLOCK_SKEW_MILLIS) {
+            return false;
+        }
+        Date nextUpdate = response.getNextUpdate();
+        return nextUpdate == null || nextUpdate.getTime() > now - CLOCK_SKEW_MILLIS;
+    }
+
+    private boolean isSignedByTrustedResponder(BasicOCSPResp response, X509Certificate issuer, long now) throws Exception {
+        for (X509Certificate responder : trustedResponders) {
+            if (response.isSignatureValid(verifierProviderBuilder.build(responder))) {
+                return true;
+            }
+        }
+        if (issuer == null) {
+            return false;
+        }
+        ContentVerifierProvider issuerVerifier = verifierProviderBuilder.build(issuer);
+        if (response.isSignatureValid(issuerVerifier)) {
+            return true;
+        }
+        for (X509CertificateHolder delegate : response.getCerts()) {
+            if (
+                isOcspSigner(delegate) &&
+                isResponder(response.getResponderId(), delegate) &&
+                delegate.isValidOn(new Date(now)) &&
+                delegate.getIssuer().equals(new JcaX509CertificateHolder(issuer).getSubject()) &&
+                delegate.isSignatureValid(issuerVerifier) &&
+                response.isSignatureValid(verifierProviderBuilder.build(delegate))
+            ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isOcspSigner(X509CertificateHolder certificate) {
+        ExtendedKeyUsage extendedKeyUsage = ExtendedKeyUsage.fromExtensions(certificate.getExtensions());
+        return extendedKeyUsage != null && extendedKeyUsage.hasKeyPurposeId(KeyPurposeId.id_kp_OCSPSigning);
+    }
+
+    /**
+     * @return whether {@code responderId}, by name or by SHA-1 key hash, designates {@code certificate}.
+     */
+    private boolean isResponder(RespID responderId, X509CertificateHolder certificate) throws Exception {
+        return (
+            responderId.equals(new RespID(certificate.getSubject())) ||
+            responderId.equals(new RespID(certificate.getSubjectPublicKeyInfo(), digestCalculatorProvider.get(CertificateID.HASH_SHA1)))
+        );
+    }
+
+    /**
+     * @return the SHA-1 hash of the issuer public key, as found in SHA-1 OCSP CertIDs: computed from the issuer when it
+     * is in the chain, or else taken from the authority key identifier, which CAs almost always derive the same way.
+     */
+    private static byte[] issuerKeyHash(X509Certificate certificate, X509Certificate issuer) {
+        if (issuer != null) {
+            byte[] publicKey = SubjectPublicKeyInfo.getInstance(issuer.getPublicKey().getEncoded()).getPublicKeyData().getBytes();
+            return sha1(publicKey);
+        }
+        byte[] extension = certificate.getExtensionValue(Extension.authorityKeyIdentifier.getId());
+        if (extension == null) {
+            return null;
+        }
+        try {
+            return AuthorityKeyIdentifier.getInstance(ASN1OctetString.getInstance(extension).getOctets()).getKeyIdentifier();
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static byte[] sha1(byte[] bytes) {
+        try {
+            return MessageDigest.getInstance("SHA-1").digest(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not available", e);
+        }
+    }
+
+    private record CertificateId(ByteBuffer issuerKeyHash, BigInteger serialNumber) {}
+}
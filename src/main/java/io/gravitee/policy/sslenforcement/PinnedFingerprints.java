@@ -0,0 +1,213 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.sslenforcement;
+
+import io.gravitee.policy.sslenforcement.configuration.FingerprintType;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.List;
+import org.springframework.util.CollectionUtils;
+
+/**
+ * Set of pinned SHA-256 fingerprints, stored as four {@code long}s each in a flat open-addressing table with linear
+ * probing. SHA-256 output is uniformly distributed, so its first eight bytes are used as the hash as they are.
+ * Membership tests read the digest through a {@link VarHandle} view and allocate nothing; the digest itself is
+ * computed into a per-thread buffer.
+ * <p>
+ * An all-zero slot marks an empty entry: no certificate has an all-zero SHA-256 fingerprint.
+ *
+ * @author GraviteeSource Team
+ */
+final class PinnedFingerprints {
+
+    static final PinnedFingerprints EMPTY = new PinnedFingerprints(new long[0], 0, 0);
+
+    private static final int DIGEST_LENGTH = 32;
+
+    private static final int LONGS_PER_ENTRY = DIGEST_LENGTH / Long.BYTES;
+
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    private static final ThreadLocal<Sha256> SHA_256 = ThreadLocal.withInitial(Sha256::new);
+
+    private final long[] table;
+
+    private final int mask;
+
+    private final int size;
+
+    private PinnedFingerprints(long[] table, int mask, int size) {
+        this.table = table;
+        this.mask = mask;
+        this.size = size;
+    }
+
+    /**
+     * @param fingerprints hex-encoded SHA-256 fingerprints, optionally with ':' separators as printed by openssl.
+     * @throws IllegalArgumentException if an entry is not a hex-encoded SHA-256 fingerprint.
+     */
+    static PinnedFingerprints compile(List<String> fingerprints) {
+        if (CollectionUtils.isEmpty(fingerprints)) {
+            return EMPTY;
+        }
+        // Keep the load factor at or below 1/2 so that probe sequences stay short.
+        int capacity = Integer.highestOneBit(Math.max(1, fingerprints.size()) * 2 - 1) << 1;
+        long[] table = new long[capacity * LONGS_PER_ENTRY];
+        int mask = capacity - 1;
+        int size = 0;
+        for (String fingerprint : fingerprints) {
+            byte[] digest = decode(fingerprint);
+            int slot = slotOf(table, mask, digest);
+            if (table[slot] == 0 && table[slot + 1] == 0 && table[slot + 2] == 0 && table[slot + 3] == 0) {
+                for (int i = 0; i < LONGS_PER_ENTRY; i++) {
+                    table[slot + i] = (long) LONGS.get(digest, i * Long.BYTES);
+                }
+                size++;
+            }
+        }
+        return new PinnedFingerprints(table, mask, size);
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return whether the fingerprint of {@code certificate} of the given type is pinned.
+     */
+    boolean matches(X509Certificate certificate, FingerprintType type) {
+        if (size == 0) {
+            return false;
+        }
+        byte[] digest = digestOf(certificate, type);
+        return digest != null && contains(digest);
+    }
+
+    /**
+     * @return the hex-encoded fingerprint of {@code certificate}, for error reports.
+     */
+    static String fingerprintOf(X509Certificate certificate, FingerprintType type) {
+        byte[] digest = digestOf(certificate, type);
+        if (digest == null) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(DIGEST_LENGTH * 2);
+        for (byte b : digest) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    boolean contains(byte[] digest) {
+        int slot = slotOf(table, mask, digest);
+        return table[slot] != 0 || table[slot + 1] != 0 || table[slot + 2] != 0 || table[slot + 3] != 0;
+    }
+
+    /**
+     * @return the offset in {@code table} of the entry holding {@code digest}, or of the empty entry where it would go.
+     */
+    private static int slotOf(long[] table, int mask, byte[] digest) {
+        long first = (long) LONGS.get(digest, 0);
+        long second = (long) LONGS.get(digest, Long.BYTES);
+        long third = (long) LONGS.get(digest, 2 * Long.BYTES);
+        long fourth = (long) LONGS.get(digest, 3 * Long.BYTES);
+        int index = (int) (first ^ (first >>> 32)) & mask;
+        while (true) {
+            int slot = index * LONGS_PER_ENTRY;
+            long a = table[slot];
+            long b = table[slot + 1];
+            long c = table[slot + 2];
+            long d = table[slot + 3];
+            if ((a == first && b == second && c == third && d == fourth) || (a == 0 && b == 0 && c == 0 && d == 0)) {
+                return slot;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    /**
+     * @return the digest in the calling thread's buffer, overwritten by the next call, or {@code null} when the
+     * certificate cannot be encoded.
+     */
+    private static byte[] digestOf(X509Certificate certificate, FingerprintType type) {
+        byte[] encoded;
+        try {
+            encoded = type == FingerprintType.PUBLIC_KEY ? certificate.getPublicKey().getEncoded() : certificate.getEncoded();
+        } catch (CertificateEncodingException e) {
+            return null;
+        }
+        return encoded == null ? null : SHA_256.get().digest(encoded);
+    }
+
+    private static byte[] decode(String fingerprint) {
+        String hex = fingerprint.trim().replace(":", "");
+        if (hex.length() != DIGEST_LENGTH * 2) {
+            throw new IllegalArgumentException("Pinned fingerprint is not a hex-encoded SHA-256 digest: " + fingerprint);
+        }
+        byte[] digest = new byte[DIGEST_LENGTH];
+        boolean zero = true;
+        for (int i = 0; i < DIGEST_LENGTH; i++) {
+            int high = Character.digit(hex.charAt(2 * i), 16);
+            int low = Character.digit(hex.charAt(2 * i + 1), 16);
+            if (high < 0 || low < 0) {
+                throw new IllegalArgumentException("Pinned fingerprint is not a hex-encoded SHA-256 digest: " + fingerprint);
+            }
+            digest[i] = (byte) ((high << 4) | low);
+            zero &= digest[i] == 0;
+        }
+        if (zero) {
+            throw new IllegalArgumentException("Pinned fingerprint cannot be all zeros: " + fingerprint);
+        }
+        return digest;
+    }
+
+    private static final class Sha256 {
+
+        private final MessageDigest digest;
+
+        private final byte[] buffer = new byte[DIGEST_LENGTH];
+
+        private Sha256() {
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                // Every JRE is required to ship SHA-256.
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private byte[] digest(byte[] input) {
+            digest.reset();
+            digest.update(input);
+            try {
+                digest.digest(buffer, 0, DIGEST_LENGTH);
+            } catch (DigestException e) {
+                throw new IllegalStateException(e);
+            }
+            return buffer;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.sslenforcement;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * What a policy instance holds in structures shared across instances (named metrics, audit logs, file watches) and
+ * must hand back when it goes away. The gateway does not tell a policy that its API was undeployed, so this runs from
+ * {@link SslEnforcementPolicy#close()} or, failing that, from a {@link java.lang.ref.Cleaner} once the instance has
+ * been garbage collected. It must therefore never reference the policy instance itself.
+ *
+ * @author GraviteeSource Team
+ */
+@Slf4j
+final class PolicyResources implements Runnable {
+
+    private final Deque<Runnable> releases = new ArrayDeque<>();
+
+    private boolean released;
+
+    /**
+     * Registers {@code release} to be run when the policy instance goes away, or right away if it already has.
+     */
+    void add(Runnable release) {
+        synchronized (this) {
+            if (!released) {
+                releases.push(release);
+                return;
+            }
+        }
+        runQuietly(release);
+    }
+
+    /**
+     * Runs every registered release, last registered first, once.
+     */
+    @Override
+    public void run() {
+        Runnable release;
+        while ((release = next()) != null) {
+            runQuietly(release);
+        }
+    }
+
+    private synchronized Runnable next() {
+        released = true;
+        return releases.poll();
+    }
+
+    private static void runQuietly(Runnable release) {
+        try {
+            release.run();
+        } catch (RuntimeException e) {
+            log.warn("Unable to release an SSL enforcement policy resource", e);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.sslenforcement;
+
+import io.gravitee.policy.sslenforcement.cache.BoundedCache;
+import io.gravitee.policy.sslenforcement.cache.CacheStats;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Negative cache: the rejection verdicts of recently rejected certificates, keyed by fingerprint. A client
+ * hammering the gateway with a forbidden certificate then costs one fingerprint and one lookup per new connection,
+ * answered with the very {@link Verdict} (and failure) built the first time, instead of every check and a new failure.
+ * <p>
+ * Each entry counts its hits, to tell which certificates are behind a rejection flood.
+ *
+ * @author GraviteeSource Team
+ */
+final class RejectionCache {
+
+    private final BoundedCache<CertificateFingerprint, Rejection> rejections;
+
+    RejectionCache(int maxSize, Duration ttl) {
+        this.rejections = new BoundedCache<>(maxSize, ttl);
+    }
+
+    /**
+     * @return the cached rejection of the certificate, or {@code null} when it was not rejected recently or was
+     * rejected with allow-lists that have since been reloaded.
+     */
+    Verdict get(CertificateFingerprint fingerprint, long generation) {
+        Rejection rejection = rejections.get(fingerprint);
+        if (rejection == null || rejection.generation() != generation) {
+            return null;
+        }
+        rejection.hits().increment();
+        return rejection.verdict();
+    }
+
+    void put(CertificateFingerprint fingerprint, Verdict verdict, long generation) {
+        rejections.put(fingerprint, new Rejection(verdict, generation, new LongAdder()));
+    }
+
+    void clear() {
+        rejections.clear();
+    }
+
+    CacheStats stats() {
+        return rejections.stats();
+    }
+
+    /**
+     * @return hex fingerprint to hit count of the {@code limit} most hit cached rejections, most hit first.
+     */
+    Map<String, Long> mostHit(int limit) {
+        List<Map.Entry<String, Long>> hits = new ArrayList<>();
+        rejections.forEach((fingerprint, rejection) -> hits.add(Map.entry(fingerprint.toString(), rejection.hits().sum())));
+        Map<String, Long> mostHit = new LinkedHashMap<>();
+        hits
+            .stream()
+            .sorted(Map.Entry.<String, Long>comparingByValue(Comparator.reverseOrder()))
+            .limit(limit)
+            .forEach(entry -> mostHit.put(entry.getKey(), entry.getValue()));
+        return mostHit;
+    }
+
+    private record Rejection(Verdict verdict, long generation, LongAdder hits) {}
+}
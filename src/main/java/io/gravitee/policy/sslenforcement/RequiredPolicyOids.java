@@ -0,0 +1,149 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.sslenforcement;
+
+import java.io.IOException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.springframework.util.CollectionUtils;
+
+/**
+ * Required certificatePolicies OIDs, pre-encoded as the DER contents of their OBJECT IDENTIFIER. A certificate is
+ * checked by walking the DER of its certificatePolicies extension once and comparing the policy identifiers byte by
+ * byte, stopping as soon as every required OID has been seen. No ASN.1 object, String or collection is built.
+ *
+ * @author GraviteeSource Team
+ */
+final class RequiredPolicyOids {
+
+    static final String CERTIFICATE_POLICIES_OID = "2.5.29.32";
+
+    static final RequiredPolicyOids EMPTY = new RequiredPolicyOids(new byte[0][]);
+
+    private final byte[][] encodedOids;
+
+    private RequiredPolicyOids(byte[][] encodedOids) {
+        this.encodedOids = encodedOids;
+    }
+
+    /**
+     * @throws IllegalArgumentException if an entry is not a valid dotted-decimal OID.
+     */
+    static RequiredPolicyOids compile(List<String> oids) {
+        if (CollectionUtils.isEmpty(oids)) {
+            return EMPTY;
+        }
+        List<byte[]> encoded = new ArrayList<>(oids.size());
+        for (String oid : oids) {
+            byte[] content = contentOf(new ASN1ObjectIdentifier(oid.trim()));
+            if (encoded.stream().noneMatch(e -> Arrays.equals(e, content))) {
+                encoded.add(content);
+            }
+        }
+        return new RequiredPolicyOids(encoded.toArray(new byte[0][]));
+    }
+
+    boolean isEmpty() {
+        return encodedOids.length == 0;
+    }
+
+    /**
+     * @return whether the certificatePolicies extension of the certificate holds every required OID. A missing or
+     * malformed extension holds none.
+     */
+    boolean areAllPresentIn(X509Certificate certificate) {
+        if (encodedOids.length == 0) {
+            return true;
+        }
+        byte[] der = certificate.getExtensionValue(CERTIFICATE_POLICIES_OID);
+        return der != null && areAllPresentIn(der);
+    }
+
+    /**
+     * @param der the extension value as returned by {@link X509Certificate#getExtensionValue(String)}: an OCTET STRING
+     * wrapping {@code SEQUENCE OF PolicyInformation}, each one a {@code SEQUENCE} starting with the policy OID.
+     */
+    boolean areAllPresentIn(byte[] der) {
+        int required = encodedOids.length;
+        // One bit per required OID, spilling over to an array only for unusually long lists.
+        long seen = 0;
+        long[] seenBeyond64 = required > 64 ? new long[(required - 1) >>> 6] : null;
+        int remaining = required;
+
+        int octets = Der.enter(der, 0, der.length, Der.OCTET_STRING);
+        if (octets < 0) {
+            return false;
+        }
+        int policies = Der.enter(der, octets, der.length, Der.SEQUENCE);
+        if (policies < 0) {
+            return false;
+        }
+        int policiesEnd = Der.contentEnd(der, octets);
+        int pos = policies;
+        while (pos < policiesEnd) {
+            int information = Der.enter(der, pos, policiesEnd, Der.SEQUENCE);
+            if (information < 0) {
+                return false;
+            }
+            int informationEnd = Der.contentEnd(der, pos);
+            int oid = Der.enter(der, information, informationEnd, Der.OBJECT_IDENTIFIER);
+            if (oid < 0) {
+                return false;
+            }
+            int oidEnd = Der.contentEnd(der, information);
+            for (int i = 0; i < required; i++) {
+                byte[] expected = encodedOids[i];
+                if (!Arrays.equals(der, oid, oidEnd, expected, 0, expected.length)) {
+                    continue;
+                }
+                if (i < 64) {
+                    long bit = 1L << i;
+                    if ((seen & bit) == 0) {
+                        seen |= bit;
+                        remaining--;
+                    }
+                } else {
+                    long bit = 1L << (i & 63);
+                    int word = (i >>> 6) - 1;
+                    if ((seenBeyond64[word] & bit) == 0) {
+                        seenBeyond64[word] |= bit;
+                        remaining--;
+                    }
+                }
+                if (remaining == 0) {
+                    return true;
+                }
+                break;
+            }
+            pos = informationEnd;
+        }
+        return false;
+    }
+
+    // Strips the tag and length from the DER encoding: what is left is the same for every valid OID string spelling.
+    private static byte[] contentOf(ASN1ObjectIdentifier oid) {
+        try {
+            byte[] encoded = oid.getEncoded();
+            int content = Der.contentOffset(encoded, 1);
+            return Arrays.copyOfRange(encoded, content, encoded.length);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Unable to encode OID " + oid, e);
+        }
+    }
+}
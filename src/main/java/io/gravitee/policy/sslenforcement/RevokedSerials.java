@@ -0,0 +1,147 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.sslenforcement;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Revoked serial numbers of one issuer, packed in three parallel {@code long[]} (bits 0-63, 64-127 and 128-191 of
+ * each serial, the 20 octets RFC 5280 allows), sorted by their low 64 bits. A million serials take 24 MB and no
+ * object besides the arrays.
+ * <p>
+ * A lookup binary-searches the low bits, which {@link BigInteger#longValue()} returns without allocating. Only when
+ * they match, which for a certificate that is not revoked means a collision on 64 bits, are the high bits computed
+ * and compared. Serials that do not fit (negative or wider than 192 bits, both invalid per RFC 5280 but seen in the
+ * wild) are kept aside in a set.
+ *
+ * @author GraviteeSource Team
+ */
+final class RevokedSerials {
+
+    private static final int PACKED_BITS = 192;
+
+    private final long[] low;
+
+    private final long[] middle;
+
+    private final long[] high;
+
+    private final Set<BigInteger> unpacked;
+
+    private RevokedSerials(long[] low, long[] middle, long[] high, Set<BigInteger> unpacked) {
+        this.low = low;
+        this.middle = middle;
+        this.high = high;
+        this.unpacked = unpacked;
+    }
+
+    static RevokedSerials of(Collection<BigInteger> serials) {
+        int size = 0;
+        long[] low = new long[serials.size()];
+        long[] middle = new long[serials.size()];
+        long[] high = new long[serials.size()];
+        Set<BigInteger> unpacked = new HashSet<>();
+        for (BigInteger serial : serials) {
+            if (serial.signum() < 0 || serial.bitLength() > PACKED_BITS) {
+                unpacked.add(serial);
+            } else {
+                low[size] = serial.longValue();
+                middle[size] = serial.shiftRight(64).longValue();
+                high[size] = serial.shiftRight(128).longValue();
+                size++;
+            }
+        }
+        if (size < low.length) {
+            low = Arrays.copyOf(low, size);
+            middle = Arrays.copyOf(middle, size);
+            high = Arrays.copyOf(high, size);
+        }
+        sort(low, middle, high, 0, size - 1);
+        return new RevokedSerials(low, middle, high, unpacked.isEmpty() ? Set.of() : unpacked);
+    }
+
+    int size() {
+        return low.length + unpacked.size();
+    }
+
+    boolean contains(BigInteger serial) {
+        if (serial.signum() < 0 || serial.bitLength() > PACKED_BITS) {
+            return unpacked.contains(serial);
+        }
+        long lowBits = serial.longValue();
+        int index = Arrays.binarySearch(low, lowBits);
+        if (index < 0) {
+            return false;
+        }
+        // Serials sharing the low bits are adjacent: rewind to the first one, then compare the high bits of each.
+        while (index > 0 && low[index - 1] == lowBits) {
+            index--;
+        }
+        long middleBits = serial.shiftRight(64).longValue();
+        long highBits = serial.shiftRight(128).longValue();
+        for (; index < low.length && low[index] == lowBits; index++) {
+            if (middle[index] == middleBits && high[index] == highBits) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sorts the three arrays by {@code low}, in place: boxing millions of serials to sort them with a comparator
+     * would cost several times the memory of the index itself.
+     */
+    private static void sort(long[] low, long[] middle, long[] high, int from, int to) {
+        while (from < to) {
+            long pivot = low[(from + to) >>> 1];
+            int i = from;
+            int j = to;
+            while (i <= j) {
+                while (low[i] < pivot) {
+                    i++;
+                }
+                while (low[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(low, i, j);
+                    swap(middle, i, j);
+                    swap(high, i, j);
+                    i++;
+                    j--;
+                }
+            }
+            // Recurse into the smaller half only, to bound the stack depth to log(n).
+            if (j - from < to - i) {
+                sort(low, middle, high, from, j);
+                from = i;
+            } else {
+                sort(low, middle, high, i, to);
+                to = j;
+            }
+        }
+    }
+
+    private static void swap(long[] values, int i, int j) {
+        long value = values[i];
+        values[i] = values[j];
+        values[j] = value;
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.sslenforcement;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import javax.security.auth.x500.X500Principal;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.CollectionUtils;
+
+/**
+ * Compiled Subject Alternative Name allow-list. Patterns are split at construction time into:
+ * <ul>
+ *     <li>literal values, looked up in a hash set;</li>
+ *     <li>{@code *.<domain>} wildcards, indexed in a trie of reversed DNS labels so that matching costs time
+ *     proportional to the number of labels of the SAN value, not to the number of patterns;</li>
+ *     <li>{@code *@<domain>} email wildcards, looked up by the domain part of the SAN value;</li>
+ *     <li>any other Ant pattern, matched one by one as before.</li>
+ * </ul>
+ * Every path is case-insensitive and accepts exactly the values {@link AntPathMatcher} would. Literal distinguished
+ * names are also compared as DNs with {@code directoryName} SANs, so that they match whichever way they are written,
+ * e.g. {@code CN=partner, O=Example} against the {@code CN=partner,O=Example} rendered by the JDK.
+ *
+ * @author GraviteeSource Team
+ */
+final class SanAllowList {
+
+    static final SanAllowList EMPTY = new SanAllowList(Set.of(), Set.of(), new Label(), Set.of(), List.of(), 0);
+
+    // DNS and email SAN values are case-insensitive per RFC 5280 / 6125.
+    private static final AntPathMatcher SAN_MATCHER;
+
+    static {
+        SAN_MATCHER = new AntPathMatcher();
+        SAN_MATCHER.setCaseSensitive(false);
+    }
+
+    private final Set<String> exactValues;
+
+    // Canonical form of the literal entries that are distinguished names.
+    private final Set<String> directoryNames;
+
+    private final Label domainWildcards;
+
+    private final Set<String> emailDomains;
+
+    private final List<String> patterns;
+
+    private final int size;
+
+    private SanAllowList(
+        Set<String> exactValues,
+        Set<String> directoryNames,
+        Label domainWildcards,
+        Set<String> emailDomains,
+        List<String> patterns,
+        int size
+    ) {
+        this.exactValues = exactValues;
+        this.directoryNames = directoryNames;
+        this.domainWildcards = domainWildcards;
+        this.emailDomains = emailDomains;
+        this.patterns = patterns;
+        this.size = size;
+    }
+
+    static SanAllowList compile(List<String> entries) {
+        if (CollectionUtils.isEmpty(entries)) {
+            return EMPTY;
+        }
+        Set<String> exactValues = new HashSet<>();
+        Set<String> directoryNames = new HashSet<>();
+        Label domainWildcards = new Label();
+        Set<String> emailDomains = new HashSet<>();
+        List<String> patterns = new ArrayList<>();
+        for (String entry : entries) {
+            String pattern = entry.toLowerCase(Locale.ROOT);
+            if (!isPattern(pattern)) {
+                exactValues.add(pattern);
+                String canonical = canonicalDn(entry);
+                if (canonical != null) {
+                    directoryNames.add(canonical);
+                }
+            } else if (pattern.startsWith("*.") && isLiteralHostPart(pattern.substring(2))) {
+                domainWildcards.insert(pattern.substring(2));
+            } else if (pattern.startsWith("*@") && isLiteralHostPart(pattern.substring(2)) && pattern.indexOf('@', 2) < 0) {
+                emailDomains.add(pattern.substring(2));
+            } else {
+                patterns.add(entry);
+            }
+        }
+        return new SanAllowList(exactValues, directoryNames, domainWildcards, emailDomains, List.copyOf(patterns), entries.size());
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return whether any of the names, whatever its type, is allowed.
+     */
+    boolean matchesAny(SubjectAlternativeNames names) {
+        for (int i = 0, size = names.size(); i < size; i++) {
+            int type = names.type(i);
+            // IP addresses and registered IDs are rendered in lower case already.
+            boolean lowerCase = type == SubjectAlternativeNames.IP_ADDRESS || type == SubjectAlternativeNames.REGISTERED_ID;
+            if (matches(names.value(i), lowerCase)) {
+                return true;
+            }
+            if (type == SubjectAlternativeNames.DIRECTORY_NAME && !directoryNames.isEmpty()) {
+                String canonical = canonicalDn(names.value(i));
+                if (canonical != null && directoryNames.contains(canonical)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    boolean matches(String sanValue) {
+        return matches(sanValue, false);
+    }
+
+    private boolean matches(String sanValue, boolean lowerCase) {
+        String value = lowerCase ? sanValue : sanValue.toLowerCase(Locale.ROOT);
+        if (exactValues.contains(value)) {
+            return true;
+        }
+        // Ant wildcards never cross a '/', so neither do the indexed ones.
+        if (value.indexOf('/') < 0) {
+            if (domainWildcards.matchesSuffixOf(value)) {
+                return true;
+            }
+            if (!emailDomains.isEmpty()) {
+                int at = value.lastIndexOf('@');
+                if (at >= 0 && emailDomains.contains(value.substring(at + 1))) {
+                    return true;
+                }
+            }
+        }
+        for (String pattern : patterns) {
+            if (SAN_MATCHER.match(pattern, sanValue)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the canonical form of {@code value}, or {@code null} when it is not a distinguished name.
+     */
+    private static String canonicalDn(String value) {
+        if (value.indexOf('=') < 0) {
+            return null;
+        }
+        try {
+            return new X500Principal(value).getName(X500Principal.CANONICAL);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // Mirrors AntPathMatcher#isPattern: '{' starts a URI template variable, which matches like a wildcard.
+    private static boolean isPattern(String value) {
+        return value.indexOf('*') >= 0 || value.indexOf('?') >= 0 || value.indexOf('{') >= 0;
+    }
+
+    private static boolean isLiteralHostPart(String value) {
+        return !value.isEmpty() && !isPattern(value) && value.indexOf('/') < 0;
+    }
+
+    /**
+     * Trie node for one DNS label, children keyed by the next label to the left.
+     */
+    private static final class Label {
+
+        private final Map<String, Label> children = new HashMap<>();
+
+        // True when "*.<labels from the root down to this node>" is allowed.
+        private boolean wildcard;
+
+        private void insert(String domain) {
+            Label node = this;
+            int end = domain.length();
+            while (end >= 0) {
+                int dot = domain.lastIndexOf('.', end - 1);
+                node = node.children.computeIfAbsent(domain.substring(dot + 1, end), k -> new Label());
+                end = dot;
+            }
+            node.wildcard = true;
+        }
+
+        /**
+         * Walks the labels of {@code value} from right to left. Matches when a wildcard node is reached with at least
+         * a '.' left in the value: like Ant's {@code *}, the remaining prefix may contain further dots or be empty.
+         */
+        private boolean matchesSuffixOf(String value) {
+            Label node = this;
+            int end = value.length();
+            while (!node.children.isEmpty()) {
+                int dot = value.lastIndexOf('.', end - 1);
+                if (dot < 0) {
+                    return false;
+                }
+                node = node.children.get(value.substring(dot + 1, end));
+                if (node == null) {
+                    return false;
+                }
+                if (node.wildcard) {
+                    return true;
+                }
+                end = dot;
+            }
+            return false;
+        }
+    }
+}
@@ -20,34 +20,49 @@ import io.gravitee.common.util.Maps;
 import io.gravitee.gateway.api.Request;
 import io.gravitee.gateway.api.Response;
 import io.gravitee.gateway.api.http.HttpHeaders;
+import io.gravitee.gateway.reactive.api.ExecutionFailure;
+import io.gravitee.gateway.reactive.api.context.HttpExecutionContext;
+import io.gravitee.gateway.reactive.api.context.HttpRequest;
+import io.gravitee.gateway.reactive.api.policy.Policy;
 import io.gravitee.policy.api.PolicyChain;
 import io.gravitee.policy.api.PolicyResult;
 import io.gravitee.policy.api.annotations.OnRequest;
+import io.gravitee.policy.sslenforcement.cache.BoundedCache;
+import io.gravitee.policy.sslenforcement.cache.CacheStats;
+import io.gravitee.policy.sslenforcement.configuration.CertificateHeaderFormat;
 import io.gravitee.policy.sslenforcement.configuration.CertificateLocation;
+import io.gravitee.policy.sslenforcement.configuration.FingerprintType;
 import io.gravitee.policy.sslenforcement.configuration.SslEnforcementPolicyConfiguration;
-import java.io.ByteArrayInputStream;
-import java.net.URLDecoder;
-import java.nio.charset.Charset;
+import io.gravitee.policy.sslenforcement.audit.DecisionAuditLog;
+import io.gravitee.policy.sslenforcement.metrics.EnforcementMetrics;
+import io.gravitee.policy.sslenforcement.metrics.Stage;
+import io.reactivex.rxjava3.core.Completable;
+import io.reactivex.rxjava3.core.Single;
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import java.io.IOException;
+import java.lang.ref.Cleaner;
+import java.nio.file.Path;
 import java.security.cert.Certificate;
-import java.security.cert.CertificateFactory;
+import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
+import java.time.Duration;
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
-import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Supplier;
+import javax.net.ssl.ExtendedSSLSession;
 import javax.net.ssl.SSLPeerUnverifiedException;
 import javax.net.ssl.SSLSession;
 import javax.security.auth.x500.X500Principal;
 import lombok.extern.slf4j.Slf4j;
-import org.bouncycastle.asn1.ASN1OctetString;
-import org.bouncycastle.asn1.ASN1Primitive;
 import org.bouncycastle.asn1.x500.X500Name;
-import org.bouncycastle.asn1.x509.CertificatePolicies;
-import org.bouncycastle.asn1.x509.PolicyInformation;
-import org.springframework.util.AntPathMatcher;
 import org.springframework.util.CollectionUtils;
 import org.springframework.util.StringUtils;
 
@@ -56,19 +71,92 @@ import org.springframework.util.StringUtils;
  * @author GraviteeSource Team
  */
 @Slf4j
-public class SslEnforcementPolicy {
+public class SslEnforcementPolicy implements Policy {
 
     private final SslEnforcementPolicyConfiguration configuration;
 
     /**
-     * DN whitelist pre-parsed into BouncyCastle {@link X500Name} objects at construction time.
-     * Policy instances are created once per API deployment, so parsing here keeps the per-request
-     * path allocation-free instead of re-parsing every configured DN on each call.
+     * Client DN and SAN whitelists, compiled at construction time and again whenever one of their files changes. A
+     * reload builds a complete new {@link AllowLists} before swapping this reference, so a request, which reads it
+     * once, sees either the previous lists or the new ones, never a mix or a partially loaded list.
      */
-    private final List<X500Name> whitelistClientCertificateNames;
+    private volatile AllowLists allowLists;
 
-    /** Issuer DN whitelist pre-parsed at construction time, same rationale as {@link #whitelistClientCertificateNames}. */
-    private final List<X500Name> whitelistIssuerNames;
+    /** Pinned certificate or public key fingerprints, compiled at construction time into a primitive hash set. */
+    private final PinnedFingerprints pinnedFingerprints;
+
+    /** Whether a pinned certificate skips every check but revocation: set only when pins are actually configured. */
+    private final boolean pinnedFingerprintsSufficient;
+
+    /**
+     * Issuer DN whitelist compiled at construction time: exact entries are hash-indexed, Ant-pattern entries are kept
+     * as pre-canonicalized names, so the per-request path is one canonicalization and a hash lookup for the common case.
+     */
+    private final DnAllowList whitelistIssuerNames;
+
+    /** Required certificatePolicies OIDs, pre-encoded in DER at construction time. */
+    private final RequiredPolicyOids requiredCertificatePolicies;
+
+    /** PKIX validator of header certificates against the trust anchors, {@code null} when no trust anchor is configured. */
+    private final ChainValidator chainValidator;
+
+    /** Revoked serial numbers indexed from the local CRL files, {@code null} when none is configured. */
+    private final CrlStore crlStore;
+
+    /** Verifier of stapled OCSP responses, with its own status cache, {@code null} when OCSP stapling is disabled. */
+    private final OcspStapleVerifier ocspStapleVerifier;
+
+    /**
+     * Verdicts keyed by certificate fingerprint, {@code null} when disabled. Owned by the policy instance so a
+     * redeployment with a new configuration starts from an empty cache.
+     */
+    private final BoundedCache<CertificateFingerprint, StampedVerdict> verdictCache;
+
+    /** Recent rejections keyed by certificate fingerprint, with hit counters, {@code null} when disabled. */
+    private final RejectionCache rejectionCache;
+
+    /** Parsed header certificates keyed by raw header value, {@code null} when disabled or not in HEADER mode. */
+    private final HeaderCertificateCache headerCertificateCache;
+
+    /**
+     * Name under which the verdict is memoized on the {@link SSLSession}, {@code null} when disabled. Made of a
+     * per-instance id and the configuration hash so that neither another policy instance on the same connection
+     * nor a redeployed configuration can read a stale verdict.
+     */
+    private final String sessionVerdictKey;
+
+    /**
+     * Shared per-stage timers and counters, {@code null} when metrics are disabled and, when {@code metricsName} is not
+     * set, until the first request tells which API they belong to.
+     */
+    private volatile EnforcementMetrics metrics;
+
+    /** Asynchronous audit trail of the decisions taken on client certificates, {@code null} when disabled. */
+    private final DecisionAuditLog auditLog;
+
+    /** Compiled {@code certificateRule}, {@code null} when not configured or without client authentication. */
+    private final CertificateRule certificateRule;
+
+    /** Whether the client DN whitelist, inline or from a file, is configured. */
+    private final boolean clientNamesListed;
+
+    /** Whether the Subject Alternative Name whitelist, inline or from a file, is configured. */
+    private final boolean subjectAlternativeNamesListed;
+
+    /** Enabled certificate checks, compiled at construction time, cheapest first. */
+    private final EnforcementPipeline<X509Certificate, Presented> pipeline;
+
+    /**
+     * The same checks run on the fields of an Envoy {@code x-forwarded-client-cert} header, without decoding the
+     * certificate, {@code null} unless every enabled check can be answered from these fields.
+     */
+    private final EnforcementPipeline<ForwardedClientCertificate, AllowLists> forwardedPipeline;
+
+    /**
+     * Whether anything reads the client certificate. When nothing does, e.g. for plain TLS APIs, it is neither copied
+     * from the TLS session nor decoded from its header.
+     */
+    private final boolean certificateRequired;
 
     static final String SSL_REQUIRED = "SSL_ENFORCEMENT_SSL_REQUIRED";
 
@@ -82,178 +170,1021 @@ public class SslEnforcementPolicy {
 
     static final String SAN_MISMATCH = "SSL_ENFORCEMENT_SAN_MISMATCH";
 
-    private static final String CERTIFICATE_POLICIES_OID = "2.5.29.32";
+    static final String CHAIN_INVALID = "SSL_ENFORCEMENT_CHAIN_INVALID";
 
-    // DNS and email SAN values are case-insensitive per RFC 5280 / 6125.
-    private static final AntPathMatcher SAN_MATCHER;
+    static final String FINGERPRINT_NOT_PINNED = "SSL_ENFORCEMENT_FINGERPRINT_NOT_PINNED";
 
-    static {
-        SAN_MATCHER = new AntPathMatcher();
-        SAN_MATCHER.setCaseSensitive(false);
-    }
+    static final String CERTIFICATE_REVOKED = "SSL_ENFORCEMENT_CERTIFICATE_REVOKED";
+
+    static final String OCSP_STATUS_UNVERIFIED = "SSL_ENFORCEMENT_OCSP_STATUS_UNVERIFIED";
+
+    static final String RULE_MISMATCH = "SSL_ENFORCEMENT_RULE_MISMATCH";
+
+    private static final Verdict SSL_REQUIRED_VERDICT = Verdict.deny(
+        SSL_REQUIRED,
+        HttpStatusCode.FORBIDDEN_403,
+        "Access to the resource requires SSL certificate."
+    );
+
+    private static final Verdict AUTHENTICATION_REQUIRED_VERDICT = Verdict.deny(
+        AUTHENTICATION_REQUIRED,
+        HttpStatusCode.UNAUTHORIZED_401,
+        "Unauthorized"
+    );
+
+    private static final Verdict RULE_MISMATCH_VERDICT = Verdict.deny(
+        RULE_MISMATCH,
+        HttpStatusCode.FORBIDDEN_403,
+        "Certificate does not match the configured rule"
+    );
+
+    private static final String SESSION_VERDICT_KEY_PREFIX = "gravitee.policy.ssl-enforcement.verdict.";
+
+    private static final AtomicLong INSTANCE_IDS = new AtomicLong();
+
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    /** What this instance holds in structures shared with other instances, handed back by {@link #close()}. */
+    private final PolicyResources resources = new PolicyResources();
+
+    private final Cleaner.Cleanable cleanable;
 
     public SslEnforcementPolicy(SslEnforcementPolicyConfiguration configuration) {
         this.configuration = configuration;
-        this.whitelistClientCertificateNames = parseDnWhitelist(configuration.getWhitelistClientCertificates());
-        this.whitelistIssuerNames = parseDnWhitelist(configuration.getWhitelistIssuers());
-    }
-
-    private static List<X500Name> parseDnWhitelist(List<String> whitelist) {
-        if (CollectionUtils.isEmpty(whitelist)) {
-            return List.of();
+        // Registered first, so that whatever is acquired below is released even if the constructor fails.
+        this.cleanable = CLEANER.register(this, resources);
+        this.allowLists = compileAllowLists(0);
+        this.pinnedFingerprints = PinnedFingerprints.compile(configuration.getPinnedFingerprints());
+        this.pinnedFingerprintsSufficient = configuration.isPinnedFingerprintsSufficient() &&
+            configuration.isRequiresClientAuthentication() &&
+            !pinnedFingerprints.isEmpty();
+        this.whitelistIssuerNames = DnAllowList.compile(configuration.getWhitelistIssuers());
+        this.requiredCertificatePolicies = RequiredPolicyOids.compile(configuration.getRequiredCertificatePolicies());
+        this.chainValidator = configuration.isRequiresClientAuthentication() &&
+            configuration.getCertificateLocation() == CertificateLocation.HEADER &&
+            StringUtils.hasText(configuration.getTrustAnchorsFile())
+            ? new ChainValidator(
+                CertificateBundle.read(configuration.getTrustAnchorsFile(), "trust anchors"),
+                configuration.getChainValidationCacheMaxSize()
+            )
+            : null;
+        this.certificateRule = configuration.isRequiresClientAuthentication() && StringUtils.hasText(configuration.getCertificateRule())
+            ? CertificateRule.compile(configuration.getCertificateRule())
+            : null;
+        this.crlStore = configuration.isRequiresClientAuthentication() && !CollectionUtils.isEmpty(configuration.getCrlFiles())
+            ? CrlStore.load(configuration.getCrlFiles())
+            : null;
+        this.ocspStapleVerifier = configuration.isOcspStaplingEnabled() &&
+            configuration.isRequiresClientAuthentication() &&
+            configuration.getCertificateLocation() == CertificateLocation.SESSION
+            ? new OcspStapleVerifier(
+                StringUtils.hasText(configuration.getOcspResponderCertificateFile())
+                    ? CertificateBundle.read(configuration.getOcspResponderCertificateFile(), "OCSP responder certificate")
+                    : List.of(),
+                configuration.getOcspResponseCacheMaxSize()
+            )
+            : null;
+        this.verdictCache = configuration.isVerdictCacheEnabled() && configuration.isRequiresClientAuthentication()
+            ? new BoundedCache<>(configuration.getVerdictCacheMaxSize(), Duration.ofSeconds(configuration.getVerdictCacheTtlSeconds()))
+            : null;
+        this.rejectionCache = configuration.isRejectionCacheEnabled() && configuration.isRequiresClientAuthentication()
+            ? new RejectionCache(configuration.getRejectionCacheMaxSize(), Duration.ofSeconds(configuration.getRejectionCacheTtlSeconds()))
+            : null;
+        this.headerCertificateCache = configuration.isCertificateHeaderCacheEnabled() &&
+            configuration.getCertificateLocation() == CertificateLocation.HEADER
+            ? new HeaderCertificateCache(configuration.getCertificateHeaderCacheMaxSize())
+            : null;
+        this.sessionVerdictKey = configuration.isSessionVerdictCacheEnabled() &&
+            configuration.getCertificateLocation() == CertificateLocation.SESSION
+            ? SESSION_VERDICT_KEY_PREFIX + INSTANCE_IDS.incrementAndGet() + '.' + Integer.toHexString(configuration.hashCode())
+            : null;
+        if (configuration.isMetricsEnabled() && StringUtils.hasText(configuration.getMetricsName())) {
+            acquireMetrics(configuration.getMetricsName());
         }
-        List<X500Name> names = new ArrayList<>(whitelist.size());
-        for (String name : whitelist) {
-            // Normalize through javax.security so BouncyCastle gets canonical ASN.1 object identifiers.
-            names.add(new X500Name(new X500Principal(name).getName()));
+        this.auditLog = configuration.isAuditEnabled() &&
+            configuration.isRequiresClientAuthentication() &&
+            StringUtils.hasText(configuration.getAuditFile())
+            ? DecisionAuditLog.forFile(
+                configuration.getAuditFile(),
+                configuration.getAuditBufferSize(),
+                configuration.getAuditFileMaxSizeMb() * 1024L * 1024L,
+                configuration.getAuditFileMaxBackups()
+            )
+            : null;
+        if (auditLog != null) {
+            resources.add(auditLog::release);
+        }
+        this.clientNamesListed = !CollectionUtils.isEmpty(configuration.getWhitelistClientCertificates()) ||
+            StringUtils.hasText(configuration.getWhitelistClientCertificatesFile());
+        this.subjectAlternativeNamesListed = !CollectionUtils.isEmpty(configuration.getWhitelistSubjectAlternativeNames()) ||
+            StringUtils.hasText(configuration.getWhitelistSubjectAlternativeNamesFile());
+        this.pipeline = compilePipeline();
+        this.forwardedPipeline = compileForwardedPipeline();
+        this.certificateRequired = configuration.isRequiresClientAuthentication() || !pipeline.isEmpty();
+        watchAllowListFile(configuration.getWhitelistClientCertificatesFile());
+        watchAllowListFile(configuration.getWhitelistSubjectAlternativeNamesFile());
+        if (crlStore != null) {
+            crlStore.files().forEach(file -> watch(file, SslEnforcementPolicy::reloadCrls));
         }
-        return names;
     }
 
     @OnRequest
     public void onRequest(Request request, Response response, PolicyChain policyChain) {
-        boolean secure = isSecure(request);
+        if (metrics == null && configuration.isMetricsEnabled()) {
+            acquireMetrics(request.contextPath());
+        }
+        Verdict verdict = decideAndRecord(new IncomingRequest(request.sslSession(), request.headers()));
+        if (verdict.isAllowed()) {
+            policyChain.doNext(request, response);
+        } else {
+            policyChain.failWith(verdict.failure());
+        }
+    }
+
+    @Override
+    public String id() {
+        return "ssl-enforcement";
+    }
+
+    /**
+     * Native implementation for the reactive (v4) engine, sharing the compiled allow-lists and caches with
+     * {@link #onRequest(Request, Response, PolicyChain)}. The evaluation runs on the calling event loop, unless
+     * {@code workerOffloadEnabled} is set and the certificate has to be decoded from a header that is not in the header
+     * certificate cache yet: the evaluation then runs on a worker through the request's Vert.x context, which the
+     * returned {@link Completable} resumes on, so that the next policies keep running on the event loop.
+     */
+    @Override
+    public Completable onRequest(HttpExecutionContext ctx) {
+        HttpRequest request = ctx.request();
+        if (metrics == null && configuration.isMetricsEnabled()) {
+            acquireMetrics(request.contextPath());
+        }
+        IncomingRequest incoming = new IncomingRequest(request.sslSession(), request.headers());
+        Context context = configuration.isWorkerOffloadEnabled() ? Vertx.currentContext() : null;
+        if (context != null && requiresHeaderDecoding(incoming)) {
+            return Single
+                .<Verdict>create(emitter ->
+                    context
+                        .executeBlocking(() -> decideAndRecord(incoming), false)
+                        .onComplete(result -> {
+                            if (result.succeeded()) {
+                                emitter.onSuccess(result.result());
+                            } else {
+                                emitter.onError(result.cause());
+                            }
+                        })
+                )
+                .flatMapCompletable(verdict -> complete(ctx, verdict));
+        }
+        return complete(ctx, decideAndRecord(incoming));
+    }
+
+    /**
+     * Releases what this instance holds in structures shared with other policy instances: named metrics and their
+     * MXBean, the audit log with its writer thread, and the watches on allow-list and CRL files. The gateway does not
+     * notify policies when their API is undeployed, so this also runs by itself once the instance has been garbage
+     * collected; calling it earlier, or more than once, is harmless.
+     */
+    public void close() {
+        cleanable.clean();
+    }
+
+    /**
+     * Binds the metrics registered under {@code name}, or under {@code "default"} when there is none, e.g. when the
+     * request does not tell its API context path.
+     */
+    private synchronized void acquireMetrics(String name) {
+        if (metrics != null) {
+            return;
+        }
+        EnforcementMetrics acquired = EnforcementMetrics.named(
+            StringUtils.hasText(name) ? name : "default",
+            configuration.isMetricsJmxEnabled()
+        );
+        resources.add(acquired::release);
+        metrics = acquired;
+    }
+
+    private static Completable complete(HttpExecutionContext ctx, Verdict verdict) {
+        if (verdict.isAllowed()) {
+            return Completable.complete();
+        }
+        PolicyResult failure = verdict.failure();
+        return ctx.interruptWith(
+            new ExecutionFailure(failure.statusCode()).key(failure.key()).message(failure.message()).parameters(failure.parameters())
+        );
+    }
+
+    private boolean requiresHeaderDecoding(IncomingRequest incoming) {
+        HttpHeaders headers = incoming.headers;
+        if (!certificateRequired || configuration.getCertificateLocation() != CertificateLocation.HEADER || headers == null) {
+            return false;
+        }
+        if (!incoming.secure()) {
+            // Decided before the certificate is even looked at.
+            return false;
+        }
+        if (forwardedPipeline != null) {
+            ForwardedClientCertificate forwarded = incoming.forwarded();
+            if (forwarded != null && isAnsweredByFields(forwarded)) {
+                return false;
+            }
+        }
+        String certHeader = configuration.getCertificateHeaderName();
+        String certHeaderValue = StringUtils.hasText(certHeader) ? headers.get(certHeader) : null;
+        if (certHeaderValue == null || certHeaderValue.length() > configuration.getCertificateHeaderMaxSize()) {
+            return false;
+        }
+        String encoded = certificateOf(incoming, certHeaderValue);
+        return encoded != null && (headerCertificateCache == null || !headerCertificateCache.contains(encoded));
+    }
+
+    private Verdict decideAndRecord(IncomingRequest incoming) {
+        long start = tick();
+        Verdict verdict = decide(incoming);
+        if (metrics != null) {
+            lap(Stage.TOTAL, start);
+            if (verdict.isAllowed()) {
+                metrics.accepted();
+            } else {
+                metrics.rejected(verdict.failure().key());
+            }
+        }
+        return verdict;
+    }
+
+    private Verdict decide(IncomingRequest incoming) {
+        long start = tick();
+        SSLSession requestSslSession = incoming.sslSession;
+        boolean secure = incoming.secure();
+        start = lap(Stage.SSL_CHECK, start);
 
         // No SSL at all, go to next policy
         if (!configuration.isRequiresSsl() && !secure) {
-            policyChain.doNext(request, response);
-            return;
+            return Verdict.ALLOW;
         }
 
         if (configuration.isRequiresSsl() && !secure) {
-            policyChain.failWith(
-                PolicyResult.failure(SSL_REQUIRED, HttpStatusCode.FORBIDDEN_403, "Access to the resource requires SSL certificate.")
-            );
-            return;
+            return SSL_REQUIRED_VERDICT;
+        }
+
+        // Secure, and no stage reads the certificate.
+        if (!certificateRequired) {
+            return Verdict.ALLOW;
+        }
+
+        // Before any cached verdict is served: it is only as fresh as the CRLs it was computed with.
+        refreshCrlsIfStale();
+
+        // The peer certificate cannot change within a TLS session, so neither can the verdict, until a reload.
+        AllowLists lists = allowLists;
+        SSLSession sslSession = sessionVerdictKey == null ? null : requestSslSession;
+        if (
+            sslSession != null &&
+            sslSession.getValue(sessionVerdictKey) instanceof StampedVerdict memoized &&
+            memoized.generation() == lists.generation()
+        ) {
+            return audited(withStapledOcsp(memoized.verdict(), requestSslSession), null, requestSslSession);
         }
 
-        var certificate = extractCertificate(request).orElse(null);
+        if (forwardedPipeline != null) {
+            ForwardedClientCertificate forwarded = incoming.forwarded();
+            if (forwarded != null && isAnsweredByFields(forwarded)) {
+                lap(Stage.CERTIFICATE_EXTRACTION, start);
+                return evaluate(forwarded, lists);
+            }
+        }
+
+        Verdict verdict;
+        var certificate = extractCertificate(incoming).orElse(null);
+        lap(Stage.CERTIFICATE_EXTRACTION, start);
         if (configuration.isRequiresClientAuthentication() && certificate == null) {
-            policyChain.failWith(PolicyResult.failure(AUTHENTICATION_REQUIRED, HttpStatusCode.UNAUTHORIZED_401, "Unauthorized"));
+            verdict = AUTHENTICATION_REQUIRED_VERDICT;
+        } else {
+            verdict = evaluate(certificate, lists, incoming::presentedChain);
+        }
+
+        if (sslSession != null) {
+            sslSession.putValue(sessionVerdictKey, new StampedVerdict(verdict, lists.generation()));
+        }
+        return audited(withStapledOcsp(verdict, requestSslSession), certificate, requestSslSession);
+    }
+
+    /**
+     * Publishes the decision to the audit log, if enabled. The certificate is read from the session when it was not
+     * extracted; the audit log copies its names and its fingerprint, memoized for the verdict cache and chain
+     * validation, and the line is formatted by its writer thread.
+     */
+    private Verdict audited(Verdict verdict, X509Certificate certificate, SSLSession sslSession) {
+        if (auditLog != null) {
+            X509Certificate audited = certificate;
+            if (audited == null && sslSession != null) {
+                X509Certificate[] chain = peerChain(sslSession);
+                audited = chain == null ? null : chain[0];
+            }
+            CertificateFingerprint fingerprint = audited == null ? null : CertificateFingerprint.of(audited);
+            auditLog.publishFingerprinted(
+                audited,
+                fingerprint == null ? null : fingerprint.digest(),
+                verdict.isAllowed() ? null : verdict.failure().key()
+            );
+        }
+        return verdict;
+    }
+
+    /**
+     * Checks the stapled OCSP response once the cacheable stages have accepted the certificate. It is checked on every
+     * request, even when the verdict comes from a cache: OCSP statuses have their own cache, bounded by the
+     * {@code nextUpdate} of each response, which the verdict and session caches know nothing about.
+     */
+    private Verdict withStapledOcsp(Verdict verdict, SSLSession sslSession) {
+        if (ocspStapleVerifier == null || sslSession == null || !verdict.isAllowed()) {
+            return verdict;
+        }
+        long start = tick();
+        Verdict ocspVerdict = enforceStapledOcsp(sslSession);
+        lap(Stage.OCSP_STAPLING, start);
+        return ocspVerdict;
+    }
+
+    /**
+     * Returns the cached rejection or verdict for this certificate when the rejection or verdict cache is enabled,
+     * computing and caching it on a miss. Certificates that cannot be fingerprinted are always evaluated, and verdicts
+     * computed with allow-lists that have since been reloaded are recomputed.
+     */
+    private Verdict evaluate(X509Certificate certificate, AllowLists lists, Supplier<List<X509Certificate>> presentedChain) {
+        if ((verdictCache == null && rejectionCache == null) || certificate == null) {
+            return enforce(certificate, lists, presentedChain, metrics);
+        }
+        return cached(CertificateFingerprint.of(certificate), lists, () -> enforce(certificate, lists, presentedChain, metrics));
+    }
+
+    /**
+     * Same as {@link #evaluate(X509Certificate, AllowLists, Supplier)} for the fields of an Envoy {@code x-forwarded-client-cert}
+     * header: its {@code Hash} is the SHA-256 digest of the DER certificate, so both share cache entries.
+     */
+    private Verdict evaluate(ForwardedClientCertificate forwarded, AllowLists lists) {
+        if (verdictCache == null && rejectionCache == null) {
+            return enforce(forwarded, lists);
+        }
+        byte[] digest = forwarded.digest();
+        return cached(digest == null ? null : CertificateFingerprint.ofDigest(digest), lists, () -> enforce(forwarded, lists));
+    }
+
+    private Verdict cached(CertificateFingerprint fingerprint, AllowLists lists, Supplier<Verdict> enforcement) {
+        if (fingerprint == null) {
+            return enforcement.get();
+        }
+        if (rejectionCache != null) {
+            Verdict rejected = rejectionCache.get(fingerprint, lists.generation());
+            if (rejected != null) {
+                return rejected;
+            }
+        }
+        if (verdictCache != null) {
+            StampedVerdict cached = verdictCache.get(fingerprint);
+            if (cached != null && cached.generation() == lists.generation()) {
+                return cached.verdict();
+            }
+        }
+        Verdict verdict = enforcement.get();
+        // With a rejection cache, the verdict cache only holds allowed certificates, which rejection floods cannot evict.
+        if (verdictCache != null && (verdict.isAllowed() || rejectionCache == null)) {
+            verdictCache.put(fingerprint, new StampedVerdict(verdict, lists.generation()));
+        }
+        if (rejectionCache != null && !verdict.isAllowed()) {
+            rejectionCache.put(fingerprint, verdict, lists.generation());
+        }
+        return verdict;
+    }
+
+    /**
+     * @param metrics where to record stage timings, {@code null} not to record them.
+     */
+    private Verdict enforce(
+        X509Certificate certificate,
+        AllowLists lists,
+        Supplier<List<X509Certificate>> presentedChain,
+        EnforcementMetrics metrics
+    ) {
+        if (pinnedFingerprintsSufficient) {
+            long start = metrics == null ? 0L : System.nanoTime();
+            boolean pinned = isPinned(certificate);
+            start = lap(metrics, Stage.PINNING, start);
+            if (pinned) {
+                // An exact pinned certificate (or key) needs no further identity check, only the revocation one.
+                Verdict verdict = enforceNotRevoked(certificate);
+                lap(metrics, Stage.REVOCATION, start);
+                return verdict;
+            }
+        }
+        return pipeline.evaluate(certificate, new Presented(lists, presentedChain), metrics);
+    }
+
+    private Verdict enforce(ForwardedClientCertificate forwarded, AllowLists lists) {
+        if (pinnedFingerprintsSufficient) {
+            long start = tick();
+            byte[] digest = forwarded.digest();
+            boolean pinned = digest != null && pinnedFingerprints.contains(digest);
+            lap(Stage.PINNING, start);
+            if (pinned) {
+                // No CRL here: revocation needs the certificate, which disables this path.
+                return Verdict.ALLOW;
+            }
+        }
+        return forwardedPipeline.evaluate(forwarded, lists, metrics);
+    }
+
+    /**
+     * Compiles the checks enabled by the configuration, so that requests neither re-read the configuration nor go
+     * through disabled checks. The estimated costs only order the pipeline until adaptive ordering, if enabled, has
+     * measured the actual ones.
+     */
+    private EnforcementPipeline<X509Certificate, Presented> compilePipeline() {
+        List<EnforcementPipeline.Step<X509Certificate, Presented>> steps = new ArrayList<>();
+        if (configuration.isRequiresClientAuthentication()) {
+            if (!pinnedFingerprints.isEmpty() && !pinnedFingerprintsSufficient) {
+                steps.add(
+                    new EnforcementPipeline.Step<>(Stage.PINNING, 1_500, (certificate, presented) ->
+                        enforcePinnedFingerprints(certificate, isPinned(certificate))
+                    )
+                );
+            }
+            if (chainValidator != null) {
+                steps.add(
+                    new EnforcementPipeline.Step<>(Stage.CHAIN_VALIDATION, 50_000, (certificate, presented) ->
+                        enforceValidChain(certificate, presented.chain())
+                    )
+                );
+            }
+            if (clientNamesListed) {
+                steps.add(
+                    new EnforcementPipeline.Step<>(Stage.CLIENT_DN, 2_000, (certificate, presented) ->
+                        enforceDnWhitelist(certificate, presented.lists().clientNames())
+                    )
+                );
+            }
+            if (!whitelistIssuerNames.isEmpty()) {
+                steps.add(
+                    new EnforcementPipeline.Step<>(Stage.ISSUER_DN, 2_000, (certificate, presented) -> enforceIssuerWhitelist(certificate))
+                );
+            }
+            if (crlStore != null) {
+                steps.add(
+                    new EnforcementPipeline.Step<>(Stage.REVOCATION, 200, (certificate, presented) -> enforceNotRevoked(certificate))
+                );
+            }
+            if (!requiredCertificatePolicies.isEmpty()) {
+                steps.add(
+                    new EnforcementPipeline.Step<>(Stage.POLICY_OIDS, 300, (certificate, presented) -> enforceRequiredOids(certificate))
+                );
+            }
+            if (subjectAlternativeNamesListed) {
+                steps.add(
+                    new EnforcementPipeline.Step<>(Stage.SUBJECT_ALTERNATIVE_NAMES, 3_000, (certificate, presented) ->
+                        enforceSanWhitelist(certificate, presented.lists().subjectAlternativeNames())
+                    )
+                );
+            }
+            if (certificateRule != null) {
+                steps.add(
+                    new EnforcementPipeline.Step<>(Stage.RULE, 4_000, (certificate, presented) ->
+                        certificateRule.matches(certificate) ? Verdict.ALLOW : RULE_MISMATCH_VERDICT
+                    )
+                );
+            }
+        }
+        return new EnforcementPipeline<>(steps, configuration.isAdaptiveStageOrderingEnabled());
+    }
+
+    /**
+     * Compiles the checks that Envoy answers for the gateway in the {@code Hash}, {@code Subject}, {@code URI} and
+     * {@code DNS} fields of {@code x-forwarded-client-cert}, when they are the only ones enabled. The decision audit
+     * records the certificate, so it disables this path as well.
+     */
+    private EnforcementPipeline<ForwardedClientCertificate, AllowLists> compileForwardedPipeline() {
+        if (
+            configuration.getCertificateLocation() != CertificateLocation.HEADER ||
+            configuration.getCertificateHeaderFormat() != CertificateHeaderFormat.ENVOY_XFCC ||
+            (pipeline.isEmpty() && !pinnedFingerprintsSufficient) ||
+            chainValidator != null ||
+            crlStore != null ||
+            !whitelistIssuerNames.isEmpty() ||
+            !requiredCertificatePolicies.isEmpty() ||
+            certificateRule != null ||
+            auditLog != null ||
+            (!pinnedFingerprints.isEmpty() && configuration.getPinnedFingerprintType() != FingerprintType.CERTIFICATE)
+        ) {
+            return null;
+        }
+        List<EnforcementPipeline.Step<ForwardedClientCertificate, AllowLists>> steps = new ArrayList<>();
+        if (!pinnedFingerprints.isEmpty() && !pinnedFingerprintsSufficient) {
+            steps.add(new EnforcementPipeline.Step<>(Stage.PINNING, 200, (forwarded, lists) -> enforcePinnedHash(forwarded)));
+        }
+        if (clientNamesListed) {
+            steps.add(
+                new EnforcementPipeline.Step<>(Stage.CLIENT_DN, 2_000, (forwarded, lists) ->
+                    enforceDnWhitelist(forwarded, lists.clientNames())
+                )
+            );
+        }
+        if (subjectAlternativeNamesListed) {
+            steps.add(
+                new EnforcementPipeline.Step<>(Stage.SUBJECT_ALTERNATIVE_NAMES, 500, (forwarded, lists) ->
+                    enforceSanWhitelist(forwarded, lists.subjectAlternativeNames())
+                )
+            );
+        }
+        return new EnforcementPipeline<>(steps, configuration.isAdaptiveStageOrderingEnabled());
+    }
+
+    /**
+     * Runs the certificate checks only, without the transport, cache and OCSP stapling ones, for
+     * {@link CertificateEvaluator}. Stage timings are not recorded: they would skew those of requests.
+     */
+    Verdict evaluateCertificate(X509Certificate certificate) {
+        return evaluateCertificate(certificate, List.of());
+    }
+
+    /**
+     * Same as {@link #evaluateCertificate(X509Certificate)}, with the intermediate CAs presented with the certificate
+     * for chain validation.
+     */
+    Verdict evaluateCertificate(X509Certificate certificate, List<X509Certificate> presentedChain) {
+        if (certificate == null) {
+            return configuration.isRequiresClientAuthentication() ? AUTHENTICATION_REQUIRED_VERDICT : Verdict.ALLOW;
+        }
+        refreshCrlsIfStale();
+        return enforce(certificate, allowLists, () -> presentedChain, null);
+    }
+
+    /**
+     * @return an evaluator of certificates against the rules compiled by this policy, sharing its allow-lists, CRLs
+     * and chain validation cache.
+     */
+    public CertificateEvaluator evaluator() {
+        return new CertificateEvaluator(this);
+    }
+
+    private long tick() {
+        return metrics == null ? 0L : System.nanoTime();
+    }
+
+    /**
+     * Records the time spent in {@code stage} since {@code start}, when metrics are enabled.
+     *
+     * @return the current time, to be used as the start of the next stage.
+     */
+    private long lap(Stage stage, long start) {
+        return lap(metrics, stage, start);
+    }
+
+    private static long lap(EnforcementMetrics metrics, Stage stage, long start) {
+        if (metrics == null) {
+            return 0L;
+        }
+        long now = System.nanoTime();
+        metrics.record(stage, now - start);
+        return now;
+    }
+
+    /**
+     * @return the audit log fed by this policy, empty when auditing is disabled.
+     */
+    public Optional<DecisionAuditLog> auditLog() {
+        return Optional.ofNullable(auditLog);
+    }
+
+    /**
+     * @return the metrics fed by this policy, empty when they are disabled or not named before the first request.
+     */
+    public Optional<EnforcementMetrics> metrics() {
+        return Optional.ofNullable(metrics);
+    }
+
+    /**
+     * Compiles the inline client DN and SAN whitelists together with the entries of their files, if any.
+     *
+     * @throws IllegalArgumentException if a file cannot be read or holds an invalid entry.
+     */
+    private AllowLists compileAllowLists(long generation) {
+        return new AllowLists(
+            DnAllowList.compile(
+                withFileEntries(configuration.getWhitelistClientCertificates(), configuration.getWhitelistClientCertificatesFile())
+            ),
+            SanAllowList.compile(
+                withFileEntries(
+                    configuration.getWhitelistSubjectAlternativeNames(),
+                    configuration.getWhitelistSubjectAlternativeNamesFile()
+                )
+            ),
+            generation
+        );
+    }
+
+    private static List<String> withFileEntries(List<String> inline, String file) {
+        if (!StringUtils.hasText(file)) {
+            return inline;
+        }
+        List<String> entries = new ArrayList<>();
+        if (inline != null) {
+            entries.addAll(inline);
+        }
+        try {
+            entries.addAll(AllowListFile.readEntries(Path.of(file)));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Unable to read allow-list file " + file, e);
+        }
+        return entries;
+    }
+
+    private void watchAllowListFile(String file) {
+        if (StringUtils.hasText(file)) {
+            watch(Path.of(file), SslEnforcementPolicy::reloadAllowLists);
+        }
+    }
+
+    private void watch(Path file, Consumer<SslEnforcementPolicy> onChange) {
+        try {
+            resources.add(LocalFileWatcher.watch(file, this, onChange));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Unable to watch file " + file, e);
+        }
+    }
+
+    /**
+     * Recompiles the allow-lists from their files and swaps them in. Cached verdicts computed with the previous lists
+     * are dropped. When a file cannot be read or holds an invalid entry, the previous lists are kept.
+     */
+    synchronized void reloadAllowLists() {
+        AllowLists reloaded;
+        try {
+            reloaded = compileAllowLists(allowLists.generation() + 1);
+        } catch (IllegalArgumentException e) {
+            log.warn("Unable to reload SSL enforcement allow-lists, keeping the previous ones", e);
             return;
         }
+        swap(reloaded);
+        log.info(
+            "SSL enforcement allow-lists reloaded: {} client DN(s), {} SAN pattern(s)",
+            reloaded.clientNames().size(),
+            reloaded.subjectAlternativeNames().size()
+        );
+    }
+
+    /**
+     * Re-reads the CRL files, keeping the previous revocation information when one of them cannot be read. Verdicts
+     * computed before are dropped either way, as a certificate they accepted may have been revoked since.
+     */
+    synchronized void reloadCrls() {
+        if (crlStore.reload()) {
+            log.info("SSL enforcement CRLs reloaded: {} revoked serial number(s)", crlStore.size());
+            discardVerdicts();
+        }
+    }
+
+    /**
+     * Drops the cached and memoized verdicts once the CRLs have been re-read in the background by the store itself.
+     */
+    private synchronized void discardVerdicts() {
+        AllowLists lists = allowLists;
+        swap(new AllowLists(lists.clientNames(), lists.subjectAlternativeNames(), lists.generation() + 1));
+    }
+
+    /**
+     * Starts re-reading the CRL files in the background once they are past their {@code nextUpdate}. Requests keep
+     * being checked against the previous CRLs meanwhile.
+     */
+    private void refreshCrlsIfStale() {
+        if (crlStore != null && crlStore.isStale(System.currentTimeMillis())) {
+            crlStore.refreshInBackground(this::discardVerdicts);
+        }
+    }
+
+    private void swap(AllowLists reloaded) {
+        allowLists = reloaded;
+        if (verdictCache != null) {
+            verdictCache.clear();
+        }
+        if (rejectionCache != null) {
+            rejectionCache.clear();
+        }
+    }
+
+    /**
+     * @return hit / miss / eviction counters of the rejection cache, {@link CacheStats#EMPTY} when it is disabled.
+     */
+    public CacheStats rejectionCacheStats() {
+        return rejectionCache == null ? CacheStats.EMPTY : rejectionCache.stats();
+    }
+
+    /**
+     * @return the SHA-256 fingerprints (hex) of the {@code limit} certificates whose cached rejection was served the
+     * most, with their hit counts, most hit first. Empty when the rejection cache is disabled.
+     */
+    public Map<String, Long> mostRejectedCertificates(int limit) {
+        return rejectionCache == null ? Map.of() : rejectionCache.mostHit(limit);
+    }
+
+    /**
+     * @return hit / miss / eviction counters of the verdict cache, {@link CacheStats#EMPTY} when it is disabled.
+     */
+    public CacheStats verdictCacheStats() {
+        return verdictCache == null ? CacheStats.EMPTY : verdictCache.stats();
+    }
+
+    /**
+     * @return hit / miss / eviction counters of the chain validation cache, {@link CacheStats#EMPTY} when chain
+     * validation is disabled.
+     */
+    public CacheStats chainValidationCacheStats() {
+        return chainValidator == null ? CacheStats.EMPTY : chainValidator.stats();
+    }
+
+    /**
+     * @return hit / miss / eviction counters of the stapled OCSP status cache, {@link CacheStats#EMPTY} when OCSP
+     * stapling is disabled.
+     */
+    public CacheStats ocspResponseCacheStats() {
+        return ocspStapleVerifier == null ? CacheStats.EMPTY : ocspStapleVerifier.stats();
+    }
 
-        if (!enforceDnWhitelist(certificate, policyChain)) return;
-        if (!enforceIssuerWhitelist(certificate, policyChain)) return;
-        if (!enforceRequiredOids(certificate, policyChain)) return;
-        if (!enforceSanWhitelist(certificate, policyChain)) return;
+    /**
+     * @return hit / miss / eviction counters of the parsed header certificate cache, {@link CacheStats#EMPTY} when it
+     * is disabled.
+     */
+    public CacheStats headerCertificateCacheStats() {
+        return headerCertificateCache == null ? CacheStats.EMPTY : headerCertificateCache.stats();
+    }
 
-        policyChain.doNext(request, response);
+    /**
+     * @return hit / miss / eviction counters of the cache remembering undecodable header certificates,
+     * {@link CacheStats#EMPTY} when the header certificate cache is disabled.
+     */
+    public CacheStats headerCertificateFailureCacheStats() {
+        return headerCertificateCache == null ? CacheStats.EMPTY : headerCertificateCache.failureStats();
     }
 
-    private boolean enforceDnWhitelist(X509Certificate certificate, PolicyChain policyChain) {
+    private Verdict enforceDnWhitelist(X509Certificate certificate, DnAllowList whitelistClientCertificateNames) {
         return enforceDnList(
             whitelistClientCertificateNames,
             certificate,
             X509Certificate::getSubjectX500Principal,
             CLIENT_FORBIDDEN,
             "name",
-            "You're not allowed to access this resource",
-            policyChain
+            "You're not allowed to access this resource"
         );
     }
 
-    private boolean enforceIssuerWhitelist(X509Certificate certificate, PolicyChain policyChain) {
+    private Verdict enforceDnWhitelist(ForwardedClientCertificate forwarded, DnAllowList whitelistClientCertificateNames) {
+        return enforceDnList(
+            whitelistClientCertificateNames,
+            forwarded.subject(),
+            CLIENT_FORBIDDEN,
+            "name",
+            "You're not allowed to access this resource"
+        );
+    }
+
+    private Verdict enforceIssuerWhitelist(X509Certificate certificate) {
         return enforceDnList(
             whitelistIssuerNames,
             certificate,
             X509Certificate::getIssuerX500Principal,
             ISSUER_MISMATCH,
             "issuer",
-            "Certificate issuer is not allowed",
-            policyChain
+            "Certificate issuer is not allowed"
         );
     }
 
     /**
-     * Matches an observed DN (subject or issuer) against a pre-parsed allow-list using order-insensitive
+     * Matches an observed DN (subject or issuer) against a compiled allow-list using order-insensitive
      * RDN comparison. The failure context exposes only the observed value (the configured allow-list is
      * logged, not returned to the caller); empty list or no client-auth = no-op. The principal is read
      * via {@code principalExtractor} only after the no-op guard, so a null certificate is never touched
      * when enforcement is disabled.
      */
-    private boolean enforceDnList(
-        List<X500Name> allowed,
+    private Verdict enforceDnList(
+        DnAllowList allowed,
         X509Certificate certificate,
         Function<X509Certificate, X500Principal> principalExtractor,
         String errorKey,
         String contextKey,
-        String message,
-        PolicyChain policyChain
+        String message
     ) {
-        if (!configuration.isRequiresClientAuthentication() || allowed.isEmpty()) {
-            return true;
+        if (allowed.isEmpty()) {
+            return Verdict.ALLOW;
         }
-        X500Principal observed = principalExtractor.apply(certificate);
-        X500Name observedName = new X500Name(observed.getName());
-        for (X500Name candidate : allowed) {
-            if (X500NameComparator.areEqual(candidate, observedName)) {
-                return true;
-            }
+        return enforceDnList(allowed, principalExtractor.apply(certificate).getName(), errorKey, contextKey, message);
+    }
+
+    /**
+     * @param observed the observed DN in RFC 2253 format. A DN that cannot be parsed matches no entry.
+     */
+    private Verdict enforceDnList(DnAllowList allowed, String observed, String errorKey, String contextKey, String message) {
+        if (allowed.isEmpty()) {
+            return Verdict.ALLOW;
+        }
+        if (matches(allowed, observed)) {
+            return Verdict.ALLOW;
         }
 
-        log.debug("{} - observed DN '{}' not in allow-list of {} entries", errorKey, observed.getName(), allowed.size());
-        policyChain.failWith(
-            PolicyResult.failure(
-                errorKey,
-                HttpStatusCode.FORBIDDEN_403,
-                message,
-                Maps.<String, Object>builder().put(contextKey, observed.getName()).build()
-            )
+        log.debug("{} - observed DN '{}' not in allow-list of {} entries", errorKey, observed, allowed.size());
+        return Verdict.deny(
+            errorKey,
+            HttpStatusCode.FORBIDDEN_403,
+            message,
+            Maps.<String, Object>builder().put(contextKey, observed).build()
         );
-        return false;
     }
 
-    private boolean enforceRequiredOids(X509Certificate certificate, PolicyChain policyChain) {
-        if (!shouldEnforce(configuration.getRequiredCertificatePolicies())) {
-            return true;
+    private static boolean matches(DnAllowList allowed, String observed) {
+        try {
+            return allowed.matches(CompiledDn.of(new X500Name(observed)));
+        } catch (IllegalArgumentException e) {
+            return false;
         }
-        Set<String> presentOids = extractCertificatePolicyOids(certificate);
-        if (presentOids.containsAll(configuration.getRequiredCertificatePolicies())) {
-            return true;
+    }
+
+    private boolean isPinned(X509Certificate certificate) {
+        return pinnedFingerprints.matches(certificate, configuration.getPinnedFingerprintType());
+    }
+
+    /**
+     * Unless pinning is sufficient on its own, in which case unpinned certificates go through the other stages and
+     * this check is not part of the pipeline, a configured pin list is one more requirement.
+     */
+    private Verdict enforcePinnedFingerprints(X509Certificate certificate, boolean pinned) {
+        if (pinned) {
+            return Verdict.ALLOW;
         }
-        policyChain.failWith(
-            PolicyResult.failure(
-                OID_MISMATCH,
-                HttpStatusCode.FORBIDDEN_403,
-                "Certificate does not contain required policy OIDs",
-                Maps.<String, Object>builder().put("required", configuration.getRequiredCertificatePolicies()).build()
-            )
+        return Verdict.deny(
+            FINGERPRINT_NOT_PINNED,
+            HttpStatusCode.FORBIDDEN_403,
+            "Certificate is not pinned",
+            Maps.<String, Object>builder()
+                .put("fingerprint", PinnedFingerprints.fingerprintOf(certificate, configuration.getPinnedFingerprintType()))
+                .build()
         );
-        return false;
     }
 
-    private boolean enforceSanWhitelist(X509Certificate certificate, PolicyChain policyChain) {
-        if (!shouldEnforce(configuration.getWhitelistSubjectAlternativeNames())) {
-            return true;
+    private Verdict enforcePinnedHash(ForwardedClientCertificate forwarded) {
+        byte[] digest = forwarded.digest();
+        if (digest != null && pinnedFingerprints.contains(digest)) {
+            return Verdict.ALLOW;
         }
-        Collection<List<?>> sans;
-        try {
-            sans = certificate.getSubjectAlternativeNames();
-        } catch (Exception e) {
-            log.debug("Unable to read subject alternative names from certificate", e);
-            sans = null;
+        return Verdict.deny(
+            FINGERPRINT_NOT_PINNED,
+            HttpStatusCode.FORBIDDEN_403,
+            "Certificate is not pinned",
+            Maps.<String, Object>builder().put("fingerprint", forwarded.hash().toLowerCase(Locale.ROOT)).build()
+        );
+    }
+
+    /**
+     * Header certificates are only trusted once they chain to a configured trust anchor, through the intermediate CAs
+     * forwarded with them: unlike session certificates, they were not validated by a TLS handshake with the gateway.
+     */
+    private Verdict enforceValidChain(X509Certificate certificate, Supplier<List<X509Certificate>> presentedChain) {
+        if (chainValidator == null || chainValidator.isValid(certificate, presentedChain)) {
+            return Verdict.ALLOW;
         }
-        if (sans != null && !sans.isEmpty() && anySanMatchesWhitelist(sans, configuration.getWhitelistSubjectAlternativeNames())) {
-            return true;
+        return Verdict.deny(
+            CHAIN_INVALID,
+            HttpStatusCode.FORBIDDEN_403,
+            "Certificate is not issued by a trusted authority",
+            Maps.<String, Object>builder().put("issuer", certificate.getIssuerX500Principal().getName()).build()
+        );
+    }
+
+    /**
+     * Looks the certificate serial number up in the CRLs of its issuer. Their freshness is checked once per request,
+     * before any cached verdict is served, by {@link #refreshCrlsIfStale()}.
+     */
+    private Verdict enforceNotRevoked(X509Certificate certificate) {
+        if (crlStore == null) {
+            return Verdict.ALLOW;
+        }
+        if (!crlStore.isRevoked(certificate)) {
+            return Verdict.ALLOW;
+        }
+        return Verdict.deny(
+            CERTIFICATE_REVOKED,
+            HttpStatusCode.FORBIDDEN_403,
+            "Certificate has been revoked",
+            Maps.<String, Object>builder().put("serialNumber", certificate.getSerialNumber().toString(16)).build()
+        );
+    }
+
+    /**
+     * Rejects a client certificate whose stapled OCSP response reports it revoked. Unless {@code ocspStaplingRequired}
+     * is set, a missing, invalid or unknown status is tolerated (soft-fail), as with browsers.
+     */
+    private Verdict enforceStapledOcsp(SSLSession sslSession) {
+        // Verified earlier in the session: neither the chain nor the staple can have changed since.
+        OcspStapleVerifier.Status status = ocspStapleVerifier.cachedStatus(sslSession);
+        if (status == null) {
+            X509Certificate[] chain = peerChain(sslSession);
+            if (chain == null) {
+                // Not an X.509 chain: the certificate stages have already dealt with it.
+                return Verdict.ALLOW;
+            }
+            List<byte[]> responses = sslSession instanceof ExtendedSSLSession extendedSslSession
+                ? extendedSslSession.getStatusResponses()
+                : List.of();
+            status = ocspStapleVerifier.verify(chain, responses, sslSession);
+        }
+        if (status == OcspStapleVerifier.Status.GOOD) {
+            return Verdict.ALLOW;
         }
-        policyChain.failWith(
-            PolicyResult.failure(
-                SAN_MISMATCH,
+        if (status == OcspStapleVerifier.Status.REVOKED) {
+            X509Certificate[] chain = peerChain(sslSession);
+            return Verdict.deny(
+                CERTIFICATE_REVOKED,
                 HttpStatusCode.FORBIDDEN_403,
-                "Certificate does not match required Subject Alternative Names",
-                Maps.<String, Object>builder().put("whitelist", configuration.getWhitelistSubjectAlternativeNames()).build()
-            )
+                "Certificate has been revoked",
+                Maps.<String, Object>builder().put("serialNumber", chain == null ? "" : chain[0].getSerialNumber().toString(16)).build()
+            );
+        }
+        if (!configuration.isOcspStaplingRequired()) {
+            return Verdict.ALLOW;
+        }
+        return Verdict.deny(
+            OCSP_STATUS_UNVERIFIED,
+            HttpStatusCode.FORBIDDEN_403,
+            "Certificate status could not be verified",
+            Maps.<String, Object>builder().put("status", status.name().toLowerCase(Locale.ROOT)).build()
         );
-        return false;
     }
 
-    private boolean isSecure(Request request) {
-        if (request.sslSession() != null) {
+    /**
+     * @return the peer certificate chain of {@code sslSession}, or {@code null} when there is none or it is not X.509.
+     */
+    private static X509Certificate[] peerChain(SSLSession sslSession) {
+        try {
+            Certificate[] peerCertificates = sslSession.getPeerCertificates();
+            if (peerCertificates == null || peerCertificates.length == 0) {
+                return null;
+            }
+            return Arrays.copyOf(peerCertificates, peerCertificates.length, X509Certificate[].class);
+        } catch (SSLPeerUnverifiedException | ArrayStoreException e) {
+            return null;
+        }
+    }
+
+    private Verdict enforceRequiredOids(X509Certificate certificate) {
+        if (requiredCertificatePolicies.areAllPresentIn(certificate)) {
+            return Verdict.ALLOW;
+        }
+        return Verdict.deny(
+            OID_MISMATCH,
+            HttpStatusCode.FORBIDDEN_403,
+            "Certificate does not contain required policy OIDs",
+            Maps.<String, Object>builder().put("required", configuration.getRequiredCertificatePolicies()).build()
+        );
+    }
+
+    private Verdict enforceSanWhitelist(X509Certificate certificate, SanAllowList whitelistSubjectAlternativeNames) {
+        if (whitelistSubjectAlternativeNames.isEmpty()) {
+            return Verdict.ALLOW;
+        }
+        if (whitelistSubjectAlternativeNames.matchesAny(SubjectAlternativeNames.of(certificate))) {
+            return Verdict.ALLOW;
+        }
+        return Verdict.deny(
+            SAN_MISMATCH,
+            HttpStatusCode.FORBIDDEN_403,
+            "Certificate does not match required Subject Alternative Names",
+            Maps.<String, Object>builder().put("whitelist", configuration.getWhitelistSubjectAlternativeNames()).build()
+        );
+    }
+
+    /**
+     * Only URI and DNS names are forwarded by Envoy.
+     */
+    private Verdict enforceSanWhitelist(ForwardedClientCertificate forwarded, SanAllowList whitelistSubjectAlternativeNames) {
+        if (whitelistSubjectAlternativeNames.isEmpty()) {
+            return Verdict.ALLOW;
+        }
+        for (String name : forwarded.names()) {
+            if (whitelistSubjectAlternativeNames.matches(name)) {
+                return Verdict.ALLOW;
+            }
+        }
+        return Verdict.deny(
+            SAN_MISMATCH,
+            HttpStatusCode.FORBIDDEN_403,
+            "Certificate does not match required Subject Alternative Names",
+            Maps.<String, Object>builder().put("whitelist", configuration.getWhitelistSubjectAlternativeNames()).build()
+        );
+    }
+
+    private boolean isSecure(SSLSession sslSession, HttpHeaders headers) {
+        if (sslSession != null) {
             return true;
         }
         if (configuration.isUseXForwardedProto()) {
-            return forwardedProtoIsHttps(request.headers());
+            return forwardedProtoIsHttps(headers);
         }
         return false;
     }
@@ -262,20 +1193,18 @@ public class SslEnforcementPolicy {
         if (headers == null) {
             return false;
         }
+        int trustedHops = configuration.getForwardedTrustedHops();
         String xForwardedProto = headers.get("X-Forwarded-Proto");
-        if (xForwardedProto != null && "https".equalsIgnoreCase(xForwardedProto.trim())) {
+        if (xForwardedProto != null && ForwardedProto.xForwardedProtoIsHttps(xForwardedProto, trustedHops)) {
             return true;
         }
         String forwarded = headers.get("Forwarded");
-        if (forwarded != null && forwarded.toLowerCase().contains("proto=https")) {
-            return true;
-        }
-        return false;
+        return forwarded != null && ForwardedProto.forwardedIsHttps(forwarded, trustedHops);
     }
 
-    private Optional<X509Certificate> extractCertificate(Request request) {
+    private Optional<X509Certificate> extractCertificate(IncomingRequest incoming) {
         if (configuration.getCertificateLocation() == CertificateLocation.SESSION) {
-            SSLSession sslSession = request.sslSession();
+            SSLSession sslSession = incoming.sslSession;
             if (sslSession == null) {
                 return Optional.empty();
             }
@@ -290,49 +1219,97 @@ public class SslEnforcementPolicy {
             }
         }
 
-        return extractCertificate(request.headers(), configuration.getCertificateHeaderName());
-    }
-
-    private boolean shouldEnforce(Collection<?> whitelist) {
-        return configuration.isRequiresClientAuthentication() && !CollectionUtils.isEmpty(whitelist);
-    }
-
-    private static boolean anySanMatchesWhitelist(Collection<List<?>> sans, List<String> whitelist) {
-        for (List<?> san : sans) {
-            if (san.size() < 2) {
-                continue;
-            }
-            Object value = san.get(1);
-            if (value instanceof String sanValue) {
-                for (String pattern : whitelist) {
-                    if (SAN_MATCHER.match(pattern, sanValue)) {
-                        return true;
-                    }
+        HttpHeaders headers = incoming.headers;
+        String certHeader = configuration.getCertificateHeaderName();
+        String certHeaderValue = StringUtils.hasText(certHeader) ? headers.get(certHeader) : null;
+        if (certHeaderValue == null) {
+            log.debug("Header '{}' missing, unable to retrieve client certificate", certHeader);
+            return Optional.empty();
+        }
+        X509Certificate certificate;
+        if (certHeaderValue.length() > configuration.getCertificateHeaderMaxSize()) {
+            // Rejected before it is decoded or used as a cache key.
+            log.debug("Header '{}' longer than {} characters, ignored", certHeader, configuration.getCertificateHeaderMaxSize());
+            certificate = null;
+        } else {
+            String encoded = certificateOf(incoming, certHeaderValue);
+            if (encoded == null) {
+                log.debug("Header '{}' holds no client certificate", certHeader);
+                certificate = null;
+            } else if (headerCertificateCache != null) {
+                certificate = headerCertificateCache.resolve(encoded);
+            } else {
+                try {
+                    certificate = decodeCertificateHeader(encoded);
+                } catch (Exception e) {
+                    log.debug("Unable to retrieve peer certificate from request header '{}'", certHeader, e);
+                    certificate = null;
                 }
             }
         }
-        return false;
+        if (certificate == null && metrics != null) {
+            metrics.parseFailure();
+        }
+        return Optional.ofNullable(certificate);
     }
 
-    private static Set<String> extractCertificatePolicyOids(X509Certificate certificate) {
-        byte[] extensionValue = certificate.getExtensionValue(CERTIFICATE_POLICIES_OID);
-        if (extensionValue == null) {
-            return Set.of();
+    /**
+     * @return the encoded certificate held by the header value, which is the value itself unless it is an Envoy
+     * {@code x-forwarded-client-cert} header, or {@code null} when there is none.
+     */
+    private String certificateOf(IncomingRequest incoming, String certHeaderValue) {
+        if (configuration.getCertificateHeaderFormat() != CertificateHeaderFormat.ENVOY_XFCC) {
+            return certHeaderValue;
+        }
+        ForwardedClientCertificate forwarded = incoming.forwarded();
+        return forwarded == null ? null : forwarded.certificate();
+    }
+
+    private List<X509Certificate> forwardedChain(IncomingRequest incoming) {
+        String encoded;
+        if (configuration.getCertificateHeaderFormat() == CertificateHeaderFormat.ENVOY_XFCC) {
+            ForwardedClientCertificate forwarded = incoming.forwarded();
+            encoded = forwarded == null ? null : forwarded.chain();
+        } else {
+            String certHeader = configuration.getCertificateHeaderName();
+            encoded = StringUtils.hasText(certHeader) && incoming.headers != null ? incoming.headers.get(certHeader) : null;
+        }
+        if (encoded == null || encoded.length() > configuration.getCertificateHeaderMaxSize()) {
+            return List.of();
         }
         try {
-            ASN1OctetString octetString = (ASN1OctetString) ASN1Primitive.fromByteArray(extensionValue);
-            CertificatePolicies policies = CertificatePolicies.getInstance(ASN1Primitive.fromByteArray(octetString.getOctets()));
-            Set<String> oids = new HashSet<>();
-            for (PolicyInformation pi : policies.getPolicyInformation()) {
-                oids.add(pi.getPolicyIdentifier().getId());
-            }
-            return oids;
+            return CertificateHeaderDecoder.decodeAll(encoded);
         } catch (Exception e) {
-            log.debug("Unable to parse certificatePolicies extension", e);
-            return Set.of();
+            log.debug("Unable to decode the certificate chain from request header '{}'", configuration.getCertificateHeaderName(), e);
+            return List.of();
         }
     }
 
+    /**
+     * @return the client certificate details of the Envoy {@code x-forwarded-client-cert} header, or {@code null} when
+     * the header is missing, too long or holds none.
+     */
+    private ForwardedClientCertificate forwardedClientCertificate(HttpHeaders headers) {
+        String certHeader = configuration.getCertificateHeaderName();
+        String certHeaderValue = StringUtils.hasText(certHeader) && headers != null ? headers.get(certHeader) : null;
+        if (certHeaderValue == null || certHeaderValue.length() > configuration.getCertificateHeaderMaxSize()) {
+            return null;
+        }
+        return ForwardedClientCertificate.parse(certHeaderValue);
+    }
+
+    /**
+     * @return whether the fields of {@code forwarded} are enough for {@link #forwardedPipeline}. When one is missing,
+     * e.g. because Envoy is not configured to forward it, the certificate is decoded instead.
+     */
+    private boolean isAnsweredByFields(ForwardedClientCertificate forwarded) {
+        return (
+            (pinnedFingerprints.isEmpty() || forwarded.digest() != null) &&
+            (!clientNamesListed || forwarded.subject() != null) &&
+            (!subjectAlternativeNamesListed || !forwarded.names().isEmpty())
+        );
+    }
+
     public static Optional<X509Certificate> extractCertificate(final HttpHeaders httpHeaders, final String certHeader) {
         Optional<X509Certificate> certificate = Optional.empty();
 
@@ -340,14 +1317,7 @@ public class SslEnforcementPolicy {
 
         if (certHeaderValue != null) {
             try {
-                if (!certHeaderValue.contains("\n")) {
-                    certHeaderValue = URLDecoder.decode(certHeaderValue, Charset.defaultCharset());
-                }
-                certHeaderValue = certHeaderValue.replaceAll("\t", "\n");
-                CertificateFactory certificateFactory = CertificateFactory.getInstance("X.509");
-                certificate = Optional.ofNullable(
-                    (X509Certificate) certificateFactory.generateCertificate(new ByteArrayInputStream(certHeaderValue.getBytes()))
-                );
+                certificate = Optional.ofNullable(decodeCertificateHeader(certHeaderValue));
             } catch (Exception e) {
                 log.debug("Unable to retrieve peer certificate from request header '{}'", certHeader, e);
             }
@@ -357,4 +1327,72 @@ public class SslEnforcementPolicy {
 
         return certificate;
     }
+
+    /**
+     * Decodes a certificate forwarded in a header: PEM, either URL-encoded or with line breaks replaced by tabs, or raw
+     * Base64 DER.
+     */
+    static X509Certificate decodeCertificateHeader(String certHeaderValue) throws CertificateException {
+        return CertificateHeaderDecoder.decode(certHeaderValue);
+    }
+
+    /**
+     * @param generation incremented on every allow-list or CRL reload, used to tell verdicts cached before a reload from newer ones.
+     */
+    private record AllowLists(DnAllowList clientNames, SanAllowList subjectAlternativeNames, long generation) {}
+
+    /**
+     * What the certificate stages check a certificate against.
+     *
+     * @param chain the certificates presented with it, decoded only if a stage reads them.
+     */
+    private record Presented(AllowLists lists, Supplier<List<X509Certificate>> chain) {}
+
+    private record StampedVerdict(Verdict verdict, long generation) {}
+
+    /**
+     * The request as this policy reads it. Its {@code X-Forwarded-Proto}, {@code Forwarded} and Envoy
+     * {@code x-forwarded-client-cert} headers are parsed on first use only, although both the worker offload check and
+     * the evaluation read them. Not thread-safe: it is handed over to the worker, never shared.
+     */
+    private final class IncomingRequest {
+
+        private final SSLSession sslSession;
+        private final HttpHeaders headers;
+        private Boolean secure;
+        private boolean forwardedParsed;
+        private ForwardedClientCertificate forwarded;
+        private List<X509Certificate> presentedChain;
+
+        private IncomingRequest(SSLSession sslSession, HttpHeaders headers) {
+            this.sslSession = sslSession;
+            this.headers = headers;
+        }
+
+        private boolean secure() {
+            if (secure == null) {
+                secure = isSecure(sslSession, headers);
+            }
+            return secure;
+        }
+
+        private ForwardedClientCertificate forwarded() {
+            if (!forwardedParsed) {
+                forwarded = forwardedClientCertificate(headers);
+                forwardedParsed = true;
+            }
+            return forwarded;
+        }
+
+        /**
+         * @return the certificates forwarded with the client certificate: the {@code Chain} of an Envoy
+         * {@code x-forwarded-client-cert} header, or the rest of the PEM bundle of the certificate header.
+         */
+        private List<X509Certificate> presentedChain() {
+            if (presentedChain == null) {
+                presentedChain = forwardedChain(this);
+            }
+            return presentedChain;
+        }
+    }
 }
@@ -0,0 +1,177 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.sslenforcement;
+
+import java.lang.ref.WeakReference;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import javax.security.auth.x500.X500Principal;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+
+/**
+ * Subject Alternative Names of a certificate, read straight from the DER of its extension into two parallel arrays
+ * (GeneralName tag, value) instead of the boxed lists of {@link X509Certificate#getSubjectAlternativeNames()}.
+ * <p>
+ * Values are rendered as the JDK certificate factory renders them: IA5 strings as is, directory names in the RFC 2253
+ * form of {@link X500Principal#getName()} ({@code CN=partner,O=Example}, without spaces), IP addresses in their
+ * textual form and registered IDs in dotted-decimal form. Certificates built by other providers, e.g. Bouncy Castle,
+ * may render them differently through {@link X509Certificate#getSubjectAlternativeNames()}. Like the JDK, other names ({@code otherName},
+ * {@code x400Address}, {@code ediPartyName}) have no string value and are left out. A malformed extension holds no
+ * name at all.
+ * <p>
+ * The names of the last certificates seen are memoized per certificate object, in a small direct-mapped table
+ * indexed by identity hash, so that the extension is parsed once however many stages or requests read it from the
+ * same (e.g. cached header or TLS session) certificate.
+ *
+ * @author GraviteeSource Team
+ */
+final class SubjectAlternativeNames {
+
+    static final String SUBJECT_ALTERNATIVE_NAME_OID = "2.5.29.17";
+
+    static final int RFC822_NAME = 1;
+
+    static final int DNS_NAME = 2;
+
+    static final int DIRECTORY_NAME = 4;
+
+    static final int URI = 6;
+
+    static final int IP_ADDRESS = 7;
+
+    static final int REGISTERED_ID = 8;
+
+    static final SubjectAlternativeNames EMPTY = new SubjectAlternativeNames(new byte[0], new String[0]);
+
+    private static final int MEMO_SIZE = 256;
+
+    private static final AtomicReferenceArray<Memo> MEMO = new AtomicReferenceArray<>(MEMO_SIZE);
+
+    private final byte[] types;
+
+    private final String[] values;
+
+    private SubjectAlternativeNames(byte[] types, String[] values) {
+        this.types = types;
+        this.values = values;
+    }
+
+    static SubjectAlternativeNames of(X509Certificate certificate) {
+        int slot = System.identityHashCode(certificate) & (MEMO_SIZE - 1);
+        Memo memo = MEMO.get(slot);
+        if (memo != null && memo.certificate.get() == certificate) {
+            return memo.names;
+        }
+        byte[] der = certificate.getExtensionValue(SUBJECT_ALTERNATIVE_NAME_OID);
+        SubjectAlternativeNames names = der == null ? EMPTY : parse(der);
+        MEMO.set(slot, new Memo(new WeakReference<>(certificate), names));
+        return names;
+    }
+
+    /**
+     * @param der the extension value as returned by {@link X509Certificate#getExtensionValue(String)}: an OCTET STRING
+     * wrapping {@code SEQUENCE OF GeneralName}, each one context-specific tagged by its type.
+     */
+    static SubjectAlternativeNames parse(byte[] der) {
+        int octets = Der.enter(der, 0, der.length, Der.OCTET_STRING);
+        if (octets < 0) {
+            return EMPTY;
+        }
+        int names = Der.enter(der, octets, der.length, Der.SEQUENCE);
+        if (names < 0) {
+            return EMPTY;
+        }
+        int namesEnd = Der.contentEnd(der, octets);
+        byte[] types = new byte[4];
+        String[] values = new String[4];
+        int count = 0;
+        int pos = names;
+        while (pos < namesEnd) {
+            int tag = der[pos] & 0xFF;
+            int content = Der.enter(der, pos, namesEnd, tag);
+            if (content < 0) {
+                return EMPTY;
+            }
+            int end = Der.contentEnd(der, pos);
+            int type = tag & 0x1F;
+            String value;
+            try {
+                value = valueOf(type, der, content, end);
+            } catch (IllegalArgumentException | UnknownHostException e) {
+                return EMPTY;
+            }
+            if (value != null) {
+                if (count == types.length) {
+                    types = Arrays.copyOf(types, count * 2);
+                    values = Arrays.copyOf(values, count * 2);
+                }
+                types[count] = (byte) type;
+                values[count] = value;
+                count++;
+            }
+            pos = end;
+        }
+        return count == 0 ? EMPTY : new SubjectAlternativeNames(Arrays.copyOf(types, count), Arrays.copyOf(values, count));
+    }
+
+    private static String valueOf(int type, byte[] der, int from, int to) throws UnknownHostException {
+        return switch (type) {
+            case RFC822_NAME, DNS_NAME, URI -> new String(der, from, to - from, StandardCharsets.US_ASCII);
+            // Explicitly tagged: the contents are the encoded Name.
+            case DIRECTORY_NAME -> new X500Principal(Arrays.copyOfRange(der, from, to)).getName();
+            case IP_ADDRESS -> to - from == 4 || to - from == 16
+                ? InetAddress.getByAddress(Arrays.copyOfRange(der, from, to)).getHostAddress()
+                : null;
+            case REGISTERED_ID -> registeredId(der, from, to);
+            default -> null;
+        };
+    }
+
+    // Implicitly tagged: the contents are those of the OBJECT IDENTIFIER, which only needs its universal tag back.
+    private static String registeredId(byte[] der, int from, int to) {
+        int length = to - from;
+        if (length > 127) {
+            return null;
+        }
+        byte[] encoded = new byte[length + 2];
+        encoded[0] = Der.OBJECT_IDENTIFIER;
+        encoded[1] = (byte) length;
+        System.arraycopy(der, from, encoded, 2, length);
+        return ASN1ObjectIdentifier.getInstance(encoded).getId();
+    }
+
+    int size() {
+        return values.length;
+    }
+
+    boolean isEmpty() {
+        return values.length == 0;
+    }
+
+    int type(int index) {
+        return types[index];
+    }
+
+    String value(int index) {
+        return values[index];
+    }
+
+    private record Memo(WeakReference<X509Certificate> certificate, SubjectAlternativeNames names) {}
+}
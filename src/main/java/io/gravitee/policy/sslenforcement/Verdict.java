@@ -0,0 +1,59 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.sslenforcement;
+
+import io.gravitee.policy.api.PolicyResult;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Outcome of the enforcement checks for one client certificate: either {@link #ALLOW} or a failure carrying the
+ * error key, HTTP status, message and context parameters. Instances are immutable so they can be cached and shared
+ * across requests.
+ * <p>
+ * Verdicts are also returned to callers of {@link CertificateEvaluator}.
+ *
+ * @author GraviteeSource Team
+ */
+public final class Verdict {
+
+    static final Verdict ALLOW = new Verdict(null);
+
+    private final PolicyResult failure;
+
+    private Verdict(PolicyResult failure) {
+        this.failure = failure;
+    }
+
+    static Verdict deny(String key, int statusCode, String message) {
+        return new Verdict(PolicyResult.failure(key, statusCode, message));
+    }
+
+    static Verdict deny(String key, int statusCode, String message, Map<String, Object> parameters) {
+        return new Verdict(PolicyResult.failure(key, statusCode, message, Collections.unmodifiableMap(parameters)));
+    }
+
+    public boolean isAllowed() {
+        return failure == null;
+    }
+
+    /**
+     * @return the failure to report, or {@code null} for {@link #ALLOW}.
+     */
+    public PolicyResult failure() {
+        return failure;
+    }
+}
@@ -15,11 +15,7 @@
  */
 package io.gravitee.policy.sslenforcement;
 
-import org.bouncycastle.asn1.ASN1ObjectIdentifier;
-import org.bouncycastle.asn1.x500.AttributeTypeAndValue;
-import org.bouncycastle.asn1.x500.RDN;
 import org.bouncycastle.asn1.x500.X500Name;
-import org.bouncycastle.asn1.x500.style.IETFUtils;
 import org.springframework.util.AntPathMatcher;
 
 public class X500NameComparator {
@@ -31,100 +27,103 @@ public class X500NameComparator {
     private X500NameComparator() {}
 
     public static boolean areEqual(X500Name name1, X500Name name2) {
-        final RDN[] rdns1 = name1.getRDNs();
-        final RDN[] rdns2 = name2.getRDNs();
+        return areEqual(CompiledDn.of(name1), CompiledDn.of(name2));
+    }
+
+    /**
+     * Same as {@link #areEqual(X500Name, X500Name)} on pre-canonicalized names: {@code pattern} values may hold Ant
+     * patterns, {@code observed} values are matched against them. Nothing is allocated for DNs of up to 64 RDNs.
+     */
+    static boolean areEqual(CompiledDn pattern, CompiledDn observed) {
+        final CompiledDn.Rdn[] rdns1 = pattern.rdns();
+        final CompiledDn.Rdn[] rdns2 = observed.rdns();
 
         if (rdns1.length != rdns2.length) {
             return false;
         }
 
+        if (rdns1.length == 0) {
+            return true;
+        }
+
         boolean reverse = false;
 
-        if (rdns1[0].getFirst() != null && rdns2[0].getFirst() != null) {
-            reverse = !rdns1[0].getFirst().getType().equals(rdns2[0].getFirst().getType()); // guess forward
+        if (rdns1[0].firstType() != null && rdns2[0].firstType() != null) {
+            reverse = !rdns1[0].firstType().equals(rdns2[0].firstType()); // guess forward
         }
 
-        for (int i = 0; i != rdns1.length; i++) {
-            if (!foundMatch(reverse, rdns1[i], rdns2)) {
-                return false;
+        if (rdns2.length <= Long.SIZE) {
+            // Bit i set = observed RDN i already matched.
+            long used = 0L;
+            for (int i = 0; i != rdns1.length; i++) {
+                int found = findMatch(reverse, rdns1[i], rdns2, used, null);
+                if (found < 0) {
+                    return false;
+                }
+                used |= 1L << found;
+            }
+        } else {
+            boolean[] used = new boolean[rdns2.length];
+            for (int i = 0; i != rdns1.length; i++) {
+                int found = findMatch(reverse, rdns1[i], rdns2, 0L, used);
+                if (found < 0) {
+                    return false;
+                }
+                used[found] = true;
             }
         }
 
         return true;
     }
 
-    private static boolean foundMatch(boolean reverse, RDN rdn, RDN[] possRDNs) {
+    private static int findMatch(boolean reverse, CompiledDn.Rdn rdn, CompiledDn.Rdn[] possRDNs, long usedBits, boolean[] used) {
         if (reverse) {
             for (int i = possRDNs.length - 1; i >= 0; i--) {
-                if (possRDNs[i] != null && rDNAreEqual(rdn, possRDNs[i])) {
-                    possRDNs[i] = null;
-                    return true;
+                if (!isUsed(i, usedBits, used) && rDNAreEqual(rdn, possRDNs[i])) {
+                    return i;
                 }
             }
         } else {
             for (int i = 0; i != possRDNs.length; i++) {
-                if (possRDNs[i] != null && rDNAreEqual(rdn, possRDNs[i])) {
-                    possRDNs[i] = null;
-                    return true;
+                if (!isUsed(i, usedBits, used) && rDNAreEqual(rdn, possRDNs[i])) {
+                    return i;
                 }
             }
         }
 
-        return false;
+        return -1;
     }
 
-    private static boolean rDNAreEqual(RDN rdn1, RDN rdn2) {
-        if (rdn1.isMultiValued()) {
-            if (rdn2.isMultiValued()) {
-                AttributeTypeAndValue[] atvs1 = rdn1.getTypesAndValues();
-                AttributeTypeAndValue[] atvs2 = rdn2.getTypesAndValues();
-
-                if (atvs1.length != atvs2.length) {
-                    return false;
-                }
-
-                for (int i = 0; i != atvs1.length; i++) {
-                    if (!atvAreEqual(atvs1[i], atvs2[i])) {
-                        return false;
-                    }
-                }
-            } else {
-                return false;
-            }
-        } else {
-            if (!rdn2.isMultiValued()) {
-                return atvAreEqual(rdn1.getFirst(), rdn2.getFirst());
-            } else {
-                return false;
-            }
-        }
-
-        return true;
+    private static boolean isUsed(int index, long usedBits, boolean[] used) {
+        return used == null ? (usedBits & (1L << index)) != 0 : used[index];
     }
 
-    private static boolean atvAreEqual(AttributeTypeAndValue atv1, AttributeTypeAndValue atv2) {
-        if (atv1 == atv2) {
-            return true;
+    private static boolean rDNAreEqual(CompiledDn.Rdn rdn1, CompiledDn.Rdn rdn2) {
+        if (rdn1.multiValued != rdn2.multiValued) {
+            return false;
         }
 
-        if (atv1 == null) {
+        if (rdn1.types.length != rdn2.types.length) {
             return false;
         }
 
-        if (atv2 == null) {
-            return false;
+        for (int i = 0; i != rdn1.types.length; i++) {
+            if (!atvAreEqual(rdn1, rdn2, i)) {
+                return false;
+            }
         }
 
-        ASN1ObjectIdentifier o1 = atv1.getType();
-        ASN1ObjectIdentifier o2 = atv2.getType();
+        return true;
+    }
 
-        if (!o1.equals(o2)) {
+    private static boolean atvAreEqual(CompiledDn.Rdn rdn1, CompiledDn.Rdn rdn2, int index) {
+        if (!rdn1.types[index].equals(rdn2.types[index])) {
             return false;
         }
 
-        String v1 = IETFUtils.canonicalize(IETFUtils.valueToString(atv1.getValue()));
-        String v2 = IETFUtils.canonicalize(IETFUtils.valueToString(atv2.getValue()));
+        String v1 = rdn1.values[index];
+        String v2 = rdn2.values[index];
 
-        return MATCHER.match(v1, v2);
+        return v1.equals(v2) || MATCHER.match(v1, v2);
     }
 }
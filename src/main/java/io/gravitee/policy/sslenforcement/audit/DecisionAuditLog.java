@@ -0,0 +1,300 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.sslenforcement.audit;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.net.ssl.SSLSession;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Audit trail of the decisions taken on client certificates, written as JSON lines to a local rolling file.
+ * <p>
+ * Requests copy the fields of a decision (subject, issuer, SHA-256 fingerprint, error key, timestamp) into a
+ * preallocated {@link DecisionRingBuffer}: publishing never blocks and, when the writer cannot keep up, drops the
+ * decision and counts it in {@link #getDropped()}. A single daemon thread per file drains the buffer, formats the
+ * lines and writes them out, and parks for longer and longer while there is nothing to write.
+ * <p>
+ * Instances are shared by file, so every policy instance auditing to the same file feeds the same buffer and writer;
+ * the buffer and rolling settings of the first one apply. Each {@link #forFile} must be paired with a
+ * {@link #release()}: the last one writes what is left, closes the file and stops the thread.
+ *
+ * @author GraviteeSource Team
+ */
+@Slf4j
+public final class DecisionAuditLog {
+
+    /** Guarded by the class lock, like {@link #users}. */
+    private static final Map<Path, DecisionAuditLog> REGISTRY = new HashMap<>();
+
+    private static final int DRAIN_BATCH = 256;
+
+    private static final long MIN_IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+    private static final long MAX_IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+
+    private static final long CLOSE_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(5);
+
+    private static final HexFormat HEX = HexFormat.of();
+
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every JRE is required to ship SHA-256.
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private final Path file;
+
+    private final DecisionRingBuffer buffer;
+
+    private final RollingFileWriter writer;
+
+    private final Thread thread;
+
+    private final LongAdder dropped = new LongAdder();
+
+    private final LongAdder written = new LongAdder();
+
+    // Only used by the writer thread.
+    private final StringBuilder line = new StringBuilder(512);
+
+    private volatile boolean closed;
+
+    private int users;
+
+    private DecisionAuditLog(Path file, int bufferSize, long maxFileSizeBytes, int maxBackups) {
+        this.file = file;
+        this.buffer = new DecisionRingBuffer(bufferSize);
+        try {
+            this.writer = new RollingFileWriter(file, maxFileSizeBytes, maxBackups);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Unable to open audit file " + file, e);
+        }
+        this.thread = new Thread(this::run, "gio-ssl-enforcement-audit-writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @return the audit log writing to {@code file}, created on first use.
+     * @throws IllegalArgumentException if the file cannot be opened for writing.
+     */
+    public static synchronized DecisionAuditLog forFile(String file, int bufferSize, long maxFileSizeBytes, int maxBackups) {
+        DecisionAuditLog auditLog = REGISTRY.computeIfAbsent(
+            Path.of(file).toAbsolutePath().normalize(),
+            path -> new DecisionAuditLog(path, bufferSize, maxFileSizeBytes, maxBackups)
+        );
+        auditLog.users++;
+        return auditLog;
+    }
+
+    /**
+     * Hands back an audit log obtained from {@link #forFile}. The last release removes it from the registry, then waits
+     * for its thread to write the pending decisions and close the file. It waits outside of the registry lock, so that
+     * other audit logs are neither created nor released any later for it.
+     */
+    public void release() {
+        synchronized (DecisionAuditLog.class) {
+            if (users == 0 || --users > 0) {
+                return;
+            }
+            REGISTRY.remove(file, this);
+            closed = true;
+        }
+        LockSupport.unpark(thread);
+        try {
+            thread.join(CLOSE_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public Path file() {
+        return file;
+    }
+
+    /**
+     * Records a decision, unless the buffer is full or the certificate cannot be read.
+     *
+     * @param certificate the evaluated certificate, or {@code null} to read it from {@code session}.
+     * @param failureKey the error key of the rejection, {@code null} when the request was allowed.
+     * @return whether the decision was recorded.
+     */
+    public boolean publish(X509Certificate certificate, SSLSession session, String failureKey) {
+        X509Certificate evaluated = certificate != null ? certificate : peerCertificate(session);
+        return publishFingerprinted(evaluated, null, failureKey);
+    }
+
+    /**
+     * Same as {@link #publish(X509Certificate, SSLSession, String)}, with the SHA-256 fingerprint of the certificate
+     * when the caller has already computed it, e.g. as a cache key. It is copied.
+     *
+     * @param fingerprint the SHA-256 digest of the DER certificate, or {@code null} to compute it.
+     */
+    public boolean publishFingerprinted(X509Certificate certificate, byte[] fingerprint, String failureKey) {
+        boolean published;
+        try {
+            published = certificate == null
+                ? buffer.offer(System.currentTimeMillis(), null, null, null, failureKey)
+                : buffer.offer(
+                    System.currentTimeMillis(),
+                    certificate.getSubjectX500Principal().getName(),
+                    certificate.getIssuerX500Principal().getName(),
+                    fingerprint != null ? fingerprint : fingerprint(certificate),
+                    failureKey
+                );
+        } catch (RuntimeException e) {
+            log.debug("Unable to read the audited certificate", e);
+            published = false;
+        }
+        if (!published) {
+            dropped.increment();
+        }
+        return published;
+    }
+
+    /**
+     * @return the number of decisions dropped because the buffer was full or they could not be formatted or written.
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * @return the number of decisions written to the file, flushed or not.
+     */
+    public long getWritten() {
+        return written.sum();
+    }
+
+    private void run() {
+        boolean dirty = false;
+        long idleParkNanos = MIN_IDLE_PARK_NANOS;
+        while (true) {
+            // Read before draining, so that whatever was published before the close is written.
+            boolean closing = closed;
+            int drained = buffer.drain(this::write, DRAIN_BATCH);
+            if (drained > 0) {
+                dirty = true;
+                idleParkNanos = MIN_IDLE_PARK_NANOS;
+                continue;
+            }
+            if (dirty) {
+                try {
+                    writer.flush();
+                } catch (IOException e) {
+                    log.warn("Unable to flush audit file {}", file, e);
+                }
+                dirty = false;
+            }
+            if (closing) {
+                break;
+            }
+            LockSupport.parkNanos(this, idleParkNanos);
+            idleParkNanos = Math.min(idleParkNanos * 2, MAX_IDLE_PARK_NANOS);
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            log.warn("Unable to close audit file {}", file, e);
+        }
+    }
+
+    private void write(DecisionRecord record) {
+        try {
+            line.setLength(0);
+            line.append("{\"timestamp\":\"").append(Instant.ofEpochMilli(record.timestampMillis)).append('"');
+            line.append(",\"verdict\":\"").append(record.failureKey == null ? "ALLOW" : "DENY").append('"');
+            appendField("failureKey", record.failureKey);
+            appendField("subject", record.subject);
+            appendField("issuer", record.issuer);
+            line.append(",\"fingerprint\":");
+            if (record.hasFingerprint) {
+                HEX.formatHex(line.append('"'), record.fingerprint).append('"');
+            } else {
+                line.append("null");
+            }
+            line.append('}');
+            writer.writeLine(line);
+            written.increment();
+        } catch (IOException | RuntimeException e) {
+            // A single bad record must neither stop the writer thread nor take the next records with it.
+            dropped.increment();
+            log.warn("Unable to write to audit file {}", file, e);
+        }
+    }
+
+    private void appendField(String name, String value) {
+        line.append(",\"").append(name).append("\":");
+        if (value == null) {
+            line.append("null");
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                line.append('\\').append(c);
+            } else if (c < 0x20 || c > 0x7E) {
+                // Keeps lines ASCII, whatever the DN holds.
+                line.append("\\u").append(HEX.toHexDigits(c));
+            } else {
+                line.append(c);
+            }
+        }
+        line.append('"');
+    }
+
+    private static byte[] fingerprint(X509Certificate certificate) {
+        try {
+            MessageDigest sha256 = SHA_256.get();
+            sha256.reset();
+            return sha256.digest(certificate.getEncoded());
+        } catch (CertificateEncodingException e) {
+            return null;
+        }
+    }
+
+    private static X509Certificate peerCertificate(SSLSession session) {
+        if (session == null) {
+            return null;
+        }
+        try {
+            Certificate[] peerCertificates = session.getPeerCertificates();
+            return peerCertificates != null && peerCertificates.length > 0 && peerCertificates[0] instanceof X509Certificate x509
+                ? x509
+                : null;
+        } catch (SSLPeerUnverifiedException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.sslenforcement.audit;
+
+/**
+ * Preallocated slot of the {@link DecisionRingBuffer}. It holds the fields that end up in the audit line, copied when
+ * the decision is published, and never the certificate or TLS session they come from: a backlog of decisions must not
+ * keep sessions and their peer certificate chains alive.
+ *
+ * @author GraviteeSource Team
+ */
+final class DecisionRecord {
+
+    static final int FINGERPRINT_LENGTH = 32;
+
+    long timestampMillis;
+
+    /** RFC 2253 subject of the evaluated certificate, {@code null} when there was none. */
+    String subject;
+
+    /** RFC 2253 issuer of the evaluated certificate, {@code null} when there was none. */
+    String issuer;
+
+    /** SHA-256 of the DER encoded certificate, only meaningful when {@link #hasFingerprint} is set. */
+    final byte[] fingerprint = new byte[FINGERPRINT_LENGTH];
+
+    boolean hasFingerprint;
+
+    /** Error key of the failure, {@code null} when the request was allowed. */
+    String failureKey;
+
+    /**
+     * @param fingerprint SHA-256 digest copied into the slot, or {@code null}.
+     */
+    void set(long timestampMillis, String subject, String issuer, byte[] fingerprint, String failureKey) {
+        this.timestampMillis = timestampMillis;
+        this.subject = subject;
+        this.issuer = issuer;
+        this.hasFingerprint = fingerprint != null && fingerprint.length == FINGERPRINT_LENGTH;
+        if (hasFingerprint) {
+            System.arraycopy(fingerprint, 0, this.fingerprint, 0, FINGERPRINT_LENGTH);
+        }
+        this.failureKey = failureKey;
+    }
+
+    void clear() {
+        set(0L, null, null, null, null);
+    }
+}
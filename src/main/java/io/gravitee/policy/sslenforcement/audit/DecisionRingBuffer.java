@@ -0,0 +1,111 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.sslenforcement.audit;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+/**
+ * Bounded multi-producer, single-consumer queue of preallocated {@link DecisionRecord}s. Each slot carries a sequence
+ * number telling whether it is free for the producer of a given position or published for the consumer, so producers
+ * only contend on one compare-and-set of the tail and never wait: when the buffer is full, {@link #offer} fails at
+ * once.
+ *
+ * @author GraviteeSource Team
+ */
+final class DecisionRingBuffer {
+
+    private final DecisionRecord[] records;
+
+    private final AtomicLongArray sequences;
+
+    private final int mask;
+
+    private final AtomicLong tail = new AtomicLong();
+
+    // Only read and written by the consumer.
+    private long head;
+
+    /**
+     * @param capacity rounded up to a power of two.
+     */
+    DecisionRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.records = new DecisionRecord[size];
+        this.sequences = new AtomicLongArray(size);
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            records[i] = new DecisionRecord();
+            sequences.set(i, i);
+        }
+    }
+
+    int capacity() {
+        return records.length;
+    }
+
+    /**
+     * @return {@code false} when the buffer is full and the decision was not recorded.
+     */
+    boolean offer(long timestampMillis, String subject, String issuer, byte[] fingerprint, String failureKey) {
+        long position = tail.get();
+        while (true) {
+            int index = (int) position & mask;
+            long available = sequences.get(index) - position;
+            if (available == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    records[index].set(timestampMillis, subject, issuer, fingerprint, failureKey);
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (available < 0) {
+                // The slot still holds the record published a full lap ago.
+                return false;
+            } else {
+                // Another producer took this position.
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Hands published records to {@code consumer}, in order, until the buffer is empty or {@code limit} records have
+     * been drained. Records are cleared once consumed and must not be kept. Must only be called by one thread.
+     *
+     * @return the number of drained records.
+     */
+    int drain(Consumer<DecisionRecord> consumer, int limit) {
+        int drained = 0;
+        while (drained < limit) {
+            int index = (int) head & mask;
+            if (sequences.get(index) != head + 1) {
+                break;
+            }
+            DecisionRecord record = records[index];
+            try {
+                consumer.accept(record);
+            } finally {
+                record.clear();
+                sequences.set(index, head + records.length);
+                head++;
+                drained++;
+            }
+        }
+        return drained;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.sslenforcement.audit;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Appends lines to a file and rolls it over once it would grow past its maximum size: {@code audit.log} becomes
+ * {@code audit.log.1}, the previous {@code audit.log.1} becomes {@code audit.log.2}, and so on up to the maximum number
+ * of backups, the oldest one being deleted. Not thread-safe: only used by the writer thread of its audit log.
+ *
+ * @author GraviteeSource Team
+ */
+final class RollingFileWriter implements Closeable {
+
+    private final Path file;
+
+    private final long maxSizeBytes;
+
+    private final int maxBackups;
+
+    private BufferedWriter writer;
+
+    private long sizeBytes;
+
+    RollingFileWriter(Path file, long maxSizeBytes, int maxBackups) throws IOException {
+        this.file = file;
+        this.maxSizeBytes = maxSizeBytes;
+        this.maxBackups = maxBackups;
+        Path directory = file.toAbsolutePath().getParent();
+        if (directory != null) {
+            Files.createDirectories(directory);
+        }
+        open();
+    }
+
+    /**
+     * @param line a line without its terminator, made of ASCII characters only so that its length is its size.
+     */
+    void writeLine(CharSequence line) throws IOException {
+        long lineBytes = line.length() + 1L;
+        if (sizeBytes > 0 && sizeBytes + lineBytes > maxSizeBytes) {
+            roll();
+        }
+        writer.append(line).append('\n');
+        sizeBytes += lineBytes;
+    }
+
+    void flush() throws IOException {
+        writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+    /**
+     * Rotates the files. The file is reopened whatever happens, so that a failed rotation only costs the current line
+     * and the file keeps growing until the next one succeeds.
+     */
+    private void roll() throws IOException {
+        try {
+            writer.close();
+            if (maxBackups <= 0) {
+                Files.delete(file);
+            } else {
+                Files.deleteIfExists(backup(maxBackups));
+                for (int i = maxBackups - 1; i >= 1; i--) {
+                    Path backup = backup(i);
+                    if (Files.exists(backup)) {
+                        Files.move(backup, backup(i + 1), StandardCopyOption.REPLACE_EXISTING);
+                    }
+                }
+                Files.move(file, backup(1), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            open();
+        }
+    }
+
+    private void open() throws IOException {
+        writer = Files.newBufferedWriter(file, StandardCharsets.US_ASCII, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        sizeBytes = Files.size(file);
+    }
+
+    private Path backup(int index) {
+        return file.resolveSibling(file.getFileName() + "." + index);
+    }
+}
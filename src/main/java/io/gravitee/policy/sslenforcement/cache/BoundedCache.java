@@ -0,0 +1,213 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.sslenforcement.cache;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
+/**
+ * Size-bounded, TTL-expiring, approximately LRU cache.
+ *
+ * <p>Entries live in a {@link ConcurrentHashMap} and reads take no lock: a read only records the access time of the
+ * entry, and at most once per {@value #ACCESS_RESOLUTION_MILLIS} ms, so that a hot entry read by every event-loop
+ * thread is not written to on every read. Once the cache outgrows its bound, the writer that notices it evicts
+ * expired entries and then the least recently accessed ones, down to {@code 1 / }{@value #EVICTION_BATCH_DIVISOR}
+ * below the bound, so that scanning the entries is amortized over many writes. Concurrent writers do not wait for
+ * an eviction in progress, so the bound may be exceeded by the number of concurrent writers.</p>
+ *
+ * @author GraviteeSource Team
+ */
+public final class BoundedCache<K, V> {
+
+    private static final long ACCESS_RESOLUTION_MILLIS = 1;
+
+    private static final long ACCESS_RESOLUTION_NANOS = TimeUnit.MILLISECONDS.toNanos(ACCESS_RESOLUTION_MILLIS);
+
+    private static final int EVICTION_BATCH_DIVISOR = 10;
+
+    private final ConcurrentHashMap<K, Entry<V>> entries;
+    private final int maxSize;
+    private final long ttlNanos;
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public BoundedCache(int maxSize, Duration ttl) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Cache max size must be positive, got " + maxSize);
+        }
+        this.entries = new ConcurrentHashMap<>(Math.min(maxSize, 1 << 16));
+        this.maxSize = maxSize;
+        this.ttlNanos = ttl == null || ttl.isZero() || ttl.isNegative() ? Long.MAX_VALUE : ttl.toNanos();
+    }
+
+    /**
+     * @return the cached value, or {@code null} when absent or expired.
+     */
+    public V get(K key) {
+        Entry<V> entry = entries.get(key);
+        V value = null;
+        if (entry != null) {
+            long now = System.nanoTime();
+            if (entry.expiresAt - now < 0) {
+                if (entries.remove(key, entry)) {
+                    evictions.increment();
+                }
+            } else {
+                if (now - entry.accessedAt > ACCESS_RESOLUTION_NANOS) {
+                    entry.accessedAt = now;
+                }
+                value = entry.value;
+            }
+        }
+        if (value == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return value;
+    }
+
+    /**
+     * @return whether an entry is present for the key, without counting a hit or a miss nor refreshing its access
+     * time. An entry that has expired but not been evicted yet is reported as present.
+     */
+    public boolean contains(K key) {
+        return entries.containsKey(key);
+    }
+
+    public void put(K key, V value) {
+        put(key, value, ttlNanos);
+    }
+
+    /**
+     * Stores a value with an entry-specific time-to-live, capped by the cache-wide TTL.
+     */
+    public void put(K key, V value, long ttlNanos) {
+        long effectiveTtl = Math.min(ttlNanos, this.ttlNanos);
+        if (effectiveTtl <= 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        // Saturate instead of overflowing when the TTL is "forever".
+        long expiresAt = effectiveTtl > Long.MAX_VALUE - now ? Long.MAX_VALUE : now + effectiveTtl;
+        entries.put(key, new Entry<>(value, expiresAt, now));
+        if (entries.size() > maxSize) {
+            evict();
+        }
+    }
+
+    public void invalidate(K key) {
+        entries.remove(key);
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Calls {@code action} with every live entry, without counting hits nor refreshing access times. Entries added or
+     * removed concurrently may or may not be seen.
+     */
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        long now = System.nanoTime();
+        entries.forEach((key, entry) -> {
+            if (entry.expiresAt - now >= 0) {
+                action.accept(key, entry.value);
+            }
+        });
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public CacheStats stats() {
+        return new CacheStats(hits.sum(), misses.sum(), evictions.sum(), size());
+    }
+
+    /**
+     * Removes the expired entries, then the least recently accessed ones until the cache is one batch below its
+     * bound. Skipped when another writer is already evicting.
+     */
+    private void evict() {
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            long now = System.nanoTime();
+            entries.forEach((key, entry) -> {
+                if (entry.expiresAt - now < 0 && entries.remove(key, entry)) {
+                    evictions.increment();
+                }
+            });
+            int target = maxSize - maxSize / EVICTION_BATCH_DIVISOR;
+            int excess = entries.size() - target;
+            if (excess <= 0) {
+                return;
+            }
+            // Relative to now, so that the order does not depend on where nanoTime wraps around.
+            long[] ages = new long[entries.size()];
+            int count = 0;
+            for (Entry<V> entry : entries.values()) {
+                if (count == ages.length) {
+                    break;
+                }
+                ages[count++] = now - entry.accessedAt;
+            }
+            if (count == 0) {
+                return;
+            }
+            Arrays.sort(ages, 0, count);
+            long youngestEvicted = ages[Math.max(0, count - excess)];
+            for (var e : entries.entrySet()) {
+                if (excess <= 0) {
+                    break;
+                }
+                Entry<V> entry = e.getValue();
+                if (now - entry.accessedAt >= youngestEvicted && entries.remove(e.getKey(), entry)) {
+                    evictions.increment();
+                    excess--;
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private static final class Entry<V> {
+
+        private final V value;
+
+        private final long expiresAt;
+
+        // Racy by design: concurrent readers may overwrite each other with close enough times.
+        private volatile long accessedAt;
+
+        private Entry(V value, long expiresAt, long accessedAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+            this.accessedAt = accessedAt;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.sslenforcement.cache;
+
+/**
+ * Point-in-time counters of a {@link BoundedCache}. Evictions include both size-based and TTL-based removals.
+ *
+ * @author GraviteeSource Team
+ */
+public record CacheStats(long hits, long misses, long evictions, int size) {
+    public static final CacheStats EMPTY = new CacheStats(0, 0, 0, 0);
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.sslenforcement.configuration;
+
+/**
+ * How the client certificate is written in its header, with {@link CertificateLocation#HEADER}.
+ *
+ * @author GraviteeSource Team
+ */
+public enum CertificateHeaderFormat {
+    /** PEM, URL-encoded or with line breaks replaced by tabs, or raw Base64 DER. */
+    PEM("ssl-client-cert"),
+    /**
+     * nginx {@code $ssl_client_escaped_cert} (URL-encoded PEM) or {@code $ssl_client_cert} (tab-separated PEM), in the
+     * header named by {@code proxy_set_header}. Both are PEM, read by the same decoder as {@link #PEM}.
+     */
+    NGINX("ssl-client-cert"),
+    /**
+     * AWS Application Load Balancer {@code X-Amzn-Mtls-Clientcert}: URL-encoded PEM, leaf first, keeping {@code +},
+     * {@code =} and {@code /} unescaped. Read by the same decoder as {@link #PEM}.
+     */
+    AWS_ALB("x-amzn-mtls-clientcert"),
+    /**
+     * Envoy {@code x-forwarded-client-cert}: the element appended by the closest proxy is read, its {@code Hash},
+     * {@code Subject}, {@code URI} and {@code DNS} fields, and its {@code Cert} (or {@code Chain}) field when a check
+     * needs the certificate itself.
+     */
+    ENVOY_XFCC("x-forwarded-client-cert");
+
+    private final String defaultHeaderName;
+
+    CertificateHeaderFormat(String defaultHeaderName) {
+        this.defaultHeaderName = defaultHeaderName;
+    }
+
+    /**
+     * @return the header the proxy writes the certificate to by default, read when no header name is configured.
+     */
+    public String defaultHeaderName() {
+        return defaultHeaderName;
+    }
+}
@@ -42,11 +42,41 @@ public class SslEnforcementPolicyConfiguration implements PolicyConfiguration {
     @Builder.Default
     private boolean useXForwardedProto = false;
 
+    /**
+     * Number of trusted proxies in front of the gateway. When greater than 0, only the hop element appended by the
+     * outermost trusted proxy is read from Forwarded / X-Forwarded-Proto; 0 accepts https announced by any hop.
+     */
+    @Builder.Default
+    private int forwardedTrustedHops = 0;
+
     private boolean requiresClientAuthentication;
 
+    /**
+     * Hex-encoded SHA-256 fingerprints of the allowed client certificates, or of their public keys (requires client
+     * authentication).
+     */
+    private List<String> pinnedFingerprints;
+
+    /** Whether {@link #pinnedFingerprints} are computed over the whole certificate or its SubjectPublicKeyInfo **/
+    @Builder.Default
+    private FingerprintType pinnedFingerprintType = FingerprintType.CERTIFICATE;
+
+    /**
+     * When true, a pinned certificate is accepted without the DN, issuer, chain, OID and SAN checks, and unpinned
+     * certificates go through them. When false, the certificate must be pinned and pass the other checks.
+     */
+    @Builder.Default
+    private boolean pinnedFingerprintsSufficient = false;
+
     /** Allowed client certificates (requires client authentication) **/
     private List<String> whitelistClientCertificates;
 
+    /**
+     * Local file of additional allowed client certificate DNs, one per line. The file is watched and reloaded when it
+     * changes, without redeploying the API.
+     */
+    private String whitelistClientCertificatesFile;
+
     /** Allowed client certificate issuer DNs (requires client authentication). Supports Ant-pattern matching. **/
     private List<String> whitelistIssuers;
 
@@ -56,10 +86,169 @@ public class SslEnforcementPolicyConfiguration implements PolicyConfiguration {
     /** Allowed Subject Alternative Name values (requires client authentication). Supports Ant-pattern matching. **/
     private List<String> whitelistSubjectAlternativeNames;
 
+    /** Local file of additional allowed Subject Alternative Name patterns, one per line, reloaded when it changes **/
+    private String whitelistSubjectAlternativeNamesFile;
+
+    /**
+     * Boolean expression over the subject, issuer, SANs and policy OIDs of the client certificate, e.g.
+     * {@code issuer = 'CN=A' AND san = '*.a.com' OR oid = '1.2.3'} (requires client authentication)
+     **/
+    private String certificateRule;
+
+    /**
+     * Local CRL files (DER or PEM) listing revoked client certificates (requires client authentication). The files
+     * are watched and reloaded when they change, and re-read once their nextUpdate has passed.
+     */
+    private List<String> crlFiles;
+
+    /** Check the OCSP response stapled by the client for its certificate (SESSION location, requires client authentication) **/
+    @Builder.Default
+    private boolean ocspStaplingEnabled = false;
+
+    /** Reject clients whose certificate status cannot be verified from a stapled OCSP response, instead of soft-failing **/
+    @Builder.Default
+    private boolean ocspStaplingRequired = false;
+
+    /** PEM or DER file of OCSP responder certificates trusted to sign responses for any issuer, e.g. an offline responder **/
+    private String ocspResponderCertificateFile;
+
+    /** Maximum number of verified OCSP statuses kept, each one until the nextUpdate of its response **/
+    @Builder.Default
+    private int ocspResponseCacheMaxSize = 10000;
+
     @Builder.Default
     private CertificateLocation certificateLocation = CertificateLocation.SESSION;
 
-    /** Name of the header where to find the client certificate when using header certificate location **/
+    /**
+     * Name of the header where to find the client certificate when using header certificate location, defaulting to
+     * the header of {@link #certificateHeaderFormat}, e.g. x-forwarded-client-cert for ENVOY_XFCC
+     **/
+    private String certificateHeaderName;
+
+    /** Format of the client certificate header: PEM, NGINX, AWS_ALB or ENVOY_XFCC (x-forwarded-client-cert) **/
+    @Builder.Default
+    private CertificateHeaderFormat certificateHeaderFormat = CertificateHeaderFormat.PEM;
+
+    /** Longest certificate header value decoded, in characters; longer values are treated as an invalid certificate **/
     @Builder.Default
-    private String certificateHeaderName = "ssl-client-cert";
+    private int certificateHeaderMaxSize = 16384;
+
+    /**
+     * When true and the certificate is read from a header, decoded certificates are cached by raw header value, and
+     * header values that fail to decode are remembered as well, so repeated values skip the PEM / ASN.1 decoding.
+     */
+    @Builder.Default
+    private boolean certificateHeaderCacheEnabled = false;
+
+    /** Maximum number of cached header values (applies separately to decoded and undecodable values) **/
+    @Builder.Default
+    private int certificateHeaderCacheMaxSize = 1000;
+
+    /**
+     * PEM bundle of trust anchors that certificates read from the header must chain to, through the intermediate CAs
+     * forwarded with them (requires client authentication).
+     * Without it, any well-formed certificate in the header is accepted as the client certificate.
+     */
+    private String trustAnchorsFile;
+
+    /** Maximum number of header certificates whose successful chain validation is kept, each one until it expires **/
+    @Builder.Default
+    private int chainValidationCacheMaxSize = 10000;
+
+    /**
+     * Reactive engine only: when the certificate must be decoded from a header that is not in the header certificate
+     * cache, run the evaluation on an I/O worker instead of the event loop.
+     */
+    @Builder.Default
+    private boolean workerOffloadEnabled = false;
+
+    /**
+     * When true, the enforcement verdict is cached per client certificate (SHA-256 of its DER encoding) so that
+     * repeated certificates skip the DN, issuer, OID and SAN checks. The cache belongs to the policy instance.
+     */
+    @Builder.Default
+    private boolean verdictCacheEnabled = false;
+
+    /** Maximum number of cached verdicts, least recently used entries are evicted first **/
+    @Builder.Default
+    private int verdictCacheMaxSize = 10000;
+
+    /** Time-to-live of a cached verdict, in seconds **/
+    @Builder.Default
+    private long verdictCacheTtlSeconds = 300;
+
+    /**
+     * When true, rejected certificates (SHA-256 of their DER encoding) are remembered for a short while, so that a
+     * client retrying with a forbidden certificate is answered with the cached rejection without running any check.
+     */
+    @Builder.Default
+    private boolean rejectionCacheEnabled = false;
+
+    /** Maximum number of cached rejections, least recently used entries are evicted first **/
+    @Builder.Default
+    private int rejectionCacheMaxSize = 10000;
+
+    /** Time-to-live of a cached rejection, in seconds **/
+    @Builder.Default
+    private long rejectionCacheTtlSeconds = 60;
+
+    /**
+     * When true and the certificate is read from the TLS session, the verdict is memoized on the session itself so
+     * that further requests on the same connection, HTTP/2 streams and resumed sessions skip certificate extraction
+     * and every check.
+     */
+    @Builder.Default
+    private boolean sessionVerdictCacheEnabled = false;
+
+    /**
+     * When true, the enabled checks are periodically reordered by their measured cost and rejection rate, so that
+     * rejected certificates are rejected by the cheapest check that rejects them. They are otherwise ordered by
+     * estimated cost.
+     */
+    @Builder.Default
+    private boolean adaptiveStageOrderingEnabled = false;
+
+    /**
+     * When true, every decision taken on a client certificate (subject, issuer, fingerprint, verdict and error key) is
+     * written to {@link #auditFile}, asynchronously. Decisions are dropped rather than delaying requests when the
+     * writer cannot keep up.
+     */
+    @Builder.Default
+    private boolean auditEnabled = false;
+
+    /** Path of the audit file, JSON lines. Policy instances sharing a file share its buffer and writer **/
+    private String auditFile;
+
+    /** Number of decisions buffered before the writer drains them, rounded up to a power of two **/
+    @Builder.Default
+    private int auditBufferSize = 8192;
+
+    /** Size at which the audit file is rolled over, in megabytes **/
+    @Builder.Default
+    private int auditFileMaxSizeMb = 10;
+
+    /** Number of rolled over audit files kept **/
+    @Builder.Default
+    private int auditFileMaxBackups = 5;
+
+    /** When true, per-stage latencies and accept / reject / parse-failure counters are recorded **/
+    @Builder.Default
+    private boolean metricsEnabled = false;
+
+    /** Name of the metrics; policy instances sharing a name share their counters. Defaults to the API context path **/
+    private String metricsName;
+
+    /** When true, the metrics are also exposed as a JMX MXBean **/
+    @Builder.Default
+    private boolean metricsJmxEnabled = false;
+
+    /**
+     * @return the configured header name or, when there is none, the default header of the header format.
+     */
+    public String getCertificateHeaderName() {
+        if (certificateHeaderName != null && !certificateHeaderName.isBlank()) {
+            return certificateHeaderName;
+        }
+        return (certificateHeaderFormat == null ? CertificateHeaderFormat.PEM : certificateHeaderFormat).defaultHeaderName();
+    }
 }
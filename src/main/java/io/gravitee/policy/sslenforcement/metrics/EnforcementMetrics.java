@@ -0,0 +1,228 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.sslenforcement.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Counters and per-stage latency histograms of the SSL enforcement policy. Instances are shared by name, so every
+ * policy instance configured with the same metrics name (e.g. every request of an API, or several APIs on purpose)
+ * feeds the same counters. All updates are {@link LongAdder} based and never block.
+ * <p>
+ * Each {@link #named(String, boolean)} must be paired with a {@link #release()}: once the last policy instance using a
+ * name is gone, the metrics are forgotten and their MXBean unregistered.
+ *
+ * @author GraviteeSource Team
+ */
+@Slf4j
+public final class EnforcementMetrics implements EnforcementMetricsMXBean {
+
+    static final String JMX_DOMAIN = "io.gravitee.policy.sslenforcement";
+
+    /** Guarded by the class lock, like {@link #users}. */
+    private static final Map<String, EnforcementMetrics> REGISTRY = new HashMap<>();
+
+    private static final Stage[] STAGES = Stage.values();
+
+    private final String name;
+
+    private final LatencyHistogram[] stages = new LatencyHistogram[STAGES.length];
+
+    private final LongAdder accepted = new LongAdder();
+
+    private final ConcurrentMap<String, LongAdder> rejected = new ConcurrentHashMap<>();
+
+    private final LongAdder parseFailures = new LongAdder();
+
+    private int users;
+
+    private boolean registered;
+
+    private EnforcementMetrics(String name) {
+        this.name = name;
+        for (int i = 0; i < stages.length; i++) {
+            stages[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * @return the metrics registered under {@code name}, created on first use. When {@code jmx} is true, they are
+     * also exposed as an MXBean named {@code io.gravitee.policy.sslenforcement:type=EnforcementMetrics,name=<name>}.
+     */
+    public static synchronized EnforcementMetrics named(String name, boolean jmx) {
+        EnforcementMetrics metrics = REGISTRY.computeIfAbsent(name, EnforcementMetrics::new);
+        metrics.users++;
+        if (jmx) {
+            metrics.registerMBean();
+        }
+        return metrics;
+    }
+
+    /**
+     * Hands back metrics obtained from {@link #named(String, boolean)}. The last release removes them from the registry
+     * and unregisters their MXBean, so that an undeployed API leaves nothing behind.
+     */
+    public void release() {
+        synchronized (EnforcementMetrics.class) {
+            if (users == 0 || --users > 0) {
+                return;
+            }
+            REGISTRY.remove(name, this);
+            // Still under the class lock, so that a new instance cannot register under the same name meanwhile.
+            unregisterMBean();
+        }
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public void record(Stage stage, long nanos) {
+        stages[stage.ordinal()].record(nanos);
+    }
+
+    public void accepted() {
+        accepted.increment();
+    }
+
+    public void rejected(String failureKey) {
+        LongAdder counter = rejected.get(failureKey);
+        if (counter == null) {
+            counter = rejected.computeIfAbsent(failureKey, k -> new LongAdder());
+        }
+        counter.increment();
+    }
+
+    public void parseFailure() {
+        parseFailures.increment();
+    }
+
+    public HistogramSnapshot stage(Stage stage) {
+        return stages[stage.ordinal()].snapshot();
+    }
+
+    @Override
+    public long getAccepted() {
+        return accepted.sum();
+    }
+
+    @Override
+    public Map<String, Long> getRejected() {
+        Map<String, Long> counts = new TreeMap<>();
+        rejected.forEach((key, counter) -> counts.put(key, counter.sum()));
+        return counts;
+    }
+
+    @Override
+    public long getParseFailures() {
+        return parseFailures.sum();
+    }
+
+    @Override
+    public Map<String, Long> getStageCounts() {
+        return perStage(HistogramSnapshot::count);
+    }
+
+    @Override
+    public Map<String, Double> getStageMeanNanos() {
+        Map<String, Double> means = new LinkedHashMap<>();
+        for (Stage stage : STAGES) {
+            means.put(stage.name(), stage(stage).meanNanos());
+        }
+        return means;
+    }
+
+    @Override
+    public Map<String, Long> getStageP50Nanos() {
+        return perStage(snapshot -> snapshot.quantileUpperBoundNanos(0.5));
+    }
+
+    @Override
+    public Map<String, Long> getStageP99Nanos() {
+        return perStage(snapshot -> snapshot.quantileUpperBoundNanos(0.99));
+    }
+
+    @Override
+    public void reset() {
+        for (LatencyHistogram histogram : stages) {
+            histogram.reset();
+        }
+        accepted.reset();
+        rejected.clear();
+        parseFailures.reset();
+    }
+
+    private Map<String, Long> perStage(ToLongFunction<HistogramSnapshot> value) {
+        Map<String, Long> values = new LinkedHashMap<>();
+        for (Stage stage : STAGES) {
+            values.put(stage.name(), value.applyAsLong(stage(stage)));
+        }
+        return values;
+    }
+
+    /**
+     * Registers this instance, replacing any MXBean left under the same name, e.g. by a previous version of the
+     * plugin loaded in another class loader. A failure is logged and never prevents the policy from running.
+     */
+    private synchronized void registerMBean() {
+        if (registered) {
+            return;
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = objectName(name);
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(this, objectName);
+            registered = true;
+        } catch (JMException | RuntimeException e) {
+            log.warn("Unable to register SSL enforcement metrics '{}' in JMX", name, e);
+        }
+    }
+
+    private synchronized void unregisterMBean() {
+        if (!registered) {
+            return;
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = objectName(name);
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (JMException | RuntimeException e) {
+            log.warn("Unable to unregister SSL enforcement metrics '{}' from JMX", name, e);
+        }
+        registered = false;
+    }
+
+    static ObjectName objectName(String name) throws JMException {
+        return new ObjectName(JMX_DOMAIN + ":type=EnforcementMetrics,name=" + ObjectName.quote(name));
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.sslenforcement.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link EnforcementMetrics}. Stage maps are keyed by {@link Stage} name, failure maps by failure key.
+ *
+ * @author GraviteeSource Team
+ */
+public interface EnforcementMetricsMXBean {
+    long getAccepted();
+
+    Map<String, Long> getRejected();
+
+    long getParseFailures();
+
+    Map<String, Long> getStageCounts();
+
+    Map<String, Double> getStageMeanNanos();
+
+    Map<String, Long> getStageP50Nanos();
+
+    Map<String, Long> getStageP99Nanos();
+
+    void reset();
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.sslenforcement.metrics;
+
+/**
+ * Point-in-time copy of a {@link LatencyHistogram}. Being taken without locking, the buckets of a snapshot may be
+ * off by the few records made while it was copied.
+ *
+ * @author GraviteeSource Team
+ */
+public record HistogramSnapshot(long count, long totalNanos, long[] buckets) {
+    public double meanNanos() {
+        return count == 0 ? 0 : (double) totalNanos / count;
+    }
+
+    /**
+     * @return an upper bound of the {@code quantile} (0 to 1) of the recorded durations, i.e. the upper bound of the
+     * bucket it falls in, or 0 when nothing was recorded.
+     */
+    public long quantileUpperBoundNanos(double quantile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(Math.min(1, Math.max(0, quantile)) * count);
+        long seen = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (seen >= rank && seen > 0) {
+                return i == buckets.length - 1 ? Long.MAX_VALUE : 1L << i;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.sslenforcement.metrics;
+
+/**
+ * Timed stages of the enforcement pipeline. {@link #TOTAL} covers a whole request, cached verdicts included, while
+ * the other stages are only recorded when they actually run.
+ *
+ * @author GraviteeSource Team
+ */
+public enum Stage {
+    TOTAL,
+    SSL_CHECK,
+    CERTIFICATE_EXTRACTION,
+    PINNING,
+    CHAIN_VALIDATION,
+    CLIENT_DN,
+    ISSUER_DN,
+    REVOCATION,
+    OCSP_STAPLING,
+    POLICY_OIDS,
+    SUBJECT_ALTERNATIVE_NAMES,
+    RULE
+}
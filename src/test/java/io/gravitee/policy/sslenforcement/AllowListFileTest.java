@@ -0,0 +1,66 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.sslenforcement;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class AllowListFileTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    @SneakyThrows
+    void should_read_one_trimmed_entry_per_line() {
+        Path file = directory.resolve("partners.txt");
+        Files.writeString(
+            file,
+            "﻿# partners\r\nCN=partner-1,O=GraviteeSource,C=FR\r\n\r\n   CN=Société Générale,C=FR  \n\t#CN=disabled\nCN=last,C=FR",
+            StandardCharsets.UTF_8
+        );
+
+        assertThat(AllowListFile.readEntries(file)).containsExactly(
+            "CN=partner-1,O=GraviteeSource,C=FR",
+            "CN=Société Générale,C=FR",
+            "CN=last,C=FR"
+        );
+    }
+
+    @Test
+    @SneakyThrows
+    void should_read_empty_file() {
+        Path file = Files.createFile(directory.resolve("empty.txt"));
+
+        assertThat(AllowListFile.readEntries(file)).isEmpty();
+    }
+
+    @Test
+    @SneakyThrows
+    void should_read_entries_longer_than_the_initial_buffer() {
+        String longEntry = "CN=" + "x".repeat(1000) + ",C=FR";
+        Path file = directory.resolve("long.txt");
+        Files.writeString(file, "CN=a,C=FR\n" + longEntry + "\n");
+
+        assertThat(AllowListFile.readEntries(file)).containsExactly("CN=a,C=FR", longEntry);
+    }
+}
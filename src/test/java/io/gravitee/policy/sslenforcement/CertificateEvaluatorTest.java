@@ -0,0 +1,124 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.sslenforcement;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.gravitee.policy.sslenforcement.configuration.SslEnforcementPolicyConfiguration;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CertificateEvaluatorTest {
+
+    private static final TestCertificateAuthority AUTHORITY = new TestCertificateAuthority("CN=Partners CA,O=GraviteeSource,C=FR");
+
+    private final CertificateEvaluator evaluator = CertificateEvaluator.of(
+        SslEnforcementPolicyConfiguration.builder()
+            .requiresClientAuthentication(true)
+            .whitelistClientCertificates(List.of("CN=partner-*,O=GraviteeSource,C=FR"))
+            .build()
+    );
+
+    @AfterEach
+    void closeEvaluator() {
+        evaluator.close();
+    }
+
+    @Test
+    @SneakyThrows
+    void should_stop_watching_files_when_closed(@TempDir Path directory) {
+        Path file = Files.writeString(directory.resolve("clients.txt"), "CN=partner-*,O=GraviteeSource,C=FR\n");
+        CertificateEvaluator watching = CertificateEvaluator.of(
+            SslEnforcementPolicyConfiguration.builder()
+                .requiresClientAuthentication(true)
+                .whitelistClientCertificatesFile(file.toString())
+                .build()
+        );
+        assertThat(LocalFileWatcher.watchedDirectories()).contains(directory.toRealPath());
+
+        watching.close();
+
+        assertThat(LocalFileWatcher.watchedDirectories()).doesNotContain(directory.toRealPath());
+    }
+
+    @Test
+    void should_evaluate_certificate() {
+        assertThat(evaluator.evaluate(AUTHORITY.issue("CN=partner-1,O=GraviteeSource,C=FR", BigInteger.ONE)).isAllowed()).isTrue();
+
+        Verdict verdict = evaluator.evaluate(AUTHORITY.issue("CN=intruder,O=GraviteeSource,C=FR", BigInteger.TWO));
+
+        assertThat(verdict.isAllowed()).isFalse();
+        assertThat(verdict.failure().key()).isEqualTo(SslEnforcementPolicy.CLIENT_FORBIDDEN);
+    }
+
+    @Test
+    void should_evaluate_pem() {
+        assertThat(evaluator.evaluate(pem(AUTHORITY.issue("CN=partner-1,O=GraviteeSource,C=FR", BigInteger.ONE))).isAllowed()).isTrue();
+        assertThat(evaluator.evaluate("not a certificate").failure().key()).isEqualTo(SslEnforcementPolicy.AUTHENTICATION_REQUIRED);
+    }
+
+    @Test
+    void should_evaluate_batch_in_parallel() {
+        List<X509Certificate> certificates = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            String subject = (i % 4 == 0 ? "CN=intruder-" : "CN=partner-") + i + ",O=GraviteeSource,C=FR";
+            certificates.add(AUTHORITY.issue(subject, BigInteger.valueOf(i + 1)));
+        }
+
+        Map<Integer, CertificateEvaluator.Evaluation> evaluations = evaluator
+            .evaluateAll(certificates)
+            .collect(Collectors.toMap(CertificateEvaluator.Evaluation::index, evaluation -> evaluation));
+
+        assertThat(evaluations).hasSize(64);
+        evaluations.forEach((index, evaluation) -> {
+            assertThat(evaluation.certificate()).isSameAs(certificates.get(index));
+            assertThat(evaluation.verdict().isAllowed()).isEqualTo(index % 4 != 0);
+        });
+    }
+
+    @Test
+    void should_evaluate_pem_batch() {
+        List<String> pems = List.of(pem(AUTHORITY.issue("CN=partner-1,O=GraviteeSource,C=FR", BigInteger.ONE)), "garbage");
+
+        Map<Integer, CertificateEvaluator.Evaluation> evaluations = evaluator
+            .evaluateAllPem(pems)
+            .collect(Collectors.toMap(CertificateEvaluator.Evaluation::index, evaluation -> evaluation));
+
+        assertThat(evaluations.get(0).verdict().isAllowed()).isTrue();
+        assertThat(evaluations.get(1).certificate()).isNull();
+        assertThat(evaluations.get(1).verdict().failure().key()).isEqualTo(SslEnforcementPolicy.AUTHENTICATION_REQUIRED);
+    }
+
+    @SneakyThrows
+    private static String pem(X509Certificate certificate) {
+        return (
+            "-----BEGIN CERTIFICATE-----\n" +
+            Base64.getMimeEncoder(64, new byte[] { '\n' }).encodeToString(certificate.getEncoded()) +
+            "\n-----END CERTIFICATE-----\n"
+        );
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.sslenforcement;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.math.BigInteger;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.Base64;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+class CertificateHeaderDecoderTest {
+
+    private static final TestCertificateAuthority AUTHORITY = new TestCertificateAuthority("CN=Header CA");
+
+    private static final X509Certificate CERTIFICATE = AUTHORITY.issue("CN=partner", BigInteger.TEN);
+
+    static Stream<Arguments> encodings() {
+        return Stream.of(
+            Arguments.of("PEM", (Function<String, String>) pem -> pem),
+            Arguments.of("URL-encoded PEM", (Function<String, String>) pem -> URLEncoder.encode(pem, StandardCharsets.UTF_8)),
+            Arguments.of("tab-separated PEM", (Function<String, String>) pem -> pem.replace('\n', '\t')),
+            Arguments.of("CRLF PEM", (Function<String, String>) pem -> pem.replace("\n", "\r\n")),
+            Arguments.of("raw Base64", (Function<String, String>) pem -> base64(CERTIFICATE)),
+            Arguments.of("bundle", (Function<String, String>) pem -> pem + pem(AUTHORITY.certificate))
+        );
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("encodings")
+    @SneakyThrows
+    void should_decode_certificate(String name, Function<String, String> encoding) {
+        String value = encoding.apply(pem(CERTIFICATE));
+
+        assertThat(CertificateHeaderDecoder.toDer(value)).isEqualTo(CERTIFICATE.getEncoded());
+        assertThat(CertificateHeaderDecoder.decode(value)).isEqualTo(CERTIFICATE);
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("encodings")
+    @SneakyThrows
+    void should_decode_bundle(String name, Function<String, String> encoding) {
+        String value = encoding.apply(pem(CERTIFICATE) + pem(AUTHORITY.certificate));
+
+        assertThat(CertificateHeaderDecoder.decodeAll(value)).startsWith(CERTIFICATE);
+    }
+
+    @Test
+    @SneakyThrows
+    void should_decode_every_certificate_of_a_bundle() {
+        String value = URLEncoder.encode(pem(CERTIFICATE) + pem(AUTHORITY.certificate), StandardCharsets.UTF_8);
+
+        assertThat(CertificateHeaderDecoder.decodeAll(value)).containsExactly(CERTIFICATE, AUTHORITY.certificate);
+    }
+
+    @Test
+    @SneakyThrows
+    void should_keep_plus_sign_literal() {
+        // Escaping only the armor and line breaks leaves the '+' of the Base64 body as is, which URLDecoder would turn into spaces.
+        String value = pem(CERTIFICATE).replace(" ", "%20").replace("\n", "%0A");
+
+        assertThat(CertificateHeaderDecoder.toDer(value)).isEqualTo(CERTIFICATE.getEncoded());
+    }
+
+    @Test
+    void should_reject_invalid_values() {
+        String pem = pem(CERTIFICATE);
+
+        assertThat(CertificateHeaderDecoder.toDer("not a certificate!")).isNull();
+        assertThat(CertificateHeaderDecoder.toDer("MIIB%G0")).isNull();
+        assertThat(CertificateHeaderDecoder.toDer("MIIB=MIIB")).isNull();
+        assertThat(CertificateHeaderDecoder.toDer(pem.substring(0, pem.indexOf("-----END")))).isNull();
+        assertThatThrownBy(() -> CertificateHeaderDecoder.decode("")).isInstanceOf(CertificateException.class);
+        // Valid Base64, but not DER.
+        assertThatThrownBy(() -> CertificateHeaderDecoder.decode("not a certificate")).isInstanceOf(CertificateException.class);
+    }
+
+    private static String base64(X509Certificate certificate) {
+        return Base64.getEncoder().encodeToString(encoded(certificate));
+    }
+
+    private static String pem(X509Certificate certificate) {
+        return (
+            "-----BEGIN CERTIFICATE-----\n" +
+            Base64.getMimeEncoder(64, new byte[] { '\n' }).encodeToString(encoded(certificate)) +
+            "\n-----END CERTIFICATE-----\n"
+        );
+    }
+
+    @SneakyThrows
+    private static byte[] encoded(X509Certificate certificate) {
+        return certificate.getEncoded();
+    }
+}
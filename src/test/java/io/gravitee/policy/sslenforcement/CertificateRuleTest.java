@@ -0,0 +1,141 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.sslenforcement;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.math.BigInteger;
+import java.security.cert.X509Certificate;
+import javax.security.auth.x500.X500Principal;
+import org.bouncycastle.asn1.ASN1Encodable;
+import org.bouncycastle.asn1.DERSequence;
+import org.bouncycastle.asn1.DERSet;
+import org.bouncycastle.asn1.DERUTF8String;
+import org.bouncycastle.asn1.x500.AttributeTypeAndValue;
+import org.bouncycastle.asn1.x500.style.BCStyle;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class CertificateRuleTest {
+
+    private static final TestCertificateAuthority PARTNERS = new TestCertificateAuthority("CN=Partners CA,O=GraviteeSource,C=FR");
+
+    private static final TestCertificateAuthority BANKS = new TestCertificateAuthority("CN=Banks CA,O=GraviteeSource,C=FR");
+
+    private static final String QWAC = "0.4.0.19495.1.3";
+
+    private static final CertificateRule RULE = CertificateRule.compile(
+        "(issuer = 'CN=Partners CA,O=GraviteeSource,C=FR' AND san = '*.a.com') OR " +
+        "(issuer = \"C=FR,O=GraviteeSource,CN=Banks CA\" AND oid = '" +
+        QWAC +
+        "')"
+    );
+
+    @Test
+    void should_match_either_combination() {
+        assertThat(RULE.matches(PARTNERS.issue("CN=partner", BigInteger.ONE, dns("api.a.com")))).isTrue();
+        assertThat(RULE.matches(BANKS.issue("CN=bank", BigInteger.TWO, dns("api.b.com"), QWAC))).isTrue();
+    }
+
+    @Test
+    void should_not_match_conditions_of_different_branches() {
+        assertThat(RULE.matches(PARTNERS.issue("CN=partner", BigInteger.ONE, dns("api.b.com"), QWAC))).isFalse();
+        assertThat(RULE.matches(BANKS.issue("CN=bank", BigInteger.TWO, dns("api.a.com")))).isFalse();
+    }
+
+    @Test
+    void should_negate_conditions() {
+        CertificateRule rule = CertificateRule.compile("not subject = 'CN=blocked' and NOT (san = 'api.b.com')");
+
+        assertThat(rule.matches(PARTNERS.issue("CN=partner", BigInteger.ONE, dns("api.a.com")))).isTrue();
+        assertThat(rule.matches(PARTNERS.issue("CN=blocked", BigInteger.ONE, dns("api.a.com")))).isFalse();
+        assertThat(rule.matches(PARTNERS.issue("CN=partner", BigInteger.ONE, dns("api.b.com")))).isFalse();
+    }
+
+    @Test
+    void should_require_every_oid_and_together() {
+        CertificateRule rule = CertificateRule.compile("oid = '1.2.3' AND oid = '" + QWAC + "'");
+
+        assertThat(rule.matches(BANKS.issue("CN=bank", BigInteger.ONE, dns("api.a.com"), "1.2.3", QWAC))).isTrue();
+        assertThat(rule.matches(BANKS.issue("CN=bank", BigInteger.ONE, dns("api.a.com"), QWAC))).isFalse();
+        assertThat(rule.matches(BANKS.issue("CN=bank", BigInteger.ONE, dns("api.a.com")))).isFalse();
+    }
+
+    @Test
+    void should_not_match_a_subject_that_cannot_be_parsed() throws Exception {
+        // An empty RDN renders as ",CN=partner", which X500Name rejects.
+        X500Principal subject = new X500Principal(
+            new DERSequence(
+                new ASN1Encodable[] { new DERSet(), new DERSet(new AttributeTypeAndValue(BCStyle.CN, new DERUTF8String("partner"))) }
+            ).getEncoded()
+        );
+        X509Certificate certificate = mock(X509Certificate.class);
+        when(certificate.getSubjectX500Principal()).thenReturn(subject);
+
+        assertThat(CertificateRule.compile("subject = 'CN=partner'").matches(certificate)).isFalse();
+        assertThat(CertificateRule.compile("subject = 'CN=*'").matches(certificate)).isFalse();
+        assertThat(CertificateRule.compile("NOT subject = 'CN=partner'").matches(certificate)).isTrue();
+    }
+
+    @Test
+    void should_compile_identical_sub_expressions_once() {
+        CertificateRule rule = CertificateRule.compile(
+            "(issuer = 'CN=Partners CA' AND san = '*.a.com') OR (san = '*.a.com' AND issuer = 'CN=Partners CA') OR NOT NOT san = '*.a.com'"
+        );
+
+        // issuer, san, their AND and the OR.
+        assertThat(rule.size()).isEqualTo(4);
+    }
+
+    @Test
+    void should_merge_or_ed_conditions_on_the_same_attribute() {
+        CertificateRule rule = CertificateRule.compile("subject = 'CN=a' OR oid = '1.2.3' OR subject = 'CN=b' OR (subject = 'CN=c')");
+
+        // One subject allow-list, the OID and the OR.
+        assertThat(rule.size()).isEqualTo(3);
+        assertThat(rule.matches(PARTNERS.issue("CN=b", BigInteger.ONE))).isTrue();
+        assertThat(rule.matches(PARTNERS.issue("CN=d", BigInteger.ONE))).isFalse();
+    }
+
+    @ParameterizedTest
+    @ValueSource(
+        strings = {
+            "",
+            "issuer = 'CN=A' AND",
+            "issuer 'CN=A'",
+            "issuer = CN=A",
+            "serial = '1'",
+            "(issuer = 'CN=A'",
+            "issuer = 'CN=A')",
+            "san = 'unterminated",
+            "oid = 'not an oid'",
+            "issuer = 'not a DN'",
+        }
+    )
+    void should_reject_invalid_rules(String rule) {
+        assertThatThrownBy(() -> CertificateRule.compile(rule)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static GeneralNames dns(String name) {
+        return new GeneralNames(new GeneralName(GeneralName.dNSName, name));
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.sslenforcement;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigInteger;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class ChainValidatorTest {
+
+    private static final TestCertificateAuthority AUTHORITY = new TestCertificateAuthority("CN=Partners CA,O=GraviteeSource,C=FR");
+
+    private final ChainValidator validator = new ChainValidator(List.of(AUTHORITY.certificate), 100);
+
+    @Test
+    void should_accept_certificate_issued_by_a_trust_anchor() {
+        assertThat(validator.isValid(AUTHORITY.issue("CN=partner", BigInteger.TEN))).isTrue();
+    }
+
+    @Test
+    void should_accept_certificate_issued_by_a_presented_intermediate() {
+        var intermediate = new TestCertificateAuthority("CN=Partners Issuing CA,O=GraviteeSource,C=FR", AUTHORITY);
+        X509Certificate certificate = intermediate.issue("CN=partner", BigInteger.TEN);
+
+        assertThat(validator.isValid(certificate, () -> List.of(certificate, intermediate.certificate, AUTHORITY.certificate))).isTrue();
+    }
+
+    @Test
+    void should_reject_certificate_issued_by_an_intermediate_that_is_not_presented() {
+        var intermediate = new TestCertificateAuthority("CN=Partners Issuing CA,O=GraviteeSource,C=FR", AUTHORITY);
+
+        assertThat(validator.isValid(intermediate.issue("CN=partner", BigInteger.TEN))).isFalse();
+    }
+
+    @Test
+    void should_reject_certificate_issued_by_another_authority() {
+        var other = new TestCertificateAuthority("CN=Partners CA,O=GraviteeSource,C=FR");
+
+        // Same issuer name, different key: only the signature tells them apart.
+        assertThat(validator.isValid(other.issue("CN=partner", BigInteger.TEN))).isFalse();
+    }
+
+    @Test
+    void should_reject_expired_certificate() {
+        long now = System.currentTimeMillis();
+        X509Certificate expired = AUTHORITY.issue(
+            "CN=partner",
+            BigInteger.TEN,
+            new Date(now - 10 * TestCertificateAuthority.DAY_MILLIS),
+            new Date(now - TestCertificateAuthority.DAY_MILLIS)
+        );
+
+        assertThat(validator.isValid(expired)).isFalse();
+    }
+
+    @Test
+    void should_validate_each_certificate_once() {
+        X509Certificate certificate = AUTHORITY.issue("CN=partner", BigInteger.TEN);
+
+        validator.isValid(certificate);
+        validator.isValid(certificate);
+
+        assertThat(validator.stats().hits()).isEqualTo(1);
+        assertThat(validator.stats().size()).isEqualTo(1);
+    }
+
+    @Test
+    void should_not_cache_failed_validations() {
+        var other = new TestCertificateAuthority("CN=Other CA");
+        X509Certificate certificate = other.issue("CN=partner", BigInteger.TEN);
+
+        validator.isValid(certificate);
+
+        assertThat(validator.stats().size()).isZero();
+    }
+}
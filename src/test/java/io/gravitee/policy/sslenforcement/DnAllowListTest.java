@@ -0,0 +1,82 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.sslenforcement;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.security.auth.x500.X500Principal;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class DnAllowListTest {
+
+    private static final CompiledDn DUKE = observed("CN=Duke,OU=JavaSoft,O=Sun Microsystems,C=US");
+
+    @ParameterizedTest
+    @ValueSource(
+        strings = {
+            "CN=Duke,OU=JavaSoft,O=Sun Microsystems,C=US",
+            "C=US, O=Sun Microsystems, OU=JavaSoft, CN=Duke",
+            "C=US, O=Sun Microsystems, CN=Duke, OU=JavaSoft",
+            "cn=duke, ou=javasoft, o=sun  microsystems, c=us",
+        }
+    )
+    void should_match_exact_entry_whatever_the_rdn_order(String entry) {
+        assertThat(DnAllowList.compile(List.of(entry)).matches(DUKE)).isTrue();
+    }
+
+    @Test
+    void should_not_match_when_an_rdn_is_missing_or_different() {
+        var allowList = DnAllowList.compile(List.of("CN=Duke,OU=JavaSoft,C=US", "CN=Duke,OU=JavaSoft,O=Oracle,C=US"));
+
+        assertThat(allowList.matches(DUKE)).isFalse();
+    }
+
+    @Test
+    void should_fall_back_to_pattern_entries() {
+        var allowList = DnAllowList.compile(List.of("CN=Someone,C=FR", "CN=Duke,OU=JavaSoft,O=Sun*,C=??"));
+
+        assertThat(allowList.matches(DUKE)).isTrue();
+        assertThat(allowList.matches(observed("CN=Duke,OU=JavaSoft,O=Oracle,C=US"))).isFalse();
+    }
+
+    @Test
+    void should_find_exact_entry_in_a_large_list() {
+        List<String> entries = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            entries.add("CN=partner-" + i + ",O=GraviteeSource,C=FR");
+        }
+        var allowList = DnAllowList.compile(entries);
+
+        assertThat(allowList.size()).isEqualTo(20_000);
+        assertThat(allowList.matches(observed("C=FR,O=GraviteeSource,CN=partner-12345"))).isTrue();
+        assertThat(allowList.matches(observed("C=FR,O=GraviteeSource,CN=partner-20000"))).isFalse();
+    }
+
+    @Test
+    void should_be_empty_when_not_configured() {
+        assertThat(DnAllowList.compile(null).isEmpty()).isTrue();
+        assertThat(DnAllowList.compile(List.of()).isEmpty()).isTrue();
+    }
+
+    private static CompiledDn observed(String dn) {
+        return CompiledDn.of(new X500Name(new X500Principal(dn).getName()));
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.sslenforcement;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.gravitee.common.http.HttpStatusCode;
+import io.gravitee.policy.sslenforcement.metrics.Stage;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class EnforcementPipelineTest {
+
+    private static final Verdict REJECTED = Verdict.deny("REJECTED", HttpStatusCode.FORBIDDEN_403, "Rejected");
+
+    @Test
+    void should_run_cheapest_steps_first() {
+        EnforcementPipeline<Void, Void> pipeline = new EnforcementPipeline<>(
+            List.of(
+                step(Stage.CHAIN_VALIDATION, 50_000, Verdict.ALLOW),
+                step(Stage.REVOCATION, 200, Verdict.ALLOW),
+                step(Stage.CLIENT_DN, 2_000, Verdict.ALLOW)
+            ),
+            false
+        );
+
+        assertThat(pipeline.order()).containsExactly(Stage.REVOCATION, Stage.CLIENT_DN, Stage.CHAIN_VALIDATION);
+    }
+
+    @Test
+    void should_stop_at_first_rejection() {
+        AtomicInteger expensiveRuns = new AtomicInteger();
+        EnforcementPipeline<Void, Void> pipeline = new EnforcementPipeline<>(
+            List.of(
+                step(Stage.POLICY_OIDS, 300, REJECTED),
+                new EnforcementPipeline.Step<>(Stage.CHAIN_VALIDATION, 50_000, (certificate, lists) -> {
+                    expensiveRuns.incrementAndGet();
+                    return Verdict.ALLOW;
+                })
+            ),
+            false
+        );
+
+        assertThat(pipeline.evaluate(null, null, null)).isSameAs(REJECTED);
+        assertThat(expensiveRuns).hasValue(0);
+    }
+
+    @Test
+    void should_move_rejecting_step_first_when_adaptive() {
+        EnforcementPipeline<Void, Void> pipeline = new EnforcementPipeline<>(
+            List.of(
+                step(Stage.REVOCATION, 200, Verdict.ALLOW),
+                step(Stage.POLICY_OIDS, 300, Verdict.ALLOW),
+                step(Stage.CLIENT_DN, 2_000, REJECTED)
+            ),
+            true
+        );
+
+        // Reordering is sampled: the odds of no reordering in this many evaluations are about e^-16.
+        for (int i = 0; i < 16 * EnforcementPipeline.REORDER_INTERVAL && pipeline.order().get(0) != Stage.CLIENT_DN; i++) {
+            assertThat(pipeline.evaluate(null, null, null)).isSameAs(REJECTED);
+        }
+
+        assertThat(pipeline.order()).startsWith(Stage.CLIENT_DN);
+    }
+
+    @Test
+    void should_keep_estimated_order_when_not_adaptive() {
+        EnforcementPipeline<Void, Void> pipeline = new EnforcementPipeline<>(
+            List.of(step(Stage.REVOCATION, 200, Verdict.ALLOW), step(Stage.CLIENT_DN, 2_000, REJECTED)),
+            false
+        );
+
+        for (int i = 0; i < 2 * EnforcementPipeline.REORDER_INTERVAL; i++) {
+            pipeline.evaluate(null, null, null);
+        }
+
+        assertThat(pipeline.order()).containsExactly(Stage.REVOCATION, Stage.CLIENT_DN);
+    }
+
+    private static EnforcementPipeline.Step<Void, Void> step(Stage stage, long estimatedCostNanos, Verdict verdict) {
+        return new EnforcementPipeline.Step<>(stage, estimatedCostNanos, (certificate, lists) -> verdict);
+    }
+}
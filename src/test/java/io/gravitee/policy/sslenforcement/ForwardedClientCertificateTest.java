@@ -0,0 +1,92 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.sslenforcement;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+class ForwardedClientCertificateTest {
+
+    private static final String HASH = "468ed33be74eee6556d90c0149c1309e9ba61d6425303443c0748a02dd8de688";
+
+    @Test
+    void should_read_the_fields_of_the_last_element() {
+        ForwardedClientCertificate forwarded = ForwardedClientCertificate.parse(
+            "By=spiffe://edge;Hash=0000;Subject=\"CN=edge client\";URI=spiffe://edge/client," +
+            "By=spiffe://mesh;Hash=" +
+            HASH +
+            ";Cert=\"-----BEGIN%20CERTIFICATE-----%0AMIIB-----END%20CERTIFICATE-----%0A\"" +
+            ";Subject=\"CN=Test Client,OU=Lyft,O=Lyft\";URI=spiffe://lyft.com/test-team;DNS=test.lyft.com"
+        );
+
+        assertThat(forwarded.hash()).isEqualTo(HASH);
+        assertThat(forwarded.digest()).hasSize(32).startsWith((byte) 0x46, (byte) 0x8e);
+        assertThat(forwarded.certificate()).isEqualTo("-----BEGIN%20CERTIFICATE-----%0AMIIB-----END%20CERTIFICATE-----%0A");
+        assertThat(forwarded.subject()).isEqualTo("CN=Test Client,OU=Lyft,O=Lyft");
+        assertThat(forwarded.names()).containsExactly("spiffe://lyft.com/test-team", "test.lyft.com");
+    }
+
+    @Test
+    void should_unescape_quoted_values() {
+        ForwardedClientCertificate forwarded = ForwardedClientCertificate.parse(
+            "hash=" + HASH + "; subject = \"CN=Doe\\\\, John;O=\\\"Acme\\\"\" ; uri=spiffe://acme/john"
+        );
+
+        assertThat(forwarded.subject()).isEqualTo("CN=Doe\\, John;O=\"Acme\"");
+        assertThat(forwarded.names()).containsExactly("spiffe://acme/john");
+    }
+
+    @Test
+    void should_convert_openssl_one_line_subjects_to_rfc2253() {
+        ForwardedClientCertificate forwarded = ForwardedClientCertificate.parse(
+            "Subject=\"/C=US/ST=CA/L=San Francisco/OU=Lyft/O=Lyft, Inc./CN=Test Client\""
+        );
+
+        assertThat(forwarded.subject()).isEqualTo("CN=Test Client,O=Lyft\\, Inc.,OU=Lyft,L=San Francisco,ST=CA,C=US");
+    }
+
+    @Test
+    void should_read_the_leaf_from_the_chain_without_cert() {
+        ForwardedClientCertificate forwarded = ForwardedClientCertificate.parse("Hash=" + HASH + ";Chain=\"leaf%0Aintermediate\"");
+
+        assertThat(forwarded.certificate()).isEqualTo("leaf%0Aintermediate");
+        assertThat(forwarded.chain()).isEqualTo("leaf%0Aintermediate");
+        assertThat(forwarded.subject()).isNull();
+        assertThat(forwarded.names()).isEmpty();
+    }
+
+    @Test
+    void should_not_decode_an_invalid_hash() {
+        assertThat(ForwardedClientCertificate.parse("Hash=zz" + HASH.substring(2)).digest()).isNull();
+        assertThat(ForwardedClientCertificate.parse("Hash=" + HASH.substring(2)).digest()).isNull();
+    }
+
+    @Test
+    void should_return_null_without_client_certificate_details() {
+        assertThat(ForwardedClientCertificate.parse("By=spiffe://mesh")).isNull();
+        assertThat(ForwardedClientCertificate.parse("")).isNull();
+        assertThat(ForwardedClientCertificate.parse("Hash=" + HASH + ",By=spiffe://mesh")).isNull();
+    }
+
+    @Test
+    void should_skip_valueless_parameters() {
+        ForwardedClientCertificate forwarded = ForwardedClientCertificate.parse("x;".repeat(200_000) + "Hash;URI=spiffe://mesh/client");
+
+        assertThat(forwarded.hash()).isNull();
+        assertThat(forwarded.names()).containsExactly("spiffe://mesh/client");
+    }
+}
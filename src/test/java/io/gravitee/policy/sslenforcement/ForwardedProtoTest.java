@@ -0,0 +1,77 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.sslenforcement;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+class ForwardedProtoTest {
+
+    @ParameterizedTest
+    @CsvSource(
+        delimiter = '|',
+        value = {
+            "proto=https | 0 | true",
+            "PROTO=HTTPS | 0 | true",
+            "for=192.0.2.60;proto=https;by=203.0.113.43 | 0 | true",
+            "for=192.0.2.60; proto = https | 0 | true",
+            "proto=\"https\" | 0 | true",
+            "proto=\"ht\\tps\" | 0 | true",
+            "xproto=https | 0 | false",
+            "secure;proto=https | 0 | true",
+            "proto;for=https | 0 | false",
+            "proto=https2 | 0 | false",
+            "proto=http | 0 | false",
+            "for=\"[2001:db8::1]:4711,proto=https\" | 0 | false",
+            "proto=http, proto=https | 0 | true",
+            "proto=https, proto=http | 1 | false",
+            "proto=http, proto=https | 1 | true",
+            "proto=https, proto=http, proto=http | 3 | true",
+            "proto=https, proto=http | 5 | true",
+            "for=\"a,b\";proto=https, for=c;proto=http | 2 | true",
+        }
+    )
+    void should_read_forwarded_proto(String header, int trustedHops, boolean expected) {
+        assertThat(ForwardedProto.forwardedIsHttps(header, trustedHops)).isEqualTo(expected);
+    }
+
+    @ParameterizedTest
+    @CsvSource(
+        delimiter = '|',
+        value = {
+            "https | 0 | true",
+            "' HTTPS ' | 0 | true",
+            "http | 0 | false",
+            "'https, http' | 0 | false",
+            "'https, http' | 1 | false",
+            "'http, https' | 1 | true",
+            "'https, http' | 2 | true",
+        }
+    )
+    void should_read_x_forwarded_proto(String header, int trustedHops, boolean expected) {
+        assertThat(ForwardedProto.xForwardedProtoIsHttps(header, trustedHops)).isEqualTo(expected);
+    }
+
+    @Test
+    void should_read_a_long_run_of_valueless_parameters() {
+        String header = "x;".repeat(200_000) + "proto=https";
+
+        assertThat(ForwardedProto.forwardedIsHttps(header, 0)).isTrue();
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.sslenforcement;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class LocalFileWatcherTest {
+
+    @Test
+    @SneakyThrows
+    void should_notify_when_a_config_map_link_is_swapped(@TempDir Path directory) {
+        // Layout of a mounted Kubernetes ConfigMap: file -> ..data/file, ..data -> ..<timestamp>.
+        Files.createDirectory(directory.resolve("..2024_01"));
+        Files.writeString(directory.resolve("..2024_01/partners.txt"), "CN=partner\n");
+        Files.createSymbolicLink(directory.resolve("..data"), Path.of("..2024_01"));
+        Path file = Files.createSymbolicLink(directory.resolve("partners.txt"), Path.of("..data/partners.txt"));
+        AtomicInteger reloads = new AtomicInteger();
+        Runnable unwatch = LocalFileWatcher.watch(file, reloads, AtomicInteger::incrementAndGet);
+
+        Files.createDirectory(directory.resolve("..2024_02"));
+        Files.writeString(directory.resolve("..2024_02/partners.txt"), "CN=partner\nCN=Duke\n");
+        Files.createSymbolicLink(directory.resolve("..data_tmp"), Path.of("..2024_02"));
+        Files.move(directory.resolve("..data_tmp"), directory.resolve("..data"), StandardCopyOption.ATOMIC_MOVE);
+
+        assertThat(await(() -> reloads.get() > 0)).isTrue();
+        assertThat(LocalFileWatcher.watchedDirectories()).contains(directory.toRealPath().resolve("..2024_02"));
+        unwatch.run();
+    }
+
+    @Test
+    @SneakyThrows
+    void should_unwatch_directories_once_their_last_file_is_unwatched(@TempDir Path directory) {
+        Path first = Files.writeString(directory.resolve("first.txt"), "CN=first\n");
+        Path second = Files.writeString(directory.resolve("second.txt"), "CN=second\n");
+        AtomicInteger reloads = new AtomicInteger();
+        Runnable unwatchFirst = LocalFileWatcher.watch(first, reloads, AtomicInteger::incrementAndGet);
+        Runnable unwatchSecond = LocalFileWatcher.watch(second, reloads, AtomicInteger::incrementAndGet);
+
+        unwatchFirst.run();
+        unwatchFirst.run();
+
+        assertThat(LocalFileWatcher.watchedDirectories()).contains(directory.toRealPath());
+
+        unwatchSecond.run();
+
+        assertThat(LocalFileWatcher.watchedDirectories()).doesNotContain(directory.toRealPath());
+        Files.writeString(first, "CN=changed\n");
+        Thread.sleep(2 * LocalFileWatcher.QUIET_PERIOD_MILLIS);
+        assertThat(reloads).hasValue(0);
+    }
+
+    @Test
+    @SneakyThrows
+    void should_watch_a_new_file_while_the_directory_of_another_one_is_gone(@TempDir Path directory) {
+        Path gone = Files.createDirectory(directory.resolve("gone")).toRealPath();
+        Path kept = Files.createDirectory(directory.resolve("kept")).toRealPath();
+        Path goneFile = Files.writeString(gone.resolve("partners.txt"), "CN=partner\n");
+        Path keptFile = Files.writeString(kept.resolve("partners.txt"), "CN=partner\n");
+        AtomicInteger reloads = new AtomicInteger();
+        Runnable unwatchGone = LocalFileWatcher.watch(goneFile, reloads, AtomicInteger::incrementAndGet);
+
+        Files.delete(goneFile);
+        Files.delete(gone);
+        assertThat(await(() -> !LocalFileWatcher.watchedDirectories().contains(gone))).isTrue();
+        Runnable unwatchKept = LocalFileWatcher.watch(keptFile, reloads, AtomicInteger::incrementAndGet);
+
+        assertThat(LocalFileWatcher.watchedDirectories()).contains(kept);
+        unwatchGone.run();
+        unwatchKept.run();
+    }
+
+    @SneakyThrows
+    private static boolean await(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+        }
+        return condition.getAsBoolean();
+    }
+}
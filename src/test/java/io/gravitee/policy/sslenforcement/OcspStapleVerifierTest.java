@@ -0,0 +1,183 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.sslenforcement;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.gravitee.policy.sslenforcement.OcspStapleVerifier.Status;
+import java.math.BigInteger;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.net.ssl.SSLSession;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.ocsp.CertificateStatus;
+import org.bouncycastle.cert.ocsp.RespID;
+import org.bouncycastle.cert.ocsp.UnknownStatus;
+import org.junit.jupiter.api.Test;
+
+class OcspStapleVerifierTest {
+
+    private static final BigInteger SERIAL = new BigInteger("1234567890abcdef", 16);
+
+    private static final TestCertificateAuthority AUTHORITY = new TestCertificateAuthority("CN=Partners CA,O=GraviteeSource,C=FR");
+
+    private static final X509Certificate CLIENT = AUTHORITY.issue("CN=partner", SERIAL);
+
+    private static final X509Certificate[] CHAIN = { CLIENT, AUTHORITY.certificate };
+
+    private final OcspStapleVerifier verifier = new OcspStapleVerifier(List.of(), 100);
+
+    @Test
+    void should_report_good_status_signed_by_the_issuer() {
+        assertThat(verifier.verify(CHAIN, List.of(AUTHORITY.goodResponse(SERIAL)))).isEqualTo(Status.GOOD);
+    }
+
+    @Test
+    void should_report_revoked_status() {
+        assertThat(verifier.verify(CHAIN, List.of(AUTHORITY.revokedResponse(SERIAL)))).isEqualTo(Status.REVOKED);
+    }
+
+    @Test
+    void should_report_unknown_status() {
+        byte[] response = AUTHORITY.response(SERIAL, new UnknownStatus(), TestCertificateAuthority.tomorrow(), AUTHORITY.asResponder());
+
+        assertThat(verifier.verify(CHAIN, List.of(response))).isEqualTo(Status.UNKNOWN);
+    }
+
+    @Test
+    void should_report_missing_response() {
+        assertThat(verifier.verify(CHAIN, List.of())).isEqualTo(Status.MISSING);
+        assertThat(verifier.verify(CHAIN, List.of(new byte[0]))).isEqualTo(Status.MISSING);
+    }
+
+    @Test
+    void should_reject_response_signed_by_another_authority() {
+        TestCertificateAuthority other = new TestCertificateAuthority("CN=Other CA");
+        byte[] response = AUTHORITY.response(SERIAL, CertificateStatus.GOOD, TestCertificateAuthority.tomorrow(), other.asResponder());
+
+        assertThat(verifier.verify(CHAIN, List.of(response))).isEqualTo(Status.INVALID);
+    }
+
+    @Test
+    void should_trust_configured_offline_responder() {
+        TestCertificateAuthority offline = new TestCertificateAuthority("CN=Offline Responder");
+        byte[] response = AUTHORITY.response(SERIAL, CertificateStatus.GOOD, TestCertificateAuthority.tomorrow(), offline.asResponder());
+
+        var trusting = new OcspStapleVerifier(List.of(offline.certificate), 100);
+
+        assertThat(trusting.verify(CHAIN, List.of(response))).isEqualTo(Status.GOOD);
+        // The issuer is not even needed in the chain: the authority key identifier stands for its key hash.
+        assertThat(new OcspStapleVerifier(List.of(offline.certificate), 100).verify(new X509Certificate[] { CLIENT }, List.of(response)))
+            .isEqualTo(Status.GOOD);
+    }
+
+    @Test
+    void should_trust_delegated_responder_issued_by_the_issuer() {
+        byte[] response = AUTHORITY.response(SERIAL, CertificateStatus.GOOD, TestCertificateAuthority.tomorrow(), AUTHORITY.issueResponder(true));
+
+        assertThat(verifier.verify(CHAIN, List.of(response))).isEqualTo(Status.GOOD);
+    }
+
+    @Test
+    void should_reject_delegated_responder_not_named_by_the_response() {
+        byte[] response = AUTHORITY.response(
+            SERIAL,
+            CertificateStatus.GOOD,
+            TestCertificateAuthority.tomorrow(),
+            AUTHORITY.issueResponder(true),
+            new RespID(new X500Name("CN=Another Responder"))
+        );
+
+        assertThat(verifier.verify(CHAIN, List.of(response))).isEqualTo(Status.INVALID);
+    }
+
+    @Test
+    void should_trust_delegated_responder_named_by_subject() {
+        TestCertificateAuthority.Responder responder = AUTHORITY.issueResponder(true);
+        byte[] response = AUTHORITY.response(
+            SERIAL,
+            CertificateStatus.GOOD,
+            TestCertificateAuthority.tomorrow(),
+            responder,
+            new RespID(X500Name.getInstance(responder.certificate().getSubjectX500Principal().getEncoded()))
+        );
+
+        assertThat(verifier.verify(CHAIN, List.of(response))).isEqualTo(Status.GOOD);
+    }
+
+    @Test
+    void should_reject_delegated_responder_without_ocsp_signing_usage() {
+        byte[] response = AUTHORITY.response(SERIAL, CertificateStatus.GOOD, TestCertificateAuthority.tomorrow(), AUTHORITY.issueResponder(false));
+
+        assertThat(verifier.verify(CHAIN, List.of(response))).isEqualTo(Status.INVALID);
+    }
+
+    @Test
+    void should_reject_expired_response() {
+        Date yesterday = new Date(System.currentTimeMillis() - TestCertificateAuthority.DAY_MILLIS);
+        byte[] response = AUTHORITY.response(SERIAL, CertificateStatus.GOOD, yesterday, AUTHORITY.asResponder());
+
+        assertThat(verifier.verify(CHAIN, List.of(response))).isEqualTo(Status.INVALID);
+    }
+
+    @Test
+    void should_reject_response_about_another_certificate() {
+        assertThat(verifier.verify(CHAIN, List.of(AUTHORITY.goodResponse(BigInteger.TEN)))).isEqualTo(Status.INVALID);
+    }
+
+    @Test
+    void should_reject_malformed_response() {
+        assertThat(verifier.verify(CHAIN, List.of(new byte[] { 0x30, 0x03, 0x0a, 0x01 }))).isEqualTo(Status.INVALID);
+    }
+
+    @Test
+    void should_serve_verified_status_from_cache_until_next_update() {
+        verifier.verify(CHAIN, List.of(AUTHORITY.revokedResponse(SERIAL)));
+
+        // A later, even unparseable, staple is not looked at until the cached response reaches its nextUpdate.
+        assertThat(verifier.verify(CHAIN, List.of(new byte[] { 1, 2, 3 }))).isEqualTo(Status.REVOKED);
+        assertThat(verifier.stats().hits()).isEqualTo(1);
+    }
+
+    @Test
+    void should_find_verified_status_from_the_session_alone() {
+        Map<String, Object> values = new HashMap<>();
+        SSLSession session = mock(SSLSession.class);
+        when(session.getValue(anyString())).thenAnswer(invocation -> values.get(invocation.<String>getArgument(0)));
+        doAnswer(invocation -> values.put(invocation.getArgument(0), invocation.getArgument(1))).when(session).putValue(anyString(), any());
+
+        assertThat(verifier.cachedStatus(session)).isNull();
+        verifier.verify(CHAIN, List.of(AUTHORITY.goodResponse(SERIAL)), session);
+
+        assertThat(verifier.cachedStatus(session)).isEqualTo(Status.GOOD);
+        assertThat(verifier.cachedStatus(mock(SSLSession.class))).isNull();
+    }
+
+    @Test
+    void should_not_cache_invalid_responses() {
+        verifier.verify(CHAIN, List.of(new byte[] { 1, 2, 3 }));
+
+        assertThat(verifier.verify(CHAIN, List.of(AUTHORITY.goodResponse(SERIAL)))).isEqualTo(Status.GOOD);
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.sslenforcement;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import io.gravitee.policy.sslenforcement.configuration.FingerprintType;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class PinnedFingerprintsTest {
+
+    private static final TestCertificateAuthority AUTHORITY = new TestCertificateAuthority("CN=Partners CA,O=GraviteeSource,C=FR");
+
+    @Test
+    void should_hold_thousands_of_fingerprints() {
+        Random random = new Random(42);
+        List<byte[]> digests = new ArrayList<>();
+        List<String> fingerprints = new ArrayList<>();
+        for (int i = 0; i < 5_000; i++) {
+            byte[] digest = new byte[32];
+            random.nextBytes(digest);
+            digests.add(digest);
+            fingerprints.add(HexFormat.of().formatHex(digest));
+        }
+        PinnedFingerprints pinned = PinnedFingerprints.compile(fingerprints);
+
+        assertThat(pinned.size()).isEqualTo(5_000);
+        assertThat(digests).allMatch(pinned::contains);
+        for (int i = 0; i < 1_000; i++) {
+            byte[] other = new byte[32];
+            random.nextBytes(other);
+            assertThat(pinned.contains(other)).isFalse();
+        }
+    }
+
+    @Test
+    @SneakyThrows
+    void should_match_certificate_fingerprint_in_openssl_format() {
+        X509Certificate certificate = AUTHORITY.issue("CN=partner", BigInteger.TEN);
+        String openssl = HexFormat.ofDelimiter(":").withUpperCase().formatHex(sha256(certificate.getEncoded()));
+
+        PinnedFingerprints pinned = PinnedFingerprints.compile(List.of(openssl));
+
+        assertThat(pinned.matches(certificate, FingerprintType.CERTIFICATE)).isTrue();
+        assertThat(pinned.matches(certificate, FingerprintType.PUBLIC_KEY)).isFalse();
+        assertThat(pinned.matches(AUTHORITY.issue("CN=partner", BigInteger.TWO), FingerprintType.CERTIFICATE)).isFalse();
+    }
+
+    @Test
+    void should_match_public_key_fingerprint() {
+        X509Certificate certificate = AUTHORITY.issue("CN=partner", BigInteger.TEN);
+
+        PinnedFingerprints pinned = PinnedFingerprints.compile(
+            List.of(HexFormat.of().formatHex(sha256(certificate.getPublicKey().getEncoded())))
+        );
+
+        assertThat(pinned.matches(certificate, FingerprintType.PUBLIC_KEY)).isTrue();
+        assertThat(PinnedFingerprints.fingerprintOf(certificate, FingerprintType.PUBLIC_KEY)).isEqualTo(
+            HexFormat.of().formatHex(sha256(certificate.getPublicKey().getEncoded()))
+        );
+    }
+
+    @Test
+    void should_count_duplicate_fingerprints_once() {
+        String fingerprint = "ab".repeat(32);
+
+        assertThat(PinnedFingerprints.compile(List.of(fingerprint, fingerprint.toUpperCase())).size()).isEqualTo(1);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = { "abcd", "zz00000000000000000000000000000000000000000000000000000000000000", "" })
+    void should_reject_malformed_fingerprint(String fingerprint) {
+        assertThatThrownBy(() -> PinnedFingerprints.compile(List.of(fingerprint))).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void should_reject_all_zero_fingerprint() {
+        assertThatThrownBy(() -> PinnedFingerprints.compile(List.of("00".repeat(32)))).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @SneakyThrows
+    private static byte[] sha256(byte[] bytes) {
+        return MessageDigest.getInstance("SHA-256").digest(bytes);
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.sslenforcement;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.gravitee.common.http.HttpStatusCode;
+import java.time.Duration;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class RejectionCacheTest {
+
+    private static final Verdict REJECTED = Verdict.deny("REJECTED", HttpStatusCode.FORBIDDEN_403, "Rejected");
+
+    private static final CertificateFingerprint FIRST = CertificateFingerprint.of(new byte[] { 1 });
+
+    private static final CertificateFingerprint SECOND = CertificateFingerprint.of(new byte[] { 2 });
+
+    private final RejectionCache cache = new RejectionCache(100, Duration.ofMinutes(1));
+
+    @Test
+    void should_serve_the_cached_rejection() {
+        cache.put(FIRST, REJECTED, 0);
+
+        assertThat(cache.get(FIRST, 0)).isSameAs(REJECTED);
+        assertThat(cache.get(SECOND, 0)).isNull();
+    }
+
+    @Test
+    void should_ignore_rejections_of_previous_generations() {
+        cache.put(FIRST, REJECTED, 0);
+
+        assertThat(cache.get(FIRST, 1)).isNull();
+    }
+
+    @Test
+    void should_count_hits_per_certificate() {
+        cache.put(FIRST, REJECTED, 0);
+        cache.put(SECOND, REJECTED, 0);
+        for (int i = 0; i < 3; i++) {
+            cache.get(SECOND, 0);
+        }
+        cache.get(FIRST, 0);
+
+        assertThat(cache.mostHit(10)).containsExactly(entry(SECOND, 3L), entry(FIRST, 1L));
+        assertThat(cache.mostHit(1)).containsOnlyKeys(SECOND.toString());
+    }
+
+    private static Map.Entry<String, Long> entry(CertificateFingerprint fingerprint, long hits) {
+        return Map.entry(fingerprint.toString(), hits);
+    }
+}
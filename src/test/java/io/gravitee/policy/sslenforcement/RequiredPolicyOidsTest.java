@@ -0,0 +1,101 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.sslenforcement;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import lombok.SneakyThrows;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.DERSequence;
+import org.bouncycastle.asn1.x509.CertificatePolicies;
+import org.bouncycastle.asn1.x509.PolicyInformation;
+import org.bouncycastle.asn1.x509.PolicyQualifierInfo;
+import org.junit.jupiter.api.Test;
+
+class RequiredPolicyOidsTest {
+
+    private static final String QWAC = "0.4.0.19495.1.3";
+
+    private static final String ANY_POLICY = "2.5.29.32.0";
+
+    @Test
+    void should_find_every_required_oid() {
+        var required = RequiredPolicyOids.compile(List.of(QWAC, ANY_POLICY));
+
+        assertThat(required.areAllPresentIn(extension("1.3.6.1.4.1.311.21.1", ANY_POLICY, QWAC))).isTrue();
+        assertThat(required.areAllPresentIn(extension(QWAC))).isFalse();
+    }
+
+    @Test
+    void should_not_match_an_oid_that_only_shares_a_prefix() {
+        var required = RequiredPolicyOids.compile(List.of("1.2.3.4"));
+
+        assertThat(required.areAllPresentIn(extension("1.2.3.45", "1.2.3"))).isFalse();
+    }
+
+    @Test
+    @SneakyThrows
+    void should_skip_policy_qualifiers() {
+        var withQualifier = new PolicyInformation(
+            new ASN1ObjectIdentifier("1.3.6.1.4.1.99.1"),
+            new DERSequence(new PolicyQualifierInfo("https://pki.example.com/cps"))
+        );
+        var qwac = new PolicyInformation(new ASN1ObjectIdentifier(QWAC));
+        byte[] der = new DEROctetString(new CertificatePolicies(new PolicyInformation[] { withQualifier, qwac })).getEncoded();
+
+        assertThat(RequiredPolicyOids.compile(List.of(QWAC)).areAllPresentIn(der)).isTrue();
+    }
+
+    @Test
+    void should_track_more_than_64_required_oids() {
+        List<String> oids = new ArrayList<>();
+        for (int i = 0; i < 70; i++) {
+            oids.add("1.3.6.1.4.1.99." + i);
+        }
+        var required = RequiredPolicyOids.compile(oids);
+
+        assertThat(required.areAllPresentIn(extension(oids.toArray(new String[0])))).isTrue();
+        assertThat(required.areAllPresentIn(extension(oids.subList(0, 69).toArray(new String[0])))).isFalse();
+    }
+
+    @Test
+    void should_reject_malformed_extension() {
+        var required = RequiredPolicyOids.compile(List.of(QWAC));
+        byte[] der = extension(QWAC);
+
+        assertThat(required.areAllPresentIn(Arrays.copyOf(der, der.length - 1))).isFalse();
+        assertThat(required.areAllPresentIn(new byte[] { 0x04, 0x00 })).isFalse();
+    }
+
+    @Test
+    void should_fail_fast_on_invalid_oid() {
+        assertThatThrownBy(() -> RequiredPolicyOids.compile(List.of("not.an.oid"))).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @SneakyThrows
+    private static byte[] extension(String... oids) {
+        PolicyInformation[] policies = new PolicyInformation[oids.length];
+        for (int i = 0; i < oids.length; i++) {
+            policies[i] = new PolicyInformation(new ASN1ObjectIdentifier(oids[i]));
+        }
+        return new DEROctetString(new CertificatePolicies(policies)).getEncoded();
+    }
+}
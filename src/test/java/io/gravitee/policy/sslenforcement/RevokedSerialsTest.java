@@ -0,0 +1,76 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.sslenforcement;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class RevokedSerialsTest {
+
+    @Test
+    void should_find_every_revoked_serial_among_a_large_crl() {
+        Random random = new Random(42);
+        List<BigInteger> serials = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++) {
+            // RFC 5280 serials: positive, up to 20 octets.
+            serials.add(new BigInteger(159, random));
+        }
+        RevokedSerials revoked = RevokedSerials.of(serials);
+
+        assertThat(revoked.size()).isEqualTo(serials.size());
+        assertThat(serials).allMatch(revoked::contains);
+        for (int i = 0; i < 1_000; i++) {
+            BigInteger other = new BigInteger(159, random);
+            assertThat(revoked.contains(other)).isEqualTo(serials.contains(other));
+        }
+    }
+
+    @Test
+    void should_compare_high_bits_of_serials_sharing_their_low_bits() {
+        BigInteger lowBits = new BigInteger("123456789abcdef0", 16);
+        BigInteger first = lowBits.or(BigInteger.ONE.shiftLeft(64));
+        BigInteger second = lowBits.or(BigInteger.ONE.shiftLeft(130));
+        RevokedSerials revoked = RevokedSerials.of(List.of(BigInteger.TEN, second, first, BigInteger.TWO));
+
+        assertThat(revoked.contains(first)).isTrue();
+        assertThat(revoked.contains(second)).isTrue();
+        assertThat(revoked.contains(lowBits)).isFalse();
+        assertThat(revoked.contains(lowBits.or(BigInteger.ONE.shiftLeft(65)))).isFalse();
+    }
+
+    @Test
+    void should_keep_serials_that_do_not_fit_in_192_bits() {
+        BigInteger negative = BigInteger.valueOf(-5);
+        BigInteger oversized = BigInteger.ONE.shiftLeft(200).add(BigInteger.TEN);
+        RevokedSerials revoked = RevokedSerials.of(List.of(negative, oversized, BigInteger.ONE));
+
+        assertThat(revoked.size()).isEqualTo(3);
+        assertThat(revoked.contains(negative)).isTrue();
+        assertThat(revoked.contains(oversized)).isTrue();
+        assertThat(revoked.contains(BigInteger.TEN)).isFalse();
+        assertThat(revoked.contains(BigInteger.valueOf(5))).isFalse();
+    }
+
+    @Test
+    void should_contain_nothing_when_empty() {
+        assertThat(RevokedSerials.of(List.of()).contains(BigInteger.ONE)).isFalse();
+    }
+}
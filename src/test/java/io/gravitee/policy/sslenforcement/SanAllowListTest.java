@@ -0,0 +1,89 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.sslenforcement;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigInteger;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+class SanAllowListTest {
+
+    private static final SanAllowList ALLOW_LIST = SanAllowList.compile(
+        List.of("*.partner-x.example.com", "*@mail.example.org", "literal.example.net", "https://example.com/service", "billing-*")
+    );
+
+    @ParameterizedTest
+    @CsvSource(
+        {
+            "api.partner-x.example.com, true",
+            "a.b.partner-x.example.com, true",
+            "API.Partner-X.Example.COM, true",
+            "partner-x.example.com, false",
+            "api.partner-y.example.com, false",
+            "alice@mail.example.org, true",
+            "alice@other.example.org, false",
+            "literal.example.net, true",
+            "LITERAL.example.net, true",
+            "sub.literal.example.net, false",
+            "https://example.com/service, true",
+            "https://api.partner-x.example.com, false",
+            "billing-eu, true",
+            "invoicing-eu, false",
+        }
+    )
+    void should_match_like_ant_patterns(String sanValue, boolean expected) {
+        assertThat(ALLOW_LIST.matches(sanValue)).isEqualTo(expected);
+    }
+
+    @ParameterizedTest
+    @CsvSource(
+        delimiter = '|',
+        value = {
+            "CN=partner, O=Example, C=FR | true",
+            "cn=Partner,o=example,c=fr | true",
+            "C=FR, O=Example, CN=partner | false",
+            "CN=partner, O=Other, C=FR | false",
+        }
+    )
+    void should_match_directory_names_as_distinguished_names(String entry, boolean expected) {
+        X509Certificate certificate = new TestCertificateAuthority("CN=SAN CA").issue(
+            "CN=partner",
+            BigInteger.ONE,
+            new GeneralNames(new GeneralName(GeneralName.directoryName, new X500Name("C=FR,O=Example,CN=partner")))
+        );
+
+        assertThat(SanAllowList.compile(List.of(entry)).matchesAny(SubjectAlternativeNames.of(certificate))).isEqualTo(expected);
+    }
+
+    @ParameterizedTest
+    @CsvSource({ "api.partner-42.example.com, true", "api.partner-500.example.com, false" })
+    void should_index_hundreds_of_domain_wildcards(String sanValue, boolean expected) {
+        List<String> patterns = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            patterns.add("*.partner-" + i + ".example.com");
+        }
+
+        assertThat(SanAllowList.compile(patterns).matches(sanValue)).isEqualTo(expected);
+    }
+}
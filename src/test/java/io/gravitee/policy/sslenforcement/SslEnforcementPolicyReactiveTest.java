@@ -0,0 +1,199 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.sslenforcement;
+
+import static java.util.Objects.requireNonNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.gravitee.gateway.api.http.HttpHeaders;
+import io.gravitee.gateway.reactive.api.ExecutionFailure;
+import io.gravitee.gateway.reactive.api.context.HttpExecutionContext;
+import io.gravitee.gateway.reactive.api.context.HttpRequest;
+import io.gravitee.policy.sslenforcement.configuration.CertificateLocation;
+import io.gravitee.policy.sslenforcement.configuration.SslEnforcementPolicyConfiguration;
+import io.reactivex.rxjava3.core.Completable;
+import io.vertx.core.Vertx;
+import java.io.InputStream;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.net.ssl.SSLSession;
+import lombok.SneakyThrows;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class SslEnforcementPolicyReactiveTest {
+
+    private static final String DUKE = "CN=Duke,OU=JavaSoft,O=Sun Microsystems,C=US";
+
+    @Mock
+    private HttpExecutionContext ctx;
+
+    @Mock
+    private HttpRequest request;
+
+    @Mock
+    private SSLSession sslSession;
+
+    @Captor
+    private ArgumentCaptor<ExecutionFailure> failureCaptor;
+
+    @BeforeEach
+    void init() {
+        when(ctx.request()).thenReturn(request);
+        lenient().when(ctx.interruptWith(any())).thenReturn(Completable.error(new IllegalStateException("interrupted")));
+    }
+
+    @Test
+    @SneakyThrows
+    void should_complete_when_session_certificate_is_allowed() {
+        when(request.sslSession()).thenReturn(sslSession);
+        when(sslSession.getPeerCertificates()).thenReturn(new Certificate[] { loadX509Certificate() });
+        var configuration = SslEnforcementPolicyConfiguration.builder()
+            .requiresSsl(true)
+            .requiresClientAuthentication(true)
+            .whitelistClientCertificates(Collections.singletonList(DUKE))
+            .build();
+
+        new SslEnforcementPolicy(configuration).onRequest(ctx).test().assertComplete();
+
+        verify(ctx, never()).interruptWith(any());
+    }
+
+    @Test
+    void should_interrupt_with_ssl_required_when_request_is_not_secure() {
+        var configuration = SslEnforcementPolicyConfiguration.builder().requiresSsl(true).build();
+
+        new SslEnforcementPolicy(configuration).onRequest(ctx).test().assertError(IllegalStateException.class);
+
+        verify(ctx).interruptWith(failureCaptor.capture());
+        Assertions.assertThat(failureCaptor.getValue().key()).isEqualTo(SslEnforcementPolicy.SSL_REQUIRED);
+        Assertions.assertThat(failureCaptor.getValue().statusCode()).isEqualTo(403);
+    }
+
+    @Test
+    @SneakyThrows
+    void should_interrupt_with_failure_key_and_parameters_when_certificate_is_not_allowed() {
+        when(request.sslSession()).thenReturn(sslSession);
+        when(sslSession.getPeerCertificates()).thenReturn(new Certificate[] { loadX509Certificate() });
+        var configuration = SslEnforcementPolicyConfiguration.builder()
+            .requiresSsl(true)
+            .requiresClientAuthentication(true)
+            .whitelistClientCertificates(Collections.singletonList("CN=Someone Else,C=FR"))
+            .build();
+
+        new SslEnforcementPolicy(configuration).onRequest(ctx).test().assertError(IllegalStateException.class);
+
+        verify(ctx).interruptWith(failureCaptor.capture());
+        Assertions.assertThat(failureCaptor.getValue().key()).isEqualTo(SslEnforcementPolicy.CLIENT_FORBIDDEN);
+        Assertions.assertThat(failureCaptor.getValue().parameters()).containsEntry("name", DUKE);
+    }
+
+    @Test
+    void should_evaluate_in_place_when_offload_is_enabled_outside_a_vertx_context() {
+        when(request.headers()).thenReturn(HttpHeaders.create().set("X-Forwarded-Proto", "https").set("ssl-client-cert", pemHeader()));
+
+        new SslEnforcementPolicy(offloadingConfiguration()).onRequest(ctx).test().assertComplete();
+
+        verify(ctx, never()).interruptWith(any());
+    }
+
+    @Test
+    @SneakyThrows
+    void should_resume_on_the_event_loop_when_header_certificate_is_decoded_on_a_worker() {
+        when(request.headers()).thenReturn(HttpHeaders.create().set("X-Forwarded-Proto", "https").set("ssl-client-cert", pemHeader()));
+        var policy = new SslEnforcementPolicy(offloadingConfiguration());
+        Vertx vertx = Vertx.vertx();
+        try {
+            AtomicReference<Thread> eventLoop = new AtomicReference<>();
+            CompletableFuture<Thread> continuation = new CompletableFuture<>();
+            vertx.runOnContext(v -> {
+                eventLoop.set(Thread.currentThread());
+                policy.onRequest(ctx).subscribe(() -> continuation.complete(Thread.currentThread()), continuation::completeExceptionally);
+            });
+
+            Assertions.assertThat(continuation.get(10, TimeUnit.SECONDS)).isSameAs(eventLoop.get());
+            verify(ctx, never()).interruptWith(any());
+        } finally {
+            vertx.close().toCompletionStage().toCompletableFuture().get(10, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    @SneakyThrows
+    void should_read_forwarded_header_once_when_offload_is_enabled() {
+        HttpHeaders headers = spy(HttpHeaders.create().set("Forwarded", "for=192.0.2.60;proto=https").set("ssl-client-cert", pemHeader()));
+        when(request.headers()).thenReturn(headers);
+        var policy = new SslEnforcementPolicy(offloadingConfiguration());
+        Vertx vertx = Vertx.vertx();
+        try {
+            CompletableFuture<Void> done = new CompletableFuture<>();
+            vertx.runOnContext(v -> policy.onRequest(ctx).subscribe(() -> done.complete(null), done::completeExceptionally));
+
+            done.get(10, TimeUnit.SECONDS);
+            verify(headers, times(1)).get("Forwarded");
+        } finally {
+            vertx.close().toCompletionStage().toCompletableFuture().get(10, TimeUnit.SECONDS);
+        }
+    }
+
+    private static SslEnforcementPolicyConfiguration offloadingConfiguration() {
+        return SslEnforcementPolicyConfiguration.builder()
+            .requiresSsl(true)
+            .useXForwardedProto(true)
+            .requiresClientAuthentication(true)
+            .whitelistClientCertificates(Collections.singletonList(DUKE))
+            .certificateLocation(CertificateLocation.HEADER)
+            .workerOffloadEnabled(true)
+            .build();
+    }
+
+    @SneakyThrows
+    private String pemHeader() {
+        return URLEncoder.encode(
+            Files.readString(Path.of(requireNonNull(getClass().getResource("/cert.pem")).toURI())),
+            StandardCharsets.UTF_8
+        );
+    }
+
+    @SneakyThrows
+    private X509Certificate loadX509Certificate() {
+        try (InputStream is = requireNonNull(this.getClass().getResourceAsStream("/cert.pem"))) {
+            return (X509Certificate) CertificateFactory.getInstance("X.509").generateCertificate(is);
+        }
+    }
+}
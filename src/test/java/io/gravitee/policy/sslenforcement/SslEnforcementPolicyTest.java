@@ -16,8 +16,15 @@
 package io.gravitee.policy.sslenforcement;
 
 import static java.util.Objects.requireNonNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockingDetails;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -26,36 +33,49 @@ import io.gravitee.gateway.api.Response;
 import io.gravitee.gateway.api.http.HttpHeaders;
 import io.gravitee.policy.api.PolicyChain;
 import io.gravitee.policy.api.PolicyResult;
+import io.gravitee.policy.sslenforcement.cache.CacheStats;
+import io.gravitee.policy.sslenforcement.configuration.CertificateHeaderFormat;
 import io.gravitee.policy.sslenforcement.configuration.CertificateLocation;
 import io.gravitee.policy.sslenforcement.configuration.SslEnforcementPolicyConfiguration;
+import io.gravitee.policy.sslenforcement.metrics.EnforcementMetrics;
 import java.io.InputStream;
+import java.lang.management.ManagementFactory;
 import java.math.BigInteger;
 import java.net.URLEncoder;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
 import java.security.cert.Certificate;
 import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
 import java.util.Arrays;
-import java.util.Collection;
+import java.util.Base64;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.management.ObjectName;
+import javax.net.ssl.ExtendedSSLSession;
 import javax.net.ssl.SSLPeerUnverifiedException;
 import javax.net.ssl.SSLSession;
 import javax.security.auth.x500.X500Principal;
 import lombok.SneakyThrows;
 import org.assertj.core.api.Assertions;
 import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.DEROctetString;
 import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.CRLReason;
 import org.bouncycastle.asn1.x509.CertificatePolicies;
 import org.bouncycastle.asn1.x509.Extension;
 import org.bouncycastle.asn1.x509.GeneralName;
 import org.bouncycastle.asn1.x509.GeneralNames;
 import org.bouncycastle.asn1.x509.PolicyInformation;
+import org.bouncycastle.cert.X509v2CRLBuilder;
 import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
 import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
 import org.bouncycastle.operator.ContentSigner;
@@ -63,6 +83,7 @@ import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 import org.mockito.ArgumentCaptor;
@@ -102,6 +123,54 @@ class SslEnforcementPolicyTest {
         verify(policyChain).doNext(request, response);
     }
 
+    @Test
+    @SneakyThrows
+    void should_not_read_session_certificate_when_client_authentication_is_not_required() {
+        var configuration = SslEnforcementPolicyConfiguration.builder().requiresSsl(true).build();
+
+        new SslEnforcementPolicy(configuration).onRequest(request, response, policyChain);
+
+        verify(policyChain).doNext(request, response);
+        verify(sslSession, never()).getPeerCertificates();
+    }
+
+    @Test
+    @SneakyThrows
+    void should_ignore_header_certificate_longer_than_maximum_size() {
+        String header = urlEncodedPem(loadX509Certificate());
+        when(request.headers()).thenReturn(HttpHeaders.create().set("ssl-client-cert", header));
+        var configuration = SslEnforcementPolicyConfiguration.builder()
+            .requiresSsl(true)
+            .requiresClientAuthentication(true)
+            .certificateLocation(CertificateLocation.HEADER)
+            .certificateHeaderName("ssl-client-cert")
+            .certificateHeaderMaxSize(header.length() - 1)
+            .build();
+
+        new SslEnforcementPolicy(configuration).onRequest(request, response, policyChain);
+
+        verify(policyChain).failWith(resultCaptor.capture());
+        Assertions.assertThat(resultCaptor.getValue().key()).isEqualTo(SslEnforcementPolicy.AUTHENTICATION_REQUIRED);
+    }
+
+    @Test
+    void should_not_decode_header_certificate_when_client_authentication_is_not_required() {
+        when(request.headers()).thenReturn(HttpHeaders.create().set("ssl-client-cert", "not a certificate"));
+        var configuration = SslEnforcementPolicyConfiguration.builder()
+            .requiresSsl(true)
+            .certificateLocation(CertificateLocation.HEADER)
+            .certificateHeaderName("ssl-client-cert")
+            .metricsEnabled(true)
+            .metricsName("lazy-extraction")
+            .build();
+
+        SslEnforcementPolicy policy = new SslEnforcementPolicy(configuration);
+        policy.onRequest(request, response, policyChain);
+
+        verify(policyChain).doNext(request, response);
+        Assertions.assertThat(policy.metrics().orElseThrow().getParseFailures()).isZero();
+    }
+
     @ParameterizedTest
     @ValueSource(
         strings = {
@@ -483,8 +552,8 @@ class SslEnforcementPolicyTest {
         // GeneralName type 1 = rfc822Name (email). Verifies the policy matches against
         // SAN values regardless of the type integer (ticket AC: "All SAN types matched").
         X509Certificate cert = mock(X509Certificate.class);
-        Collection<List<?>> sans = List.of(Arrays.asList(1, "partner@allowed.com"));
-        when(cert.getSubjectAlternativeNames()).thenReturn(sans);
+        byte[] sans = new DEROctetString(new GeneralNames(new GeneralName(GeneralName.rfc822Name, "partner@allowed.com"))).getEncoded();
+        when(cert.getExtensionValue(SubjectAlternativeNames.SUBJECT_ALTERNATIVE_NAME_OID)).thenReturn(sans);
         when(sslSession.getPeerCertificates()).thenReturn(new Certificate[] { cert });
         var configuration = SslEnforcementPolicyConfiguration.builder()
             .requiresSsl(true)
@@ -499,9 +568,11 @@ class SslEnforcementPolicyTest {
 
     @Test
     @SneakyThrows
-    void should_fail_with_san_mismatch_when_get_subject_alternative_names_throws() {
+    void should_fail_with_san_mismatch_when_subject_alternative_names_are_malformed() {
         X509Certificate cert = mock(X509Certificate.class);
-        when(cert.getSubjectAlternativeNames()).thenThrow(new RuntimeException("malformed extension"));
+        // OCTET STRING announcing a 5-byte SEQUENCE it does not hold.
+        byte[] sans = { 0x04, 0x02, 0x30, 0x05 };
+        when(cert.getExtensionValue(SubjectAlternativeNames.SUBJECT_ALTERNATIVE_NAME_OID)).thenReturn(sans);
         when(sslSession.getPeerCertificates()).thenReturn(new Certificate[] { cert });
         var configuration = SslEnforcementPolicyConfiguration.builder()
             .requiresSsl(true)
@@ -815,6 +886,17 @@ class SslEnforcementPolicyTest {
         Assertions.assertThatThrownBy(() -> new SslEnforcementPolicy(configuration)).isInstanceOf(IllegalArgumentException.class);
     }
 
+    @Test
+    void should_fail_fast_at_construction_when_a_required_policy_oid_is_malformed() {
+        var configuration = SslEnforcementPolicyConfiguration.builder()
+            .requiresSsl(true)
+            .requiresClientAuthentication(true)
+            .requiredCertificatePolicies(Collections.singletonList("0.4.0.x"))
+            .build();
+
+        Assertions.assertThatThrownBy(() -> new SslEnforcementPolicy(configuration)).isInstanceOf(IllegalArgumentException.class);
+    }
+
     @Test
     @SneakyThrows
     void should_match_issuer_when_a_single_rdn_value_is_wildcarded() {
@@ -831,4 +913,995 @@ class SslEnforcementPolicyTest {
 
         verify(policyChain).doNext(request, response);
     }
+
+    @Test
+    @SneakyThrows
+    void should_serve_repeated_certificate_from_verdict_cache() {
+        when(sslSession.getPeerCertificates()).thenReturn(new Certificate[] { loadX509Certificate() });
+        var configuration = SslEnforcementPolicyConfiguration.builder()
+            .requiresSsl(true)
+            .requiresClientAuthentication(true)
+            .whitelistClientCertificates(Collections.singletonList("CN=Duke,OU=JavaSoft,O=Sun Microsystems,C=US"))
+            .verdictCacheEnabled(true)
+            .build();
+        var policy = new SslEnforcementPolicy(configuration);
+
+        policy.onRequest(request, response, policyChain);
+        policy.onRequest(request, response, policyChain);
+
+        verify(policyChain, times(2)).doNext(request, response);
+        Assertions.assertThat(policy.verdictCacheStats().misses()).isEqualTo(1);
+        Assertions.assertThat(policy.verdictCacheStats().hits()).isEqualTo(1);
+    }
+
+    @Test
+    @SneakyThrows
+    void should_replay_cached_failure_key_and_context() {
+        X509Certificate cert = buildCertWithIssuer("CN=Other CA,O=Gravitee Test,C=FR", "CN=partner,O=GraviteeSource,C=FR");
+        when(sslSession.getPeerCertificates()).thenReturn(new Certificate[] { cert });
+        var configuration = SslEnforcementPolicyConfiguration.builder()
+            .requiresSsl(true)
+            .requiresClientAuthentication(true)
+            .whitelistIssuers(Collections.singletonList("CN=Test Root CA,O=Gravitee Test,C=FR"))
+            .verdictCacheEnabled(true)
+            .build();
+        var policy = new SslEnforcementPolicy(configuration);
+
+        policy.onRequest(request, response, policyChain);
+        policy.onRequest(request, response, policyChain);
+
+        verify(policyChain, times(2)).failWith(resultCaptor.capture());
+        PolicyResult cached = resultCaptor.getAllValues().get(1);
+        Assertions.assertThat(cached.key()).isEqualTo(SslEnforcementPolicy.ISSUER_MISMATCH);
+        Assertions.assertThat(cached.parameters().get("issuer").toString()).contains("Other CA");
+        Assertions.assertThat(policy.verdictCacheStats().hits()).isEqualTo(1);
+    }
+
+    @Test
+    @SneakyThrows
+    void should_serve_repeated_rejections_from_rejection_cache() {
+        X509Certificate cert = buildCertWithIssuer("CN=Other CA,O=Gravitee Test,C=FR", "CN=partner,O=GraviteeSource,C=FR");
+        when(sslSession.getPeerCertificates()).thenReturn(new Certificate[] { cert });
+        var configuration = SslEnforcementPolicyConfiguration.builder()
+            .requiresSsl(true)
+            .requiresClientAuthentication(true)
+            .whitelistIssuers(Collections.singletonList("CN=Test Root CA,O=Gravitee Test,C=FR"))
+            .verdictCacheEnabled(true)
+            .rejectionCacheEnabled(true)
+            .build();
+        var policy = new SslEnforcementPolicy(configuration);
+
+        for (int i = 0; i < 3; i++) {
+            policy.onRequest(request, response, policyChain);
+        }
+
+        verify(policyChain, times(3)).failWith(resultCaptor.capture());
+        PolicyResult first = resultCaptor.getAllValues().get(0);
+        Assertions.assertThat(resultCaptor.getAllValues()).allSatisfy(result -> Assertions.assertThat(result).isSameAs(first));
+        Assertions.assertThat(policy.mostRejectedCertificates(10)).containsExactly(
+            Map.entry(CertificateFingerprint.of(cert).toString(), 2L)
+        );
+        // Rejections are kept out of the verdict cache.
+        Assertions.assertThat(policy.verdictCacheStats().size()).isZero();
+    }
+
+    @Test
+    @SneakyThrows
+    void should_not_cache_verdicts_when_verdict_cache_is_disabled() {
+        when(sslSession.getPeerCertificates()).thenReturn(new Certificate[] { loadX509Certificate() });
+        var configuration = SslEnforcementPolicyConfiguration.builder()
+            .requiresSsl(true)
+            .requiresClientAuthentication(true)
+            .whitelistClientCertificates(Collections.singletonList("CN=Duke,OU=JavaSoft,O=Sun Microsystems,C=US"))
+            .build();
+        var policy = new SslEnforcementPolicy(configuration);
+
+        policy.onRequest(request, response, policyChain);
+        policy.onRequest(request, response, policyChain);
+
+        verify(policyChain, times(2)).doNext(request, response);
+        Assertions.assertThat(policy.verdictCacheStats()).isEqualTo(CacheStats.EMPTY);
+    }
+
+    @Test
+    @SneakyThrows
+    void should_decode_repeated_header_certificate_only_once() {
+        HttpHeaders headers = HttpHeaders.create().set("ssl-client-cert", loadCertificate());
+        when(request.headers()).thenReturn(headers);
+        var configuration = SslEnforcementPolicyConfiguration.builder()
+            .requiresSsl(true)
+            .requiresClientAuthentication(true)
+            .whitelistClientCertificates(Collections.singletonList("CN=Duke,OU=JavaSoft,O=Sun Microsystems,C=US"))
+            .certificateLocation(CertificateLocation.HEADER)
+            .certificateHeaderCacheEnabled(true)
+            .build();
+        var policy = new SslEnforcementPolicy(configuration);
+
+        policy.onRequest(request, response, policyChain);
+        policy.onRequest(request, response, policyChain);
+
+        verify(policyChain, times(2)).doNext(request, response);
+        Assertions.assertThat(policy.headerCertificateCacheStats().hits()).isEqualTo(1);
+        Assertions.assertThat(policy.headerCertificateCacheStats().size()).isEqualTo(1);
+    }
+
+    @Test
+    void should_keep_failing_authentication_for_repeated_undecodable_header_certificate() {
+        HttpHeaders headers = HttpHeaders.create().set("ssl-client-cert", "not-a-certificate");
+        when(request.headers()).thenReturn(headers);
+        var configuration = SslEnforcementPolicyConfiguration.builder()
+            .requiresSsl(true)
+            .requiresClientAuthentication(true)
+            .certificateLocation(CertificateLocation.HEADER)
+            .certificateHeaderCacheEnabled(true)
+            .build();
+        var policy = new SslEnforcementPolicy(configuration);
+
+        policy.onRequest(request, response, policyChain);
+        policy.onRequest(request, response, policyChain);
+
+        verify(policyChain, times(2)).failWith(resultCaptor.capture());
+        Assertions.assertThat(resultCaptor.getAllValues())
+            .extracting(PolicyResult::key)
+            .containsOnly(SslEnforcementPolicy.AUTHENTICATION_REQUIRED);
+        Assertions.assertThat(policy.headerCertificateCacheStats().size()).isZero();
+        Assertions.assertThat(policy.headerCertificateFailureCacheStats().size()).isEqualTo(1);
+        Assertions.assertThat(policy.headerCertificateFailureCacheStats().hits()).isEqualTo(1);
+    }
+
+    @Test
+    @SneakyThrows
+    void should_memoize_verdict_on_tls_session() {
+        Map<String, Object> sessionValues = sessionValues();
+        when(sslSession.getPeerCertificates()).thenReturn(new Certificate[] { loadX509Certificate() });
+        var configuration = SslEnforcementPolicyConfiguration.builder()
+            .requiresSsl(true)
+            .requiresClientAuthentication(true)
+            .whitelistClientCertificates(Collections.singletonList("CN=Duke,OU=JavaSoft,O=Sun Microsystems,C=US"))
+            .sessionVerdictCacheEnabled(true)
+            .build();
+        var policy = new SslEnforcementPolicy(configuration);
+
+        policy.onRequest(request, response, policyChain);
+        policy.onRequest(request, response, policyChain);
+
+        verify(policyChain, times(2)).doNext(request, response);
+        verify(sslSession, times(1)).getPeerCertificates();
+        Assertions.assertThat(sessionValues).hasSize(1);
+    }
+
+    @Test
+    @SneakyThrows
+    void should_not_share_session_verdict_between_policy_instances() {
+        Map<String, Object> sessionValues = sessionValues();
+        when(sslSession.getPeerCertificates()).thenReturn(new Certificate[] { loadX509Certificate() });
+        var allowing = SslEnforcementPolicyConfiguration.builder()
+            .requiresSsl(true)
+            .requiresClientAuthentication(true)
+            .whitelistClientCertificates(Collections.singletonList("CN=Duke,OU=JavaSoft,O=Sun Microsystems,C=US"))
+            .sessionVerdictCacheEnabled(true)
+            .build();
+        var denying = SslEnforcementPolicyConfiguration.builder()
+            .requiresSsl(true)
+            .requiresClientAuthentication(true)
+            .whitelistClientCertificates(Collections.singletonList("CN=Someone Else,C=FR"))
+            .sessionVerdictCacheEnabled(true)
+            .build();
+
+        new SslEnforcementPolicy(allowing).onRequest(request, response, policyChain);
+        new SslEnforcementPolicy(denying).onRequest(request, response, policyChain);
+
+        verify(policyChain).doNext(request, response);
+        verify(policyChain).failWith(resultCaptor.capture());
+        Assertions.assertThat(resultCaptor.getValue().key()).isEqualTo(SslEnforcementPolicy.CLIENT_FORBIDDEN);
+        Assertions.assertThat(sessionValues).hasSize(2);
+    }
+
+    @Test
+    @SneakyThrows
+    void should_record_stage_timings_and_failure_keys() {
+        when(sslSession.getPeerCertificates()).thenReturn(new Certificate[] { loadX509Certificate() });
+        var configuration = SslEnforcementPolicyConfiguration.builder()
+            .requiresSsl(true)
+            .requiresClientAuthentication(true)
+            .whitelistClientCertificates(Collections.singletonList("CN=Someone Else,C=FR"))
+            .metricsEnabled(true)
+            .metricsName("should_record_stage_timings_and_failure_keys")
+            .build();
+        var policy = new SslEnforcementPolicy(configuration);
+
+        policy.onRequest(request, response, policyChain);
+
+        EnforcementMetrics metrics = policy.metrics().orElseThrow();
+        Assertions.assertThat(metrics.getRejected()).containsEntry(SslEnforcementPolicy.CLIENT_FORBIDDEN, 1L);
+        Assertions.assertThat(metrics.getAccepted()).isZero();
+        Assertions.assertThat(metrics.getStageCounts())
+            .containsEntry("TOTAL", 1L)
+            .containsEntry("CERTIFICATE_EXTRACTION", 1L)
+            .containsEntry("CLIENT_DN", 1L)
+            .containsEntry("ISSUER_DN", 0L);
+    }
+
+    @Test
+    @SneakyThrows
+    void should_not_record_offline_evaluations_in_request_metrics() {
+        when(sslSession.getPeerCertificates()).thenReturn(new Certificate[] { loadX509Certificate() });
+        var configuration = SslEnforcementPolicyConfiguration.builder()
+            .requiresSsl(true)
+            .requiresClientAuthentication(true)
+            .whitelistClientCertificates(Collections.singletonList("CN=Someone Else,C=FR"))
+            .metricsEnabled(true)
+            .metricsName("should_not_record_offline_evaluations_in_request_metrics")
+            .build();
+        var policy = new SslEnforcementPolicy(configuration);
+        policy.onRequest(request, response, policyChain);
+
+        try (CertificateEvaluator evaluator = policy.evaluator()) {
+            evaluator.evaluate(loadX509Certificate());
+        }
+
+        Assertions.assertThat(policy.metrics().orElseThrow().getStageCounts()).containsEntry("CLIENT_DN", 1L);
+        policy.close();
+    }
+
+    @Test
+    void should_count_undecodable_header_certificates() {
+        when(request.headers()).thenReturn(HttpHeaders.create().set("ssl-client-cert", "not-a-certificate"));
+        var configuration = SslEnforcementPolicyConfiguration.builder()
+            .requiresSsl(true)
+            .requiresClientAuthentication(true)
+            .certificateLocation(CertificateLocation.HEADER)
+            .metricsEnabled(true)
+            .metricsName("should_count_undecodable_header_certificates")
+            .build();
+        var policy = new SslEnforcementPolicy(configuration);
+
+        policy.onRequest(request, response, policyChain);
+
+        EnforcementMetrics metrics = policy.metrics().orElseThrow();
+        Assertions.assertThat(metrics.getParseFailures()).isEqualTo(1);
+        Assertions.assertThat(metrics.getRejected()).containsEntry(SslEnforcementPolicy.AUTHENTICATION_REQUIRED, 1L);
+    }
+
+    @Test
+    @SneakyThrows
+    void should_name_metrics_after_the_api_and_release_them_on_close() {
+        when(request.contextPath()).thenReturn("/should-name-metrics-after-the-api/");
+        var configuration = SslEnforcementPolicyConfiguration.builder()
+            .requiresSsl(false)
+            .metricsEnabled(true)
+            .metricsJmxEnabled(true)
+            .build();
+        var policy = new SslEnforcementPolicy(configuration);
+        ObjectName objectName = new ObjectName(
+            "io.gravitee.policy.sslenforcement:type=EnforcementMetrics,name=" + ObjectName.quote("/should-name-metrics-after-the-api/")
+        );
+
+        policy.onRequest(request, response, policyChain);
+
+        Assertions.assertThat(policy.metrics().orElseThrow().name()).isEqualTo("/should-name-metrics-after-the-api/");
+        Assertions.assertThat(policy.metrics().orElseThrow().getAccepted()).isEqualTo(1);
+        Assertions.assertThat(ManagementFactory.getPlatformMBeanServer().isRegistered(objectName)).isTrue();
+
+        policy.close();
+
+        Assertions.assertThat(ManagementFactory.getPlatformMBeanServer().isRegistered(objectName)).isFalse();
+        EnforcementMetrics recreated = EnforcementMetrics.named("/should-name-metrics-after-the-api/", false);
+        Assertions.assertThat(recreated.getAccepted()).isZero();
+        recreated.release();
+    }
+
+    @Test
+    @SneakyThrows
+    void should_merge_allow_list_file_entries_and_apply_reloads(@TempDir Path directory) {
+        Path file = directory.resolve("partners.txt");
+        Files.writeString(file, "# partners\nCN=partner,O=GraviteeSource,C=FR\n");
+        when(sslSession.getPeerCertificates()).thenReturn(new Certificate[] { loadX509Certificate() });
+        var configuration = SslEnforcementPolicyConfiguration.builder()
+            .requiresSsl(true)
+            .requiresClientAuthentication(true)
+            .whitelistClientCertificatesFile(file.toString())
+            .verdictCacheEnabled(true)
+            .build();
+        var policy = new SslEnforcementPolicy(configuration);
+
+        policy.onRequest(request, response, policyChain);
+        Files.writeString(file, "CN=partner,O=GraviteeSource,C=FR\nCN=Duke,OU=JavaSoft,O=Sun Microsystems,C=US\n");
+        policy.reloadAllowLists();
+        policy.onRequest(request, response, policyChain);
+
+        verify(policyChain).failWith(resultCaptor.capture());
+        Assertions.assertThat(resultCaptor.getValue().key()).isEqualTo(SslEnforcementPolicy.CLIENT_FORBIDDEN);
+        verify(policyChain).doNext(request, response);
+    }
+
+    @Test
+    @SneakyThrows
+    void should_keep_previous_allow_list_when_reloaded_file_is_invalid(@TempDir Path directory) {
+        Path file = directory.resolve("partners.txt");
+        Files.writeString(file, "CN=Duke,OU=JavaSoft,O=Sun Microsystems,C=US\n");
+        when(sslSession.getPeerCertificates()).thenReturn(new Certificate[] { loadX509Certificate() });
+        var configuration = SslEnforcementPolicyConfiguration.builder()
+            .requiresSsl(true)
+            .requiresClientAuthentication(true)
+            .whitelistClientCertificatesFile(file.toString())
+            .build();
+        var policy = new SslEnforcementPolicy(configuration);
+
+        Files.writeString(file, "this is not a valid distinguished name\n");
+        policy.reloadAllowLists();
+        policy.onRequest(request, response, policyChain);
+
+        verify(policyChain).doNext(request, response);
+    }
+
+    @Test
+    @SneakyThrows
+    void should_reload_allow_list_file_when_it_changes(@TempDir Path directory) {
+        Path file = directory.resolve("partners.txt");
+        Files.writeString(file, "CN=partner,O=GraviteeSource,C=FR\n");
+        when(sslSession.getPeerCertificates()).thenReturn(new Certificate[] { loadX509Certificate() });
+        var configuration = SslEnforcementPolicyConfiguration.builder()
+            .requiresSsl(true)
+            .requiresClientAuthentication(true)
+            .whitelistClientCertificatesFile(file.toString())
+            .build();
+        var policy = new SslEnforcementPolicy(configuration);
+
+        Path replacement = directory.resolve("partners.txt.tmp");
+        Files.writeString(replacement, "CN=Duke,OU=JavaSoft,O=Sun Microsystems,C=US\n");
+        Files.move(replacement, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        // The watcher reloads asynchronously, once the directory has been quiet for a while.
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        boolean allowed = false;
+        while (!allowed && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+            clearInvocations(policyChain);
+            policy.onRequest(request, response, policyChain);
+            allowed = mockingDetails(policyChain).getInvocations().stream().anyMatch(i -> i.getMethod().getName().equals("doNext"));
+        }
+
+        Assertions.assertThat(allowed).isTrue();
+    }
+
+    @Test
+    @SneakyThrows
+    void should_audit_decisions_when_audit_is_enabled(@TempDir Path directory) {
+        Path file = directory.resolve("decisions.log");
+        when(sslSession.getPeerCertificates()).thenReturn(new Certificate[] { loadX509Certificate() });
+        var configuration = SslEnforcementPolicyConfiguration.builder()
+            .requiresSsl(true)
+            .requiresClientAuthentication(true)
+            .whitelistClientCertificates(List.of("CN=partner"))
+            .auditEnabled(true)
+            .auditFile(file.toString())
+            .build();
+
+        new SslEnforcementPolicy(configuration).onRequest(request, response, policyChain);
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while ((!Files.exists(file) || Files.readAllLines(file).isEmpty()) && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        Assertions.assertThat(Files.readAllLines(file))
+            .singleElement()
+            .asString()
+            .contains("\"verdict\":\"DENY\"", "\"failureKey\":\"SSL_ENFORCEMENT_CLIENT_FORBIDDEN\"", "\"subject\":\"CN=Duke,OU=JavaSoft");
+    }
+
+    @Test
+    void should_fail_fast_at_construction_when_allow_list_file_is_missing(@TempDir Path directory) {
+        var configuration = SslEnforcementPolicyConfiguration.builder()
+            .requiresSsl(true)
+            .requiresClientAuthentication(true)
+            .whitelistSubjectAlternativeNamesFile(directory.resolve("missing.txt").toString())
+            .build();
+
+        Assertions.assertThatThrownBy(() -> new SslEnforcementPolicy(configuration)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    @SneakyThrows
+    void should_go_to_next_policy_when_pinned_certificate_is_sufficient_despite_other_rules() {
+        X509Certificate certificate = loadX509Certificate();
+        when(sslSession.getPeerCertificates()).thenReturn(new Certificate[] { certificate });
+        var configuration = SslEnforcementPolicyConfiguration.builder()
+            .requiresSsl(true)
+            .requiresClientAuthentication(true)
+            .pinnedFingerprints(List.of(CertificateFingerprint.of(certificate).toString()))
+            .pinnedFingerprintsSufficient(true)
+            .whitelistClientCertificates(List.of("CN=someone else"))
+            .build();
+
+        new SslEnforcementPolicy(configuration).onRequest(request, response, policyChain);
+
+        verify(policyChain).doNext(request, response);
+    }
+
+    @Test
+    @SneakyThrows
+    void should_fail_when_certificate_is_not_pinned() {
+        X509Certificate certificate = loadX509Certificate();
+        when(sslSession.getPeerCertificates()).thenReturn(new Certificate[] { certificate });
+        var configuration = SslEnforcementPolicyConfiguration.builder()
+            .requiresSsl(true)
+            .requiresClientAuthentication(true)
+            .pinnedFingerprints(List.of("ab".repeat(32)))
+            .build();
+
+        new SslEnforcementPolicy(configuration).onRequest(request, response, policyChain);
+
+        verify(policyChain).failWith(resultCaptor.capture());
+        Assertions.assertThat(resultCaptor.getValue().key()).isEqualTo(SslEnforcementPolicy.FINGERPRINT_NOT_PINNED);
+        Assertions.assertThat(resultCaptor.getValue().parameters()).containsEntry(
+            "fingerprint",
+            CertificateFingerprint.of(certificate).toString()
+        );
+    }
+
+    @Test
+    @SneakyThrows
+    void should_apply_other_rules_to_unpinned_certificate_when_pinning_is_sufficient() {
+        when(sslSession.getPeerCertificates()).thenReturn(new Certificate[] { loadX509Certificate() });
+        var configuration = SslEnforcementPolicyConfiguration.builder()
+            .requiresSsl(true)
+            .requiresClientAuthentication(true)
+            .pinnedFingerprints(List.of("ab".repeat(32)))
+            .pinnedFingerprintsSufficient(true)
+            .whitelistClientCertificates(List.of("CN=Duke,OU=JavaSoft,O=Sun Microsystems,C=US"))
+            .build();
+
+        new SslEnforcementPolicy(configuration).onRequest(request, response, policyChain);
+
+        verify(policyChain).doNext(request, response);
+    }
+
+    @Test
+    @SneakyThrows
+    void should_go_to_next_policy_when_header_certificate_chains_to_a_trust_anchor(@TempDir Path directory) {
+        var authority = new TestCertificateAuthority("CN=Partners CA,O=GraviteeSource,C=FR");
+        Path trustAnchors = writePem(directory.resolve("trust-anchors.pem"), authority.certificate);
+        HttpHeaders headers = HttpHeaders.create().set("ssl-client-cert", urlEncodedPem(authority.issue("CN=partner", BigInteger.TEN)));
+        when(request.headers()).thenReturn(headers);
+        var configuration = SslEnforcementPolicyConfiguration.builder()
+            .requiresSsl(true)
+            .requiresClientAuthentication(true)
+            .certificateLocation(CertificateLocation.HEADER)
+            .trustAnchorsFile(trustAnchors.toString())
+            .build();
+
+        new SslEnforcementPolicy(configuration).onRequest(request, response, policyChain);
+
+        verify(policyChain).doNext(request, response);
+    }
+
+    @Test
+    @SneakyThrows
+    void should_go_to_next_policy_when_header_bundle_chains_to_a_trust_anchor_through_an_intermediate(@TempDir Path directory) {
+        var authority = new TestCertificateAuthority("CN=Partners CA,O=GraviteeSource,C=FR");
+        var intermediate = new TestCertificateAuthority("CN=Partners Issuing CA,O=GraviteeSource,C=FR", authority);
+        Path trustAnchors = writePem(directory.resolve("trust-anchors.pem"), authority.certificate);
+        String bundle = pem(intermediate.issue("CN=partner", BigInteger.TEN)) + pem(intermediate.certificate);
+        HttpHeaders headers = HttpHeaders.create().set("ssl-client-cert", URLEncoder.encode(bundle, Charset.defaultCharset()));
+        when(request.headers()).thenReturn(headers);
+        var configuration = SslEnforcementPolicyConfiguration.builder()
+            .requiresSsl(true)
+            .requiresClientAuthentication(true)
+            .certificateLocation(CertificateLocation.HEADER)
+            .trustAnchorsFile(trustAnchors.toString())
+            .build();
+
+        new SslEnforcementPolicy(configuration).onRequest(request, response, policyChain);
+
+        verify(policyChain).doNext(request, response);
+    }
+
+    @Test
+    @SneakyThrows
+    void should_go_to_next_policy_when_xfcc_chain_reaches_a_trust_anchor_through_an_intermediate(@TempDir Path directory) {
+        var authority = new TestCertificateAuthority("CN=Partners CA,O=GraviteeSource,C=FR");
+        var intermediate = new TestCertificateAuthority("CN=Partners Issuing CA,O=GraviteeSource,C=FR", authority);
+        Path trustAnchors = writePem(directory.resolve("trust-anchors.pem"), authority.certificate);
+        X509Certificate certificate = intermediate.issue("CN=partner", BigInteger.TEN);
+        String header =
+            "Cert=\"" +
+            urlEncodedPem(certificate) +
+            "\";Chain=\"" +
+            URLEncoder.encode(pem(certificate) + pem(intermediate.certificate), Charset.defaultCharset()) +
+            "\"";
+        when(request.headers()).thenReturn(HttpHeaders.create().set("x-forwarded-client-cert", header));
+        var configuration = SslEnforcementPolicyConfiguration.builder()
+            .requiresSsl(true)
+            .requiresClientAuthentication(true)
+            .certificateLocation(CertificateLocation.HEADER)
+            .certificateHeaderName("x-forwarded-client-cert")
+            .certificateHeaderFormat(CertificateHeaderFormat.ENVOY_XFCC)
+            .trustAnchorsFile(trustAnchors.toString())
+            .build();
+
+        new SslEnforcementPolicy(configuration).onRequest(request, response, policyChain);
+
+        verify(policyChain).doNext(request, response);
+    }
+
+    @Test
+    @SneakyThrows
+    void should_fail_when_header_certificate_comes_without_its_intermediate(@TempDir Path directory) {
+        var authority = new TestCertificateAuthority("CN=Partners CA,O=GraviteeSource,C=FR");
+        var intermediate = new TestCertificateAuthority("CN=Partners Issuing CA,O=GraviteeSource,C=FR", authority);
+        Path trustAnchors = writePem(directory.resolve("trust-anchors.pem"), authority.certificate);
+        HttpHeaders headers = HttpHeaders.create().set("ssl-client-cert", urlEncodedPem(intermediate.issue("CN=partner", BigInteger.TEN)));
+        when(request.headers()).thenReturn(headers);
+        var configuration = SslEnforcementPolicyConfiguration.builder()
+            .requiresSsl(true)
+            .requiresClientAuthentication(true)
+            .certificateLocation(CertificateLocation.HEADER)
+            .trustAnchorsFile(trustAnchors.toString())
+            .build();
+
+        new SslEnforcementPolicy(configuration).onRequest(request, response, policyChain);
+
+        verify(policyChain).failWith(resultCaptor.capture());
+        Assertions.assertThat(resultCaptor.getValue().key()).isEqualTo(SslEnforcementPolicy.CHAIN_INVALID);
+    }
+
+    @Test
+    @SneakyThrows
+    void should_fail_when_header_certificate_does_not_chain_to_a_trust_anchor(@TempDir Path directory) {
+        var authority = new TestCertificateAuthority("CN=Partners CA,O=GraviteeSource,C=FR");
+        Path trustAnchors = writePem(directory.resolve("trust-anchors.pem"), authority.certificate);
+        HttpHeaders headers = HttpHeaders.create().set("ssl-client-cert", loadCertificate());
+        when(request.headers()).thenReturn(headers);
+        var configuration = SslEnforcementPolicyConfiguration.builder()
+            .requiresSsl(true)
+            .requiresClientAuthentication(true)
+            .certificateLocation(CertificateLocation.HEADER)
+            .trustAnchorsFile(trustAnchors.toString())
+            .build();
+
+        new SslEnforcementPolicy(configuration).onRequest(request, response, policyChain);
+
+        verify(policyChain).failWith(resultCaptor.capture());
+        Assertions.assertThat(resultCaptor.getValue().key()).isEqualTo(SslEnforcementPolicy.CHAIN_INVALID);
+    }
+
+    @Test
+    @SneakyThrows
+    void should_fail_when_client_certificate_is_revoked(@TempDir Path directory) {
+        X509Certificate certificate = buildCertWithIssuer("CN=Partners CA,O=GraviteeSource,C=FR", "CN=partner");
+        Path crl = writeCrl(directory.resolve("partners.crl"), "CN=Partners CA,O=GraviteeSource,C=FR", BigInteger.TEN, BigInteger.ONE);
+        when(sslSession.getPeerCertificates()).thenReturn(new Certificate[] { certificate });
+        var configuration = SslEnforcementPolicyConfiguration.builder()
+            .requiresSsl(true)
+            .requiresClientAuthentication(true)
+            .crlFiles(List.of(crl.toString()))
+            .build();
+
+        new SslEnforcementPolicy(configuration).onRequest(request, response, policyChain);
+
+        verify(policyChain).failWith(resultCaptor.capture());
+        Assertions.assertThat(resultCaptor.getValue().key()).isEqualTo(SslEnforcementPolicy.CERTIFICATE_REVOKED);
+        Assertions.assertThat(resultCaptor.getValue().parameters()).containsEntry("serialNumber", "1");
+    }
+
+    @Test
+    @SneakyThrows
+    void should_go_to_next_policy_when_serial_is_only_revoked_by_another_issuer(@TempDir Path directory) {
+        X509Certificate certificate = buildCertWithIssuer("CN=Partners CA,O=GraviteeSource,C=FR", "CN=partner");
+        Path crl = writeCrl(directory.resolve("other.crl"), "CN=Other CA,O=GraviteeSource,C=FR", BigInteger.ONE);
+        when(sslSession.getPeerCertificates()).thenReturn(new Certificate[] { certificate });
+        var configuration = SslEnforcementPolicyConfiguration.builder()
+            .requiresSsl(true)
+            .requiresClientAuthentication(true)
+            .crlFiles(List.of(crl.toString()))
+            .build();
+
+        new SslEnforcementPolicy(configuration).onRequest(request, response, policyChain);
+
+        verify(policyChain).doNext(request, response);
+    }
+
+    @Test
+    @SneakyThrows
+    void should_discard_cached_verdicts_when_crls_are_reloaded(@TempDir Path directory) {
+        X509Certificate certificate = buildCertWithIssuer("CN=Partners CA,O=GraviteeSource,C=FR", "CN=partner");
+        Path crl = writeCrl(directory.resolve("partners.crl"), "CN=Partners CA,O=GraviteeSource,C=FR", BigInteger.TEN);
+        when(sslSession.getPeerCertificates()).thenReturn(new Certificate[] { certificate });
+        var configuration = SslEnforcementPolicyConfiguration.builder()
+            .requiresSsl(true)
+            .requiresClientAuthentication(true)
+            .crlFiles(List.of(crl.toString()))
+            .verdictCacheEnabled(true)
+            .build();
+        var policy = new SslEnforcementPolicy(configuration);
+
+        policy.onRequest(request, response, policyChain);
+        writeCrl(crl, "CN=Partners CA,O=GraviteeSource,C=FR", BigInteger.TEN, BigInteger.ONE);
+        policy.reloadCrls();
+        policy.onRequest(request, response, policyChain);
+
+        verify(policyChain).doNext(request, response);
+        verify(policyChain).failWith(resultCaptor.capture());
+        Assertions.assertThat(resultCaptor.getValue().key()).isEqualTo(SslEnforcementPolicy.CERTIFICATE_REVOKED);
+    }
+
+    @Test
+    @SneakyThrows
+    void should_keep_cached_verdicts_when_reloaded_crls_are_unchanged(@TempDir Path directory) {
+        X509Certificate certificate = buildCertWithIssuer("CN=Partners CA,O=GraviteeSource,C=FR", "CN=partner");
+        Path crl = writeCrl(directory.resolve("partners.crl"), "CN=Partners CA,O=GraviteeSource,C=FR", BigInteger.TEN);
+        when(sslSession.getPeerCertificates()).thenReturn(new Certificate[] { certificate });
+        var configuration = SslEnforcementPolicyConfiguration.builder()
+            .requiresSsl(true)
+            .requiresClientAuthentication(true)
+            .crlFiles(List.of(crl.toString()))
+            .verdictCacheEnabled(true)
+            .build();
+        var policy = new SslEnforcementPolicy(configuration);
+
+        policy.onRequest(request, response, policyChain);
+        policy.reloadCrls();
+        policy.onRequest(request, response, policyChain);
+
+        Assertions.assertThat(policy.verdictCacheStats().hits()).isEqualTo(1);
+    }
+
+    @Test
+    @SneakyThrows
+    void should_discard_cached_verdicts_once_crls_are_past_their_next_update(@TempDir Path directory) {
+        X509Certificate certificate = buildCertWithIssuer("CN=Partners CA,O=GraviteeSource,C=FR", "CN=partner");
+        // CRL dates have a one second precision.
+        Date nextUpdate = new Date((System.currentTimeMillis() / 1000 + 2) * 1000);
+        Path crl = writeCrl(directory.resolve("partners.crl"), "CN=Partners CA,O=GraviteeSource,C=FR", nextUpdate, BigInteger.TEN);
+        when(sslSession.getPeerCertificates()).thenReturn(new Certificate[] { certificate });
+        var configuration = SslEnforcementPolicyConfiguration.builder()
+            .requiresSsl(true)
+            .requiresClientAuthentication(true)
+            .crlFiles(List.of(crl.toString()))
+            .verdictCacheEnabled(true)
+            .build();
+        var policy = new SslEnforcementPolicy(configuration);
+        // Unwatches the CRL file: only the staleness check can notice the new CRL.
+        policy.close();
+
+        policy.onRequest(request, response, policyChain);
+        writeCrl(crl, "CN=Partners CA,O=GraviteeSource,C=FR", BigInteger.TEN, BigInteger.ONE);
+        Thread.sleep(Math.max(0, nextUpdate.getTime() - System.currentTimeMillis()) + 100);
+        policy.onRequest(request, response, policyChain);
+
+        // Served from the verdict cache, which the background refresh then empties.
+        Assertions.assertThat(policy.verdictCacheStats().hits()).isEqualTo(1);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (policy.verdictCacheStats().size() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        Assertions.assertThat(policy.verdictCacheStats().size()).isZero();
+    }
+
+    @Test
+    @SneakyThrows
+    void should_fail_fast_at_construction_when_crl_file_is_invalid(@TempDir Path directory) {
+        Path crl = directory.resolve("partners.crl");
+        Files.writeString(crl, "not a CRL");
+        var configuration = SslEnforcementPolicyConfiguration.builder()
+            .requiresSsl(true)
+            .requiresClientAuthentication(true)
+            .crlFiles(List.of(crl.toString()))
+            .build();
+
+        Assertions.assertThatThrownBy(() -> new SslEnforcementPolicy(configuration)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    @SneakyThrows
+    void should_fail_when_stapled_ocsp_response_reports_certificate_revoked() {
+        var authority = new TestCertificateAuthority("CN=Partners CA,O=GraviteeSource,C=FR");
+        var certificate = authority.issue("CN=partner", BigInteger.TEN);
+        ExtendedSSLSession extendedSslSession = mock(ExtendedSSLSession.class);
+        when(request.sslSession()).thenReturn(extendedSslSession);
+        when(extendedSslSession.getPeerCertificates()).thenReturn(new Certificate[] { certificate, authority.certificate });
+        when(extendedSslSession.getStatusResponses()).thenReturn(List.of(authority.revokedResponse(BigInteger.TEN)));
+        var configuration = SslEnforcementPolicyConfiguration.builder()
+            .requiresSsl(true)
+            .requiresClientAuthentication(true)
+            .ocspStaplingEnabled(true)
+            .build();
+
+        new SslEnforcementPolicy(configuration).onRequest(request, response, policyChain);
+
+        verify(policyChain).failWith(resultCaptor.capture());
+        Assertions.assertThat(resultCaptor.getValue().key()).isEqualTo(SslEnforcementPolicy.CERTIFICATE_REVOKED);
+        Assertions.assertThat(resultCaptor.getValue().parameters()).containsEntry("serialNumber", "a");
+    }
+
+    @Test
+    @SneakyThrows
+    void should_not_read_the_peer_chain_again_for_the_stapled_ocsp_response_of_a_memoized_session() {
+        var authority = new TestCertificateAuthority("CN=Partners CA,O=GraviteeSource,C=FR");
+        var certificate = authority.issue("CN=partner", BigInteger.TEN);
+        ExtendedSSLSession extendedSslSession = mock(ExtendedSSLSession.class);
+        Map<String, Object> values = new HashMap<>();
+        when(extendedSslSession.getValue(anyString())).thenAnswer(invocation -> values.get(invocation.<String>getArgument(0)));
+        doAnswer(invocation -> values.put(invocation.getArgument(0), invocation.getArgument(1)))
+            .when(extendedSslSession)
+            .putValue(anyString(), any());
+        when(request.sslSession()).thenReturn(extendedSslSession);
+        when(extendedSslSession.getPeerCertificates()).thenReturn(new Certificate[] { certificate, authority.certificate });
+        when(extendedSslSession.getStatusResponses()).thenReturn(List.of(authority.goodResponse(BigInteger.TEN)));
+        var configuration = SslEnforcementPolicyConfiguration.builder()
+            .requiresSsl(true)
+            .requiresClientAuthentication(true)
+            .sessionVerdictCacheEnabled(true)
+            .ocspStaplingEnabled(true)
+            .ocspStaplingRequired(true)
+            .build();
+        var policy = new SslEnforcementPolicy(configuration);
+
+        policy.onRequest(request, response, policyChain);
+        policy.onRequest(request, response, policyChain);
+
+        verify(policyChain, times(2)).doNext(request, response);
+        // Once for the certificate stages and once for the OCSP stage, on the first request only.
+        verify(extendedSslSession, times(2)).getPeerCertificates();
+        verify(extendedSslSession, times(1)).getStatusResponses();
+    }
+
+    @Test
+    @SneakyThrows
+    void should_go_to_next_policy_when_no_ocsp_response_is_stapled_and_stapling_is_not_required() {
+        when(sslSession.getPeerCertificates()).thenReturn(new Certificate[] { loadX509Certificate() });
+        var configuration = SslEnforcementPolicyConfiguration.builder()
+            .requiresSsl(true)
+            .requiresClientAuthentication(true)
+            .ocspStaplingEnabled(true)
+            .build();
+
+        new SslEnforcementPolicy(configuration).onRequest(request, response, policyChain);
+
+        verify(policyChain).doNext(request, response);
+    }
+
+    @Test
+    @SneakyThrows
+    void should_fail_when_no_ocsp_response_is_stapled_and_stapling_is_required() {
+        when(sslSession.getPeerCertificates()).thenReturn(new Certificate[] { loadX509Certificate() });
+        var configuration = SslEnforcementPolicyConfiguration.builder()
+            .requiresSsl(true)
+            .requiresClientAuthentication(true)
+            .ocspStaplingEnabled(true)
+            .ocspStaplingRequired(true)
+            .build();
+
+        new SslEnforcementPolicy(configuration).onRequest(request, response, policyChain);
+
+        verify(policyChain).failWith(resultCaptor.capture());
+        Assertions.assertThat(resultCaptor.getValue().key()).isEqualTo(SslEnforcementPolicy.OCSP_STATUS_UNVERIFIED);
+        Assertions.assertThat(resultCaptor.getValue().parameters()).containsEntry("status", "missing");
+    }
+
+    @Test
+    void should_answer_from_xfcc_fields_without_certificate() {
+        String header =
+            "By=spiffe://mesh/gateway;Hash=468ed33be74eee6556d90c0149c1309e9ba61d6425303443c0748a02dd8de688;" +
+            "Subject=\"CN=partner,O=GraviteeSource,C=FR\";URI=spiffe://partner.example.com/payments";
+        when(request.headers()).thenReturn(HttpHeaders.create().set("x-forwarded-client-cert", header));
+        var configuration = SslEnforcementPolicyConfiguration.builder()
+            .requiresSsl(true)
+            .requiresClientAuthentication(true)
+            .certificateLocation(CertificateLocation.HEADER)
+            .certificateHeaderName("x-forwarded-client-cert")
+            .certificateHeaderFormat(CertificateHeaderFormat.ENVOY_XFCC)
+            .whitelistClientCertificates(List.of("C=FR,O=GraviteeSource,CN=partner"))
+            .whitelistSubjectAlternativeNames(List.of("spiffe://partner.example.com/*"))
+            .pinnedFingerprints(List.of("468ed33be74eee6556d90c0149c1309e9ba61d6425303443c0748a02dd8de688"))
+            .build();
+
+        new SslEnforcementPolicy(configuration).onRequest(request, response, policyChain);
+
+        verify(policyChain).doNext(request, response);
+    }
+
+    @Test
+    void should_read_xfcc_header_when_no_header_name_is_configured() {
+        String header = "By=spiffe://mesh/gateway;Subject=\"CN=partner,O=GraviteeSource,C=FR\"";
+        when(request.headers()).thenReturn(HttpHeaders.create().set("x-forwarded-client-cert", header));
+        var configuration = SslEnforcementPolicyConfiguration.builder()
+            .requiresSsl(true)
+            .requiresClientAuthentication(true)
+            .certificateLocation(CertificateLocation.HEADER)
+            .certificateHeaderFormat(CertificateHeaderFormat.ENVOY_XFCC)
+            .whitelistClientCertificates(List.of("C=FR,O=GraviteeSource,CN=partner"))
+            .build();
+
+        new SslEnforcementPolicy(configuration).onRequest(request, response, policyChain);
+
+        verify(policyChain).doNext(request, response);
+    }
+
+    @Test
+    void should_fail_when_xfcc_subject_is_not_whitelisted() {
+        String header =
+            "Hash=468ed33be74eee6556d90c0149c1309e9ba61d6425303443c0748a02dd8de688;" +
+            "Subject=\"/C=FR/O=GraviteeSource/CN=intruder\"";
+        when(request.headers()).thenReturn(HttpHeaders.create().set("x-forwarded-client-cert", header));
+        var configuration = SslEnforcementPolicyConfiguration.builder()
+            .requiresSsl(true)
+            .requiresClientAuthentication(true)
+            .certificateLocation(CertificateLocation.HEADER)
+            .certificateHeaderName("x-forwarded-client-cert")
+            .certificateHeaderFormat(CertificateHeaderFormat.ENVOY_XFCC)
+            .whitelistClientCertificates(List.of("CN=partner,O=GraviteeSource,C=FR"))
+            .build();
+
+        new SslEnforcementPolicy(configuration).onRequest(request, response, policyChain);
+
+        verify(policyChain).failWith(resultCaptor.capture());
+        Assertions.assertThat(resultCaptor.getValue().key()).isEqualTo(SslEnforcementPolicy.CLIENT_FORBIDDEN);
+        Assertions.assertThat(resultCaptor.getValue().parameters()).containsEntry("name", "CN=intruder,O=GraviteeSource,C=FR");
+    }
+
+    @Test
+    void should_fail_when_xfcc_hash_is_not_pinned() {
+        String header = "Hash=468ed33be74eee6556d90c0149c1309e9ba61d6425303443c0748a02dd8de688";
+        when(request.headers()).thenReturn(HttpHeaders.create().set("x-forwarded-client-cert", header));
+        var configuration = SslEnforcementPolicyConfiguration.builder()
+            .requiresSsl(true)
+            .requiresClientAuthentication(true)
+            .certificateLocation(CertificateLocation.HEADER)
+            .certificateHeaderName("x-forwarded-client-cert")
+            .certificateHeaderFormat(CertificateHeaderFormat.ENVOY_XFCC)
+            .pinnedFingerprints(List.of("0f0e0d0c0b0a09080706050403020100f0e0d0c0b0a090807060504030201000"))
+            .build();
+
+        new SslEnforcementPolicy(configuration).onRequest(request, response, policyChain);
+
+        verify(policyChain).failWith(resultCaptor.capture());
+        Assertions.assertThat(resultCaptor.getValue().key()).isEqualTo(SslEnforcementPolicy.FINGERPRINT_NOT_PINNED);
+    }
+
+    @Test
+    void should_decode_xfcc_certificate_when_a_check_needs_it() {
+        X509Certificate certificate = buildCertWithIssuer("CN=Partners CA,O=GraviteeSource,C=FR", "CN=partner");
+        String header =
+            "Hash=" +
+            CertificateFingerprint.of(certificate) +
+            ";Cert=\"" +
+            urlEncodedPem(certificate) +
+            "\";Subject=\"CN=partner\"";
+        when(request.headers()).thenReturn(HttpHeaders.create().set("x-forwarded-client-cert", header));
+        var configuration = SslEnforcementPolicyConfiguration.builder()
+            .requiresSsl(true)
+            .requiresClientAuthentication(true)
+            .certificateLocation(CertificateLocation.HEADER)
+            .certificateHeaderName("x-forwarded-client-cert")
+            .certificateHeaderFormat(CertificateHeaderFormat.ENVOY_XFCC)
+            .whitelistIssuers(List.of("CN=Other CA,O=GraviteeSource,C=FR"))
+            .build();
+
+        new SslEnforcementPolicy(configuration).onRequest(request, response, policyChain);
+
+        verify(policyChain).failWith(resultCaptor.capture());
+        Assertions.assertThat(resultCaptor.getValue().key()).isEqualTo(SslEnforcementPolicy.ISSUER_MISMATCH);
+    }
+
+    @Test
+    void should_decode_xfcc_certificate_when_a_field_is_missing() {
+        X509Certificate certificate = buildCertWithSan("api.partner.example.com");
+        String header = "By=spiffe://mesh/gateway;Cert=\"" + urlEncodedPem(certificate) + "\"";
+        when(request.headers()).thenReturn(HttpHeaders.create().set("x-forwarded-client-cert", header));
+        var configuration = SslEnforcementPolicyConfiguration.builder()
+            .requiresSsl(true)
+            .requiresClientAuthentication(true)
+            .certificateLocation(CertificateLocation.HEADER)
+            .certificateHeaderName("x-forwarded-client-cert")
+            .certificateHeaderFormat(CertificateHeaderFormat.ENVOY_XFCC)
+            .whitelistSubjectAlternativeNames(List.of("*.partner.example.com"))
+            .build();
+
+        new SslEnforcementPolicy(configuration).onRequest(request, response, policyChain);
+
+        verify(policyChain).doNext(request, response);
+    }
+
+    @Test
+    @SneakyThrows
+    void should_go_to_next_policy_when_certificate_matches_rule() {
+        X509Certificate certificate = buildCertWithIssuer("CN=Banks CA,O=GraviteeSource,C=FR", "CN=bank");
+        when(sslSession.getPeerCertificates()).thenReturn(new Certificate[] { certificate });
+        var configuration = SslEnforcementPolicyConfiguration.builder()
+            .requiresSsl(true)
+            .requiresClientAuthentication(true)
+            .certificateRule(
+                "issuer = 'CN=Partners CA,O=GraviteeSource,C=FR' AND san = '*.a.com' OR issuer = 'CN=Banks CA,O=GraviteeSource,C=FR'"
+            )
+            .build();
+
+        new SslEnforcementPolicy(configuration).onRequest(request, response, policyChain);
+
+        verify(policyChain).doNext(request, response);
+    }
+
+    @Test
+    @SneakyThrows
+    void should_fail_when_certificate_does_not_match_rule() {
+        X509Certificate certificate = buildCertWithIssuer("CN=Partners CA,O=GraviteeSource,C=FR", "CN=partner");
+        when(sslSession.getPeerCertificates()).thenReturn(new Certificate[] { certificate });
+        var configuration = SslEnforcementPolicyConfiguration.builder()
+            .requiresSsl(true)
+            .requiresClientAuthentication(true)
+            .certificateRule(
+                "issuer = 'CN=Partners CA,O=GraviteeSource,C=FR' AND san = '*.a.com' OR issuer = 'CN=Banks CA,O=GraviteeSource,C=FR'"
+            )
+            .build();
+
+        new SslEnforcementPolicy(configuration).onRequest(request, response, policyChain);
+
+        verify(policyChain).failWith(resultCaptor.capture());
+        Assertions.assertThat(resultCaptor.getValue().key()).isEqualTo(SslEnforcementPolicy.RULE_MISMATCH);
+    }
+
+    @Test
+    void should_not_deploy_with_invalid_rule() {
+        var configuration = SslEnforcementPolicyConfiguration.builder()
+            .requiresSsl(true)
+            .requiresClientAuthentication(true)
+            .certificateRule("issuer = 'CN=Partners CA' AND")
+            .build();
+
+        Assertions.assertThatThrownBy(() -> new SslEnforcementPolicy(configuration)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @SneakyThrows
+    private static String pem(X509Certificate certificate) {
+        return (
+            "-----BEGIN CERTIFICATE-----\n" +
+            Base64.getMimeEncoder(64, new byte[] { '\n' }).encodeToString(certificate.getEncoded()) +
+            "\n-----END CERTIFICATE-----\n"
+        );
+    }
+
+    @SneakyThrows
+    private static Path writePem(Path file, X509Certificate certificate) {
+        Files.writeString(file, pem(certificate));
+        return file;
+    }
+
+    private static String urlEncodedPem(X509Certificate certificate) {
+        return URLEncoder.encode(pem(certificate), Charset.defaultCharset());
+    }
+
+    /**
+     * Writes a DER CRL revoking {@code serials}. The signing key is throwaway: the policy does not verify CRL signatures.
+     */
+    private static Path writeCrl(Path file, String issuerDn, BigInteger... serials) {
+        return writeCrl(file, issuerDn, new Date(System.currentTimeMillis() + 24L * 60 * 60 * 1000), serials);
+    }
+
+    @SneakyThrows
+    private static Path writeCrl(Path file, String issuerDn, Date nextUpdate, BigInteger... serials) {
+        KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
+        kpg.initialize(2048);
+        KeyPair keyPair = kpg.generateKeyPair();
+        Date now = new Date();
+
+        X509v2CRLBuilder builder = new X509v2CRLBuilder(new X500Name(issuerDn), now);
+        builder.setNextUpdate(nextUpdate);
+        for (BigInteger serial : serials) {
+            builder.addCRLEntry(serial, now, CRLReason.keyCompromise);
+        }
+
+        ContentSigner signer = new JcaContentSignerBuilder("SHA256WithRSA").build(keyPair.getPrivate());
+        Files.write(file, builder.build(signer).getEncoded());
+        return file;
+    }
+
+    private Map<String, Object> sessionValues() {
+        Map<String, Object> values = new HashMap<>();
+        when(sslSession.getValue(anyString())).thenAnswer(invocation -> values.get(invocation.<String>getArgument(0)));
+        doAnswer(invocation -> values.put(invocation.getArgument(0), invocation.getArgument(1)))
+            .when(sslSession)
+            .putValue(anyString(), any());
+        return values;
+    }
 }
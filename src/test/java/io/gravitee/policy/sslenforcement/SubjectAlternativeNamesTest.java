@@ -0,0 +1,130 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.sslenforcement;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigInteger;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.SneakyThrows;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.DERUTF8String;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.asn1.x509.OtherName;
+import org.junit.jupiter.api.Test;
+
+class SubjectAlternativeNamesTest {
+
+    @Test
+    @SneakyThrows
+    void should_render_names_like_the_jdk() {
+        X509Certificate certificate = new TestCertificateAuthority("CN=SAN CA").issue(
+            "CN=partner",
+            BigInteger.ONE,
+            new GeneralNames(
+                new GeneralName[] {
+                    new GeneralName(GeneralName.dNSName, "api.partner.example.com"),
+                    new GeneralName(GeneralName.rfc822Name, "partner@example.com"),
+                    new GeneralName(GeneralName.uniformResourceIdentifier, "spiffe://example.com/partner"),
+                    new GeneralName(GeneralName.iPAddress, "192.168.0.1"),
+                    new GeneralName(GeneralName.iPAddress, "2001:db8::1"),
+                    new GeneralName(GeneralName.directoryName, new X500Name("CN=partner,O=Example,C=FR")),
+                    new GeneralName(GeneralName.registeredID, "1.2.3.4"),
+                    new GeneralName(GeneralName.otherName, new OtherName(new ASN1ObjectIdentifier("1.2.3.5"), new DERUTF8String("other"))),
+                }
+            )
+        );
+
+        SubjectAlternativeNames names = SubjectAlternativeNames.of(certificate);
+
+        assertThat(values(names)).containsExactlyElementsOf(jdkValues(certificate));
+        assertThat(names.type(0)).isEqualTo(SubjectAlternativeNames.DNS_NAME);
+    }
+
+    @Test
+    @SneakyThrows
+    void should_render_directory_names_like_the_jdk_certificate_factory() {
+        X509Certificate issued = new TestCertificateAuthority("CN=SAN CA").issue(
+            "CN=partner",
+            BigInteger.ONE,
+            new GeneralNames(
+                new GeneralName(
+                    GeneralName.directoryName,
+                    new X500Name("CN=partner,O=Example,C=FR,E=partner@example.com,SERIALNUMBER=42")
+                )
+            )
+        );
+        // As decoded from a header or a TLS session, rather than by Bouncy Castle.
+        X509Certificate certificate = (X509Certificate) CertificateFactory.getInstance("X.509").generateCertificate(
+            new ByteArrayInputStream(issued.getEncoded())
+        );
+
+        assertThat(values(SubjectAlternativeNames.of(certificate)))
+            .containsExactlyElementsOf(jdkValues(certificate))
+            .containsExactly("2.5.4.5=#13023432,1.2.840.113549.1.9.1=#1613706172746e6572406578616d706c652e636f6d,C=FR,O=Example,CN=partner");
+    }
+
+    @Test
+    void should_memoize_names_per_certificate() {
+        X509Certificate certificate = new TestCertificateAuthority("CN=SAN CA").issue(
+            "CN=partner",
+            BigInteger.ONE,
+            new GeneralNames(new GeneralName(GeneralName.dNSName, "api.partner.example.com"))
+        );
+
+        assertThat(SubjectAlternativeNames.of(certificate)).isSameAs(SubjectAlternativeNames.of(certificate));
+    }
+
+    @Test
+    void should_hold_no_name_without_extension() {
+        X509Certificate certificate = new TestCertificateAuthority("CN=SAN CA").issue("CN=partner", BigInteger.ONE);
+
+        assertThat(SubjectAlternativeNames.of(certificate).isEmpty()).isTrue();
+    }
+
+    @Test
+    void should_hold_no_name_when_malformed() {
+        // A dNSName announcing 5 bytes where its SEQUENCE only holds 2.
+        byte[] der = { 0x04, 0x06, 0x30, 0x04, (byte) 0x82, 0x05, 'a', 'b' };
+
+        assertThat(SubjectAlternativeNames.parse(der).isEmpty()).isTrue();
+    }
+
+    private static List<String> values(SubjectAlternativeNames names) {
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < names.size(); i++) {
+            values.add(names.value(i));
+        }
+        return values;
+    }
+
+    @SneakyThrows
+    private static List<String> jdkValues(X509Certificate certificate) {
+        return certificate
+            .getSubjectAlternativeNames()
+            .stream()
+            .map(name -> name.get(1))
+            .filter(String.class::isInstance)
+            .map(String.class::cast)
+            .toList();
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.sslenforcement;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import lombok.SneakyThrows;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.BasicConstraints;
+import org.bouncycastle.asn1.x509.CRLReason;
+import org.bouncycastle.asn1.x509.CertificatePolicies;
+import org.bouncycastle.asn1.x509.ExtendedKeyUsage;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.asn1.x509.KeyPurposeId;
+import org.bouncycastle.asn1.x509.PolicyInformation;
+import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateHolder;
+import org.bouncycastle.cert.jcajce.JcaX509ExtensionUtils;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
+import org.bouncycastle.cert.ocsp.BasicOCSPRespBuilder;
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.bouncycastle.cert.ocsp.CertificateStatus;
+import org.bouncycastle.cert.ocsp.OCSPRespBuilder;
+import org.bouncycastle.cert.ocsp.RespID;
+import org.bouncycastle.cert.ocsp.RevokedStatus;
+import org.bouncycastle.cert.ocsp.jcajce.JcaCertificateID;
+import org.bouncycastle.operator.DigestCalculatorProvider;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+
+/**
+ * Test certificate authority issuing client certificates, OCSP responder certificates and OCSP responses.
+ */
+final class TestCertificateAuthority {
+
+    static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+
+    final KeyPair keyPair;
+
+    final X509Certificate certificate;
+
+    @SneakyThrows
+    TestCertificateAuthority(String name) {
+        keyPair = generateKeyPair();
+        JcaX509v3CertificateBuilder builder = builder(new X500Name(name), BigInteger.ONE, new X500Name(name), keyPair);
+        builder.addExtension(Extension.basicConstraints, true, new BasicConstraints(true));
+        certificate = sign(builder, keyPair);
+    }
+
+    /**
+     * An intermediate CA issued by {@code issuer}.
+     */
+    @SneakyThrows
+    TestCertificateAuthority(String name, TestCertificateAuthority issuer) {
+        keyPair = generateKeyPair();
+        JcaX509v3CertificateBuilder builder = builder(
+            X500Name.getInstance(issuer.certificate.getSubjectX500Principal().getEncoded()),
+            BigInteger.TWO,
+            new X500Name(name),
+            keyPair
+        );
+        builder.addExtension(Extension.basicConstraints, true, new BasicConstraints(true));
+        certificate = sign(builder, issuer.keyPair);
+    }
+
+    X509Certificate issue(String subject, BigInteger serial) {
+        Date notBefore = new Date(System.currentTimeMillis() - DAY_MILLIS);
+        return issue(subject, serial, notBefore, new Date(notBefore.getTime() + 365 * DAY_MILLIS));
+    }
+
+    X509Certificate issue(String subject, BigInteger serial, Date notBefore, Date notAfter) {
+        return sign(clientBuilder(subject, serial, notBefore, notAfter), keyPair);
+    }
+
+    @SneakyThrows
+    X509Certificate issue(String subject, BigInteger serial, GeneralNames subjectAlternativeNames, String... policyOids) {
+        Date notBefore = new Date(System.currentTimeMillis() - DAY_MILLIS);
+        JcaX509v3CertificateBuilder builder = clientBuilder(subject, serial, notBefore, new Date(notBefore.getTime() + 365 * DAY_MILLIS));
+        builder.addExtension(Extension.subjectAlternativeName, false, subjectAlternativeNames);
+        if (policyOids.length > 0) {
+            PolicyInformation[] policies = new PolicyInformation[policyOids.length];
+            for (int i = 0; i < policyOids.length; i++) {
+                policies[i] = new PolicyInformation(new ASN1ObjectIdentifier(policyOids[i]));
+            }
+            builder.addExtension(Extension.certificatePolicies, false, new CertificatePolicies(policies));
+        }
+        return sign(builder, keyPair);
+    }
+
+    @SneakyThrows
+    private JcaX509v3CertificateBuilder clientBuilder(String subject, BigInteger serial, Date notBefore, Date notAfter) {
+        JcaX509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(
+            X500Name.getInstance(certificate.getSubjectX500Principal().getEncoded()),
+            serial,
+            notBefore,
+            notAfter,
+            new X500Name(subject),
+            generateKeyPair().getPublic()
+        );
+        builder.addExtension(Extension.authorityKeyIdentifier, false, new JcaX509ExtensionUtils().createAuthorityKeyIdentifier(certificate));
+        return builder;
+    }
+
+    /**
+     * @return a delegated OCSP responder issued by this authority, with or without the OCSPSigning extended key usage.
+     */
+    @SneakyThrows
+    Responder issueResponder(boolean ocspSigning) {
+        KeyPair responderKeyPair = generateKeyPair();
+        JcaX509v3CertificateBuilder builder = builder(
+            X500Name.getInstance(certificate.getSubjectX500Principal().getEncoded()),
+            BigInteger.valueOf(System.nanoTime()),
+            new X500Name("CN=OCSP Responder"),
+            responderKeyPair
+        );
+        if (ocspSigning) {
+            builder.addExtension(Extension.extendedKeyUsage, false, new ExtendedKeyUsage(KeyPurposeId.id_kp_OCSPSigning));
+        }
+        return new Responder(responderKeyPair, sign(builder, keyPair));
+    }
+
+    Responder asResponder() {
+        return new Responder(keyPair, certificate);
+    }
+
+    /**
+     * @param status {@code null} for good, {@link RevokedStatus} or {@link org.bouncycastle.cert.ocsp.UnknownStatus}.
+     * @return the DER encoding of an OCSPResponse about {@code serial}, signed by {@code responder}.
+     */
+    @SneakyThrows
+    byte[] response(BigInteger serial, CertificateStatus status, Date nextUpdate, Responder responder) {
+        DigestCalculatorProvider digests = new JcaDigestCalculatorProviderBuilder().build();
+        RespID responderId = new RespID(
+            SubjectPublicKeyInfo.getInstance(responder.keyPair().getPublic().getEncoded()),
+            digests.get(CertificateID.HASH_SHA1)
+        );
+        return response(serial, status, nextUpdate, responder, responderId);
+    }
+
+    /**
+     * Same as {@link #response(BigInteger, CertificateStatus, Date, Responder)}, naming {@code responderId} as responder.
+     */
+    @SneakyThrows
+    byte[] response(BigInteger serial, CertificateStatus status, Date nextUpdate, Responder responder, RespID responderId) {
+        DigestCalculatorProvider digests = new JcaDigestCalculatorProviderBuilder().build();
+        CertificateID id = new JcaCertificateID(digests.get(CertificateID.HASH_SHA1), certificate, serial);
+        BasicOCSPRespBuilder builder = new BasicOCSPRespBuilder(responderId);
+        builder.addResponse(id, status, new Date(System.currentTimeMillis() - 60_000), nextUpdate);
+        BasicOCSPResp basic = builder.build(
+            new JcaContentSignerBuilder("SHA256WithRSA").build(responder.keyPair().getPrivate()),
+            new X509CertificateHolder[] { new JcaX509CertificateHolder(responder.certificate()) },
+            new Date()
+        );
+        return new OCSPRespBuilder().build(OCSPRespBuilder.SUCCESSFUL, basic).getEncoded();
+    }
+
+    byte[] goodResponse(BigInteger serial) {
+        return response(serial, CertificateStatus.GOOD, tomorrow(), asResponder());
+    }
+
+    byte[] revokedResponse(BigInteger serial) {
+        return response(serial, new RevokedStatus(new Date(), CRLReason.keyCompromise), tomorrow(), asResponder());
+    }
+
+    static Date tomorrow() {
+        return new Date(System.currentTimeMillis() + DAY_MILLIS);
+    }
+
+    @SneakyThrows
+    private static KeyPair generateKeyPair() {
+        KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
+        kpg.initialize(2048);
+        return kpg.generateKeyPair();
+    }
+
+    private static JcaX509v3CertificateBuilder builder(X500Name issuer, BigInteger serial, X500Name subject, KeyPair subjectKeyPair) {
+        Date notBefore = new Date(System.currentTimeMillis() - DAY_MILLIS);
+        return new JcaX509v3CertificateBuilder(
+            issuer,
+            serial,
+            notBefore,
+            new Date(notBefore.getTime() + 365 * DAY_MILLIS),
+            subject,
+            subjectKeyPair.getPublic()
+        );
+    }
+
+    @SneakyThrows
+    private static X509Certificate sign(JcaX509v3CertificateBuilder builder, KeyPair issuerKeyPair) {
+        return new JcaX509CertificateConverter().getCertificate(
+            builder.build(new JcaContentSignerBuilder("SHA256WithRSA").build(issuerKeyPair.getPrivate()))
+        );
+    }
+
+    record Responder(KeyPair keyPair, X509Certificate certificate) {}
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.sslenforcement;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.bouncycastle.asn1.ASN1Encodable;
+import org.bouncycastle.asn1.DERUTF8String;
+import org.bouncycastle.asn1.DLSet;
+import org.bouncycastle.asn1.x500.AttributeTypeAndValue;
+import org.bouncycastle.asn1.x500.RDN;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x500.style.BCStyle;
+import org.junit.jupiter.api.Test;
+
+class X500NameComparatorTest {
+
+    @Test
+    void should_match_reversed_rdn_order() {
+        X500Name observed = new X500Name("CN=Duke,O=Sun Microsystems,C=US");
+
+        assertThat(X500NameComparator.areEqual(new X500Name("C=US,O=Sun Microsystems,CN=Duke"), observed)).isTrue();
+    }
+
+    @Test
+    void should_match_patterns_against_canonical_values() {
+        X500Name observed = new X500Name("CN=Duke,O=SUN  Microsystems,C=US");
+
+        assertThat(X500NameComparator.areEqual(new X500Name("CN=*,O=Sun*,C=??"), observed)).isTrue();
+        assertThat(X500NameComparator.areEqual(new X500Name("CN=*,O=Oracle*,C=??"), observed)).isFalse();
+    }
+
+    @Test
+    void should_not_reuse_an_observed_rdn_twice() {
+        assertThat(X500NameComparator.areEqual(new X500Name("OU=*,OU=*,CN=Duke"), new X500Name("OU=a,CN=Duke,CN=Duke"))).isFalse();
+        assertThat(X500NameComparator.areEqual(new X500Name("OU=*,OU=*,CN=Duke"), new X500Name("OU=a,OU=b,CN=Duke"))).isTrue();
+    }
+
+    @Test
+    void should_compare_multi_valued_rdn_attributes_by_position() {
+        CompiledDn configured = CompiledDn.of(new X500Name("CN=Duke+UID=duke,O=Sun Microsystems,C=US"));
+        CompiledDn sameOrder = CompiledDn.of(new X500Name("C=US,O=Sun Microsystems,CN=Duke+UID=duke"));
+        // Parsed names hold DER-sorted sets, a BER-encoded certificate may keep the attributes in any order.
+        RDN[] rdns = new X500Name("CN=x,O=Sun Microsystems,C=US").getRDNs();
+        rdns[0] = RDN.getInstance(
+            new DLSet(
+                new ASN1Encodable[] {
+                    new AttributeTypeAndValue(BCStyle.UID, new DERUTF8String("duke")),
+                    new AttributeTypeAndValue(BCStyle.CN, new DERUTF8String("Duke")),
+                }
+            )
+        );
+        CompiledDn swapped = CompiledDn.of(new X500Name(rdns));
+
+        assertThat(X500NameComparator.areEqual(configured, sameOrder)).isTrue();
+        assertThat(configured.canonicalKey()).isEqualTo(sameOrder.canonicalKey());
+        assertThat(X500NameComparator.areEqual(configured, swapped)).isFalse();
+        assertThat(configured.canonicalKey()).isNotEqualTo(swapped.canonicalKey());
+    }
+
+    @Test
+    void should_compare_names_with_more_than_64_rdns() {
+        StringBuilder forward = new StringBuilder("CN=Duke");
+        StringBuilder reversed = new StringBuilder();
+        for (int i = 0; i < 70; i++) {
+            forward.append(",OU=unit-").append(i);
+            reversed.insert(0, "OU=unit-" + i + ",");
+        }
+        reversed.append("CN=Duke");
+
+        CompiledDn pattern = CompiledDn.of(new X500Name(forward.toString()));
+        CompiledDn observed = CompiledDn.of(new X500Name(reversed.toString()));
+
+        assertThat(X500NameComparator.areEqual(pattern, observed)).isTrue();
+        assertThat(pattern.canonicalKey()).isEqualTo(observed.canonicalKey());
+    }
+}
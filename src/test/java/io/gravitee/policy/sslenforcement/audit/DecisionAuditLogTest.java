@@ -0,0 +1,186 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.sslenforcement.audit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLSession;
+import javax.security.auth.x500.X500Principal;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DecisionAuditLogTest {
+
+    // SHA-256 of the { 1, 2 } encoding of the mocked certificate.
+    private static final String SHA256_OF_ENCODED = "a12871fee210fb8619291eaea194581cbd2531e4b23759d225f6806923f63222";
+
+    @Test
+    @SneakyThrows
+    void should_write_decisions_as_json_lines(@TempDir Path directory) {
+        Path file = directory.resolve("audit.log");
+        DecisionAuditLog auditLog = DecisionAuditLog.forFile(file.toString(), 16, 1024 * 1024, 1);
+        X509Certificate certificate = certificate("CN=Zo\u00eb,O=Example", "CN=Partners CA");
+        SSLSession session = mock(SSLSession.class);
+        when(session.getPeerCertificates()).thenReturn(new Certificate[] { certificate });
+
+        assertThat(auditLog.publish(certificate, null, null)).isTrue();
+        assertThat(auditLog.publish(null, session, "SSL_ENFORCEMENT_CLIENT_FORBIDDEN")).isTrue();
+        assertThat(auditLog.publish(null, null, "SSL_ENFORCEMENT_AUTHENTICATION_REQUIRED")).isTrue();
+
+        List<String> lines = awaitLines(file, 3);
+        assertThat(lines.get(0))
+            .startsWith("{\"timestamp\":\"")
+            .endsWith(
+                "\"verdict\":\"ALLOW\",\"failureKey\":null,\"subject\":\"CN=Zo\\u00eb,O=Example\",\"issuer\":\"CN=Partners CA\"," +
+                "\"fingerprint\":\"" +
+                SHA256_OF_ENCODED +
+                "\"}"
+            );
+        assertThat(lines.get(1)).contains("\"verdict\":\"DENY\",\"failureKey\":\"SSL_ENFORCEMENT_CLIENT_FORBIDDEN\",\"subject\":\"CN=Zo");
+        assertThat(lines.get(2)).endsWith(
+            "\"verdict\":\"DENY\",\"failureKey\":\"SSL_ENFORCEMENT_AUTHENTICATION_REQUIRED\"," +
+            "\"subject\":null,\"issuer\":null,\"fingerprint\":null}"
+        );
+        assertThat(auditLog.getWritten()).isEqualTo(3);
+    }
+
+    @Test
+    @SneakyThrows
+    void should_write_fingerprint_computed_by_the_caller(@TempDir Path directory) {
+        Path file = directory.resolve("fingerprinted.log");
+        DecisionAuditLog auditLog = DecisionAuditLog.forFile(file.toString(), 16, 1024 * 1024, 1);
+        X509Certificate certificate = certificate("CN=partner", "CN=Partners CA");
+        byte[] fingerprint = new byte[32];
+        Arrays.fill(fingerprint, (byte) 0xab);
+
+        assertThat(auditLog.publishFingerprinted(certificate, fingerprint, null)).isTrue();
+
+        assertThat(awaitLines(file, 1).get(0)).endsWith("\"fingerprint\":\"" + "ab".repeat(32) + "\"}");
+        verify(certificate, never()).getEncoded();
+        auditLog.release();
+    }
+
+    @Test
+    void should_share_audit_log_per_file(@TempDir Path directory) {
+        Path file = directory.resolve("shared.log");
+        DecisionAuditLog auditLog = DecisionAuditLog.forFile(file.toString(), 16, 1024, 1);
+
+        assertThat(DecisionAuditLog.forFile(file.toString(), 32, 2048, 2)).isSameAs(auditLog);
+        auditLog.release();
+        auditLog.release();
+    }
+
+    @Test
+    @SneakyThrows
+    void should_write_pending_decisions_and_close_on_last_release(@TempDir Path directory) {
+        Path file = directory.resolve("released.log");
+        DecisionAuditLog auditLog = DecisionAuditLog.forFile(file.toString(), 16, 1024 * 1024, 1);
+        DecisionAuditLog.forFile(file.toString(), 16, 1024 * 1024, 1);
+        auditLog.publish(null, null, "SSL_ENFORCEMENT_AUTHENTICATION_REQUIRED");
+
+        auditLog.release();
+        auditLog.publish(null, null, "SSL_ENFORCEMENT_AUTHENTICATION_REQUIRED");
+        auditLog.release();
+
+        assertThat(Files.readAllLines(file)).hasSize(2);
+        DecisionAuditLog reopened = DecisionAuditLog.forFile(file.toString(), 16, 1024 * 1024, 1);
+        assertThat(reopened).isNotSameAs(auditLog);
+        reopened.release();
+    }
+
+    @Test
+    void should_count_unreadable_certificates_as_dropped(@TempDir Path directory) {
+        DecisionAuditLog auditLog = DecisionAuditLog.forFile(directory.resolve("dropped.log").toString(), 16, 1024 * 1024, 1);
+        X509Certificate certificate = mock(X509Certificate.class);
+        when(certificate.getSubjectX500Principal()).thenThrow(new IllegalStateException("broken certificate"));
+
+        assertThat(auditLog.publish(certificate, null, null)).isFalse();
+
+        assertThat(auditLog.getDropped()).isEqualTo(1);
+        assertThat(auditLog.publish(null, null, "SSL_ENFORCEMENT_AUTHENTICATION_REQUIRED")).isTrue();
+        auditLog.release();
+        assertThat(auditLog.getWritten()).isEqualTo(1);
+    }
+
+    @Test
+    @SneakyThrows
+    void should_roll_file_over(@TempDir Path directory) {
+        Path file = directory.resolve("audit.log");
+        try (RollingFileWriter writer = new RollingFileWriter(file, 10, 2)) {
+            for (String line : List.of("first", "second", "third", "fourth")) {
+                writer.writeLine(line);
+            }
+        }
+
+        assertThat(Files.readAllLines(file)).containsExactly("fourth");
+        assertThat(Files.readAllLines(directory.resolve("audit.log.1"))).containsExactly("third");
+        assertThat(Files.readAllLines(directory.resolve("audit.log.2"))).containsExactly("second");
+        assertThat(directory.resolve("audit.log.3")).doesNotExist();
+    }
+
+    @Test
+    @SneakyThrows
+    void should_keep_writing_after_a_failed_roll_over(@TempDir Path directory) {
+        Path file = directory.resolve("audit.log");
+        Path blocker = Files.createDirectories(directory.resolve("audit.log.1").resolve("blocker"));
+        try (RollingFileWriter writer = new RollingFileWriter(file, 10, 1)) {
+            writer.writeLine("first");
+            assertThatThrownBy(() -> writer.writeLine("second")).isInstanceOf(IOException.class);
+            writer.flush();
+
+            Files.delete(blocker);
+            Files.delete(blocker.getParent());
+            writer.writeLine("third");
+        }
+
+        assertThat(Files.readAllLines(file)).containsExactly("third");
+        assertThat(Files.readAllLines(directory.resolve("audit.log.1"))).containsExactly("first");
+    }
+
+    @SneakyThrows
+    private static X509Certificate certificate(String subject, String issuer) {
+        X509Certificate certificate = mock(X509Certificate.class);
+        when(certificate.getSubjectX500Principal()).thenReturn(new X500Principal(subject));
+        when(certificate.getIssuerX500Principal()).thenReturn(new X500Principal(issuer));
+        when(certificate.getEncoded()).thenReturn(new byte[] { 1, 2 });
+        return certificate;
+    }
+
+    @SneakyThrows
+    private static List<String> awaitLines(Path file, int count) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        List<String> lines = Files.readAllLines(file);
+        while (lines.size() < count && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+            lines = Files.readAllLines(file);
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.sslenforcement.audit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class DecisionRingBufferTest {
+
+    @Test
+    void should_round_capacity_up_to_a_power_of_two() {
+        assertThat(new DecisionRingBuffer(1000).capacity()).isEqualTo(1024);
+        assertThat(new DecisionRingBuffer(1024).capacity()).isEqualTo(1024);
+    }
+
+    @Test
+    void should_drain_records_in_order_and_reject_offers_when_full() {
+        DecisionRingBuffer buffer = new DecisionRingBuffer(4);
+        for (int i = 0; i < 4; i++) {
+            assertThat(buffer.offer(i, null, null, null, "KEY_" + i)).isTrue();
+        }
+        assertThat(buffer.offer(4, null, null, null, "KEY_4")).isFalse();
+
+        List<String> keys = new ArrayList<>();
+        assertThat(buffer.drain(record -> keys.add(record.failureKey), 3)).isEqualTo(3);
+        assertThat(buffer.offer(5, null, null, null, "KEY_5")).isTrue();
+        assertThat(buffer.drain(record -> keys.add(record.failureKey), 10)).isEqualTo(2);
+
+        assertThat(keys).containsExactly("KEY_0", "KEY_1", "KEY_2", "KEY_3", "KEY_5");
+    }
+
+    @Test
+    void should_not_lose_records_of_concurrent_producers() throws InterruptedException {
+        DecisionRingBuffer buffer = new DecisionRingBuffer(64);
+        int producers = 4;
+        int perProducer = 10_000;
+        AtomicInteger rejected = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(producers);
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            new Thread(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    if (!buffer.offer(producer * perProducer + i, null, null, null, null)) {
+                        rejected.incrementAndGet();
+                    }
+                }
+                done.countDown();
+            })
+                .start();
+        }
+
+        Set<Long> drained = new HashSet<>();
+        while (done.getCount() > 0) {
+            buffer.drain(record -> drained.add(record.timestampMillis), 64);
+        }
+        // Every offer has completed: what is left is published.
+        buffer.drain(record -> drained.add(record.timestampMillis), Integer.MAX_VALUE);
+
+        assertThat(drained.size() + rejected.get()).isEqualTo(producers * perProducer);
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.sslenforcement.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class BoundedCacheTest {
+
+    @Test
+    void should_count_hits_and_misses() {
+        BoundedCache<String, String> cache = new BoundedCache<>(10, Duration.ofMinutes(1));
+
+        assertThat(cache.get("a")).isNull();
+        cache.put("a", "A");
+        assertThat(cache.get("a")).isEqualTo("A");
+
+        assertThat(cache.stats()).isEqualTo(new CacheStats(1, 1, 0, 1));
+    }
+
+    @Test
+    void should_evict_least_recently_used_entry_when_full() {
+        BoundedCache<String, String> cache = new BoundedCache<>(2, Duration.ofMinutes(1));
+        cache.put("a", "A");
+        cache.put("b", "B");
+        // Touch "a" once its access time can be refreshed, so that "b" becomes the eldest entry.
+        long start = System.nanoTime();
+        while (System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(2)) {
+            Thread.onSpinWait();
+        }
+        cache.get("a");
+
+        cache.put("c", "C");
+
+        assertThat(cache.get("a")).isEqualTo("A");
+        assertThat(cache.get("b")).isNull();
+        assertThat(cache.get("c")).isEqualTo("C");
+        assertThat(cache.stats().evictions()).isEqualTo(1);
+    }
+
+    @Test
+    void should_expire_entries_after_their_time_to_live() {
+        BoundedCache<String, String> cache = new BoundedCache<>(10, Duration.ofMinutes(1));
+
+        cache.put("a", "A", -1);
+        cache.put("b", "B", 1);
+        // Busy-wait past the 1ns TTL rather than sleeping.
+        long start = System.nanoTime();
+        while (System.nanoTime() - start < 2) {
+            Thread.onSpinWait();
+        }
+
+        assertThat(cache.get("a")).isNull();
+        assertThat(cache.get("b")).isNull();
+        assertThat(cache.stats().evictions()).isEqualTo(1);
+    }
+
+    @Test
+    void should_stay_bounded() {
+        BoundedCache<Integer, Integer> cache = new BoundedCache<>(4096, Duration.ofMinutes(1));
+
+        for (int i = 0; i < 10_000; i++) {
+            cache.put(i, i);
+        }
+
+        assertThat(cache.size()).isLessThanOrEqualTo(4096);
+        assertThat(cache.get(9_999)).isEqualTo(9_999);
+    }
+
+    @Test
+    void should_evict_expired_entries_first() {
+        BoundedCache<String, String> cache = new BoundedCache<>(2, Duration.ofMinutes(1));
+        cache.put("a", "A");
+        cache.put("b", "B", 1);
+        long start = System.nanoTime();
+        while (System.nanoTime() - start < 2) {
+            Thread.onSpinWait();
+        }
+
+        cache.put("c", "C");
+
+        assertThat(cache.get("a")).isEqualTo("A");
+        assertThat(cache.get("c")).isEqualTo("C");
+        assertThat(cache.size()).isEqualTo(2);
+    }
+
+    @Test
+    void should_stay_bounded_under_concurrent_writes() throws InterruptedException {
+        BoundedCache<Integer, Integer> cache = new BoundedCache<>(1000, Duration.ofMinutes(1));
+        int threads = 4;
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            int offset = t * 100_000;
+            new Thread(() -> {
+                for (int i = 0; i < 20_000; i++) {
+                    cache.put(offset + i, i);
+                    cache.get(offset + i / 2);
+                }
+                done.countDown();
+            })
+                .start();
+        }
+        done.await();
+
+        cache.put(-1, -1);
+        assertThat(cache.size()).isLessThanOrEqualTo(1000);
+    }
+
+    @Test
+    void should_reject_non_positive_size() {
+        assertThatThrownBy(() -> new BoundedCache<>(0, Duration.ofMinutes(1))).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -44,9 +44,34 @@ class SslEnforcementPolicyConfigurationTest {
         JSONObject defaultConfig = new JSONObject();
         defaultConfig.put("requiresSsl", true);
         defaultConfig.put("useXForwardedProto", false);
+        defaultConfig.put("forwardedTrustedHops", 0);
         defaultConfig.put("requiresClientAuthentication", false);
+        defaultConfig.put("pinnedFingerprintType", "CERTIFICATE");
+        defaultConfig.put("pinnedFingerprintsSufficient", false);
         defaultConfig.put("certificateLocation", "SESSION");
-        defaultConfig.put("certificateHeaderName", "ssl-client-cert");
+        defaultConfig.put("certificateHeaderFormat", "PEM");
+        defaultConfig.put("certificateHeaderMaxSize", 16384);
+        defaultConfig.put("certificateHeaderCacheEnabled", false);
+        defaultConfig.put("certificateHeaderCacheMaxSize", 1000);
+        defaultConfig.put("chainValidationCacheMaxSize", 10000);
+        defaultConfig.put("workerOffloadEnabled", false);
+        defaultConfig.put("ocspStaplingEnabled", false);
+        defaultConfig.put("ocspStaplingRequired", false);
+        defaultConfig.put("ocspResponseCacheMaxSize", 10000);
+        defaultConfig.put("verdictCacheEnabled", false);
+        defaultConfig.put("verdictCacheMaxSize", 10000);
+        defaultConfig.put("verdictCacheTtlSeconds", 300);
+        defaultConfig.put("rejectionCacheEnabled", false);
+        defaultConfig.put("rejectionCacheMaxSize", 10000);
+        defaultConfig.put("rejectionCacheTtlSeconds", 60);
+        defaultConfig.put("sessionVerdictCacheEnabled", false);
+        defaultConfig.put("adaptiveStageOrderingEnabled", false);
+        defaultConfig.put("auditEnabled", false);
+        defaultConfig.put("auditBufferSize", 8192);
+        defaultConfig.put("auditFileMaxSizeMb", 10);
+        defaultConfig.put("auditFileMaxBackups", 5);
+        defaultConfig.put("metricsEnabled", false);
+        defaultConfig.put("metricsJmxEnabled", false);
 
         assertThat(validated).isEqualTo(defaultConfig.toString());
     }
@@ -181,6 +206,14 @@ class SslEnforcementPolicyConfigurationTest {
         Assertions.assertThrows(InvalidJsonException.class, () -> jsonSchemaValidator.validate(schema, config));
     }
 
+    @Test
+    @DisplayName("Should throw with a non-positive verdict cache size")
+    void shouldThrowWithNonPositiveVerdictCacheSize() {
+        String config = new JSONObject().put("verdictCacheEnabled", true).put("verdictCacheMaxSize", 0).toString();
+
+        Assertions.assertThrows(InvalidJsonException.class, () -> jsonSchemaValidator.validate(schema, config));
+    }
+
     @SneakyThrows
     private String loadResource(String resource) {
         return Files.readString(Path.of(requireNonNull(this.getClass().getResource(resource)).toURI()));
@@ -0,0 +1,96 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.sslenforcement.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import javax.management.MBeanServer;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+
+class EnforcementMetricsTest {
+
+    @Test
+    void should_bucket_durations_by_power_of_two() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(0);
+        histogram.record(1_000);
+        histogram.record(1_000);
+        histogram.record(1_000_000);
+
+        HistogramSnapshot snapshot = histogram.snapshot();
+
+        assertThat(snapshot.count()).isEqualTo(4);
+        assertThat(snapshot.meanNanos()).isEqualTo(1_002_000 / 4.0);
+        assertThat(snapshot.buckets()[0]).isEqualTo(1);
+        assertThat(snapshot.buckets()[10]).isEqualTo(2);
+        assertThat(snapshot.quantileUpperBoundNanos(0.5)).isEqualTo(1024);
+        assertThat(snapshot.quantileUpperBoundNanos(0.99)).isEqualTo(1L << 20);
+    }
+
+    @Test
+    void should_share_metrics_by_name() {
+        EnforcementMetrics metrics = EnforcementMetrics.named("shared-by-name", false);
+        metrics.reset();
+
+        EnforcementMetrics.named("shared-by-name", false).rejected("SSL_ENFORCEMENT_CLIENT_FORBIDDEN");
+        metrics.rejected("SSL_ENFORCEMENT_CLIENT_FORBIDDEN");
+        metrics.accepted();
+        metrics.parseFailure();
+
+        assertThat(metrics.getAccepted()).isEqualTo(1);
+        assertThat(metrics.getRejected()).isEqualTo(Map.of("SSL_ENFORCEMENT_CLIENT_FORBIDDEN", 2L));
+        assertThat(metrics.getParseFailures()).isEqualTo(1);
+        assertThat(EnforcementMetrics.named("another-name", false).getAccepted()).isZero();
+    }
+
+    @Test
+    @SneakyThrows
+    void should_expose_metrics_in_jmx() {
+        EnforcementMetrics metrics = EnforcementMetrics.named("jmx", true);
+        metrics.reset();
+        metrics.accepted();
+        metrics.record(Stage.TOTAL, 2_000);
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        assertThat(server.getAttribute(EnforcementMetrics.objectName("jmx"), "Accepted")).isEqualTo(1L);
+        assertThat(metrics.getStageCounts()).containsEntry("TOTAL", 1L).containsEntry("SSL_CHECK", 0L);
+    }
+
+    @Test
+    @SneakyThrows
+    void should_forget_metrics_and_unregister_them_on_last_release() {
+        EnforcementMetrics first = EnforcementMetrics.named("released", true);
+        EnforcementMetrics second = EnforcementMetrics.named("released", true);
+        first.accepted();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        first.release();
+
+        assertThat(server.isRegistered(EnforcementMetrics.objectName("released"))).isTrue();
+
+        second.release();
+
+        assertThat(server.isRegistered(EnforcementMetrics.objectName("released"))).isFalse();
+        EnforcementMetrics recreated = EnforcementMetrics.named("released", false);
+        assertThat(recreated).isNotSameAs(first);
+        assertThat(recreated.getAccepted()).isZero();
+        recreated.release();
+    }
+}